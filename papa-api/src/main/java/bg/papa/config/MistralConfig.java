@@ -2,9 +2,9 @@ package bg.papa.config;
 
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
 
 @Configuration
 @ConfigurationProperties(prefix = "mistral.api")
@@ -17,8 +17,79 @@ public class MistralConfig {
     private String locationId;
     private String priceId;
 
-    @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    private Http http = new Http();
+    private Token token = new Token();
+    private Concurrency concurrency = new Concurrency();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+    private Retry retry = new Retry();
+    private Duration stockCheckTimeout = Duration.ofSeconds(5);
+    private StockCache stockCache = new StockCache();
+
+    /**
+     * Connection pool and timeouts for the Mistral HTTP client
+     */
+    @Data
+    public static class Http {
+        private int maxConnectionsPerRoute = 20;
+        private int maxConnectionsTotal = 40;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration readTimeout = Duration.ofSeconds(60);
+        private Duration connectionRequestTimeout = Duration.ofSeconds(10);
+        private Duration keepAlive = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Access token renewal
+     */
+    @Data
+    public static class Token {
+        private Duration refreshAhead = Duration.ofMinutes(5);
+        private long checkIntervalMs = 30000;
+    }
+
+    /**
+     * Adaptive limit for parallel Mistral requests
+     */
+    @Data
+    public static class Concurrency {
+        private int initialLimit = 10;
+        private int minLimit = 2;
+        private int maxLimit = 20;
+        private Duration latencyThreshold = Duration.ofSeconds(3);
+        private double backoffRatio = 0.7;
+    }
+
+    /**
+     * When to stop calling Mistral and for how long
+     */
+    @Data
+    public static class CircuitBreaker {
+        private double failureRateThreshold = 0.5;
+        private int slidingWindowSize = 20;
+        private int minimumCalls = 10;
+        private Duration slowCallThreshold = Duration.ofSeconds(10);
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenCalls = 3;
+    }
+
+    /**
+     * Retries of interactive Mistral lookups
+     */
+    @Data
+    public static class Retry {
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(200);
+        private Duration maxBackoff = Duration.ofSeconds(2);
+    }
+
+    /**
+     * In-process cache of real-time stock answers
+     */
+    @Data
+    public static class StockCache {
+        private boolean enabled = true;
+        private long maxSize = 10000;
+        private Duration refreshAfter = Duration.ofSeconds(15);
+        private Duration expireAfter = Duration.ofMinutes(2);
     }
 }
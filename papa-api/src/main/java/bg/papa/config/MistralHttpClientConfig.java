@@ -0,0 +1,73 @@
+package bg.papa.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import lombok.RequiredArgsConstructor;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Pooled keep-alive HTTP client for the Mistral API.
+ * Request latency is recorded as http.client.requests (RestTemplateBuilder observation),
+ * pool usage as httpcomponents.httpclient.pool.* tagged httpclient=mistral.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class MistralHttpClientConfig {
+
+    private final MistralConfig mistralConfig;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager mistralConnectionManager(MeterRegistry meterRegistry) {
+        MistralConfig.Http http = mistralConfig.getHttp();
+
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(http.getMaxConnectionsPerRoute())
+                .setMaxConnTotal(http.getMaxConnectionsTotal())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(http.getConnectTimeout()))
+                        .setSocketTimeout(Timeout.of(http.getReadTimeout()))
+                        .build())
+                .build();
+
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "mistral").bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient mistralHttpClient(PoolingHttpClientConnectionManager mistralConnectionManager) {
+        MistralConfig.Http http = mistralConfig.getHttp();
+        TimeValue keepAlive = TimeValue.of(http.getKeepAlive());
+
+        // Content compression is on by default: requests send Accept-Encoding: gzip, deflate
+        // and compressed responses are decoded transparently
+        return HttpClients.custom()
+                .setConnectionManager(mistralConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(http.getConnectionRequestTimeout()))
+                        .setResponseTimeout(Timeout.of(http.getReadTimeout()))
+                        .build())
+                .setKeepAliveStrategy((response, context) -> keepAlive)
+                .evictIdleConnections(keepAlive)
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @Bean
+    public RestTemplate mistralRestTemplate(RestTemplateBuilder restTemplateBuilder, CloseableHttpClient mistralHttpClient) {
+        return restTemplateBuilder
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(mistralHttpClient))
+                .build();
+    }
+}
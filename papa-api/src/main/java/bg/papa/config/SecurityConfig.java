@@ -38,6 +38,10 @@ public class SecurityConfig {
                 .requestMatchers("/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
                 .requestMatchers("/error").permitAll()
 
+                // Actuator health is public; metrics expose sync, Mistral and pool internals (require ADMIN role)
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/metrics/**", "/actuator/prometheus").hasRole("ADMIN")
+
                 // Auth endpoints
                 .requestMatchers("/api/auth/**").permitAll()
 
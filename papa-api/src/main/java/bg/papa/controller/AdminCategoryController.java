@@ -3,6 +3,7 @@ package bg.papa.controller;
 import bg.papa.entity.Category;
 import bg.papa.repository.CategoryRepository;
 import bg.papa.repository.ProductRepository;
+import bg.papa.util.Slugs;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -13,6 +14,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/admin/categories")
@@ -56,7 +58,7 @@ public class AdminCategoryController {
     public ResponseEntity<CategoryResponse> createCategory(@RequestBody CategoryCreateRequest request) {
         Category category = new Category();
         category.setName(request.name());
-        category.setHandle(generateHandle(request.name()));
+        category.setHandle(uniqueHandle(Slugs.categoryHandle(request.name())));
         category.setDescription(request.description());
         category.setThumbnail(request.thumbnail());
         category.setSortOrder(request.sortOrder() != null ? request.sortOrder() : 0);
@@ -169,15 +171,13 @@ public class AdminCategoryController {
         );
     }
 
-    private String generateHandle(String name) {
-        if (name == null || name.isEmpty()) {
-            return "category-" + System.currentTimeMillis();
-        }
-        return name.toLowerCase()
-                .replaceAll("[^a-z0-9\\s-]", "")
-                .replaceAll("\\s+", "-")
-                .replaceAll("-+", "-")
-                .replaceAll("^-|-$", "");
+    /**
+     * Handle for a new category, suffixed with -2, -3, ... when another category already has it
+     */
+    private String uniqueHandle(String wanted) {
+        return Slugs.uniqueHandles(Map.of("new", wanted), handles -> categoryRepository.findByHandleIn(handles).stream()
+                        .collect(Collectors.toMap(Category::getHandle, category -> category.getId().toString())))
+                .get("new");
     }
 
     // DTOs
@@ -6,6 +6,7 @@ import bg.papa.entity.Product;
 import bg.papa.entity.ProductStatus;
 import bg.papa.repository.CategoryRepository;
 import bg.papa.repository.ProductRepository;
+import bg.papa.repository.ProductSyncStateRepository;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -18,6 +19,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -29,6 +31,7 @@ public class AdminProductController {
 
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
+    private final ProductSyncStateRepository productSyncStateRepository;
 
     @GetMapping
     @Operation(summary = "List all products (all statuses)")
@@ -83,6 +86,8 @@ public class AdminProductController {
         return productRepository.findById(id)
                 .map(product -> {
                     product.setStatus(ProductStatus.valueOf(status.toUpperCase()));
+                    // A status set by hand is not undone by the catalog sync
+                    product.setUnpublishedBySync(false);
                     productRepository.save(product);
                     Map<String, Object> response = new java.util.HashMap<>();
                     response.put("status", "success");
@@ -126,6 +131,7 @@ public class AdminProductController {
                     }
                     if (request.status() != null) {
                         product.setStatus(ProductStatus.valueOf(request.status().toUpperCase()));
+                        product.setUnpublishedBySync(false);
                     }
 
                     // Update enrichment fields
@@ -149,6 +155,13 @@ public class AdminProductController {
                         }
                     }
 
+                    // Supplier data edited by hand: the next Mistral sync must not skip the product as unchanged
+                    boolean supplierDataEdited = request.price() != null || request.compareAtPrice() != null
+                            || request.stock() != null;
+                    if (supplierDataEdited && product.getSupplierSku() != null) {
+                        productSyncStateRepository.invalidate(List.of(product.getSupplierSku()));
+                    }
+
                     Product saved = productRepository.save(product);
                     return ResponseEntity.ok(ProductResponse.fromEntity(saved));
                 })
@@ -1,17 +1,41 @@
 package bg.papa.controller;
 
 import bg.papa.dto.mistral.MistralProductDto;
+import bg.papa.dto.response.SyncJobResponse;
+import bg.papa.entity.SyncJobType;
+import bg.papa.entity.SyncLease;
+import bg.papa.repository.SyncLeaseRepository;
+import bg.papa.service.AdaptiveStockSyncService;
+import bg.papa.service.CatalogDiffService;
+import bg.papa.service.CatalogSizeProbe;
+import bg.papa.service.HotSkuRefreshService;
 import bg.papa.service.MistralApiClient;
 import bg.papa.service.MistralSyncService;
+import bg.papa.service.SyncJobService;
+import bg.papa.service.SyncLeaseService;
+import bg.papa.service.SyncScheduler;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/admin/sync")
@@ -22,6 +46,17 @@ public class AdminSyncController {
 
     private final MistralApiClient mistralApiClient;
     private final MistralSyncService mistralSyncService;
+    private final SyncJobService syncJobService;
+    private final CatalogSizeProbe catalogSizeProbe;
+    private final SyncLeaseService syncLeaseService;
+    private final SyncScheduler syncScheduler;
+    private final HotSkuRefreshService hotSkuRefreshService;
+    private final AdaptiveStockSyncService adaptiveStockSyncService;
+    private final CatalogDiffService catalogDiffService;
+
+    // Upper bound for the wait parameter of the queued sync endpoints
+    @Value("${app.sync.scheduler.max-request-wait:10m}")
+    private Duration maxRequestWait;
 
     @GetMapping("/test")
     @Operation(summary = "Test Mistral API connection")
@@ -90,6 +125,7 @@ public class AdminSyncController {
                     "status", "success",
                     "created", result.created(),
                     "updated", result.updated(),
+                    "unchanged", result.unchanged(),
                     "errors", result.errors(),
                     "total", result.total()
             ));
@@ -102,10 +138,12 @@ public class AdminSyncController {
     }
 
     @PostMapping("/products/rows")
-    @Operation(summary = "Sync products by row range (uses GetAllDataByPart - much faster, 1-indexed)")
+    @Operation(summary = "Sync products by row range (uses GetAllDataByPart - much faster, 1-indexed); dryRun=true only reports the changes")
     public ResponseEntity<Map<String, Object>> syncProductRows(
             @RequestParam(defaultValue = "1") int fromRow,
-            @RequestParam(defaultValue = "1000") int toRow) {
+            @RequestParam(defaultValue = "1000") int toRow,
+            @RequestParam(defaultValue = "false") boolean bulk,
+            @RequestParam(defaultValue = "false") boolean dryRun) {
 
         if (toRow - fromRow > 5000) {
             return ResponseEntity.badRequest().body(Map.of(
@@ -114,12 +152,17 @@ public class AdminSyncController {
             ));
         }
 
+        if (dryRun) {
+            return dryRun(() -> catalogDiffService.diffRowRange(fromRow, toRow));
+        }
+
         try {
-            var result = mistralSyncService.syncProductsByRowRange(fromRow, toRow);
+            var result = mistralSyncService.syncProductsByRowRange(fromRow, toRow, bulk);
             return ResponseEntity.ok(Map.of(
                     "status", "success",
                     "created", result.created(),
                     "updated", result.updated(),
+                    "unchanged", result.unchanged(),
                     "errors", result.errors(),
                     "total", result.total()
             ));
@@ -132,59 +175,126 @@ public class AdminSyncController {
     }
 
     @PostMapping("/products/all")
-    @Operation(summary = "Bulk sync all products from Mistral (searches 0-9)")
-    public ResponseEntity<Map<String, Object>> syncAllProducts() {
-        try {
-            var result = mistralSyncService.syncAllProducts();
-            return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "created", result.created(),
-                    "updated", result.updated(),
-                    "errors", result.errors(),
-                    "total", result.total()
-            ));
-        } catch (Exception e) {
+    @Operation(summary = "Bulk sync all products from Mistral (one sweep, each product once) - queued like POST /jobs?type=PRODUCTS; wait=seconds blocks for the result up to the limit; dryRun=true only reports the changes")
+    public ResponseEntity<Map<String, Object>> syncAllProducts(
+            @RequestParam(defaultValue = "false") boolean bulk,
+            @RequestParam(defaultValue = "false") boolean dryRun,
+            @RequestParam(defaultValue = "0") int wait) {
+        if (dryRun) {
+            return dryRun(catalogDiffService::diffCatalog);
+        }
+        return runQueued(SyncJobType.PRODUCTS, bulk, wait);
+    }
+
+    @PostMapping("/stock")
+    @Operation(summary = "Sync stock quantities only for existing products (slow - individual API calls) - queued like POST /jobs?type=STOCK_ONLY; wait=seconds blocks for the result up to the limit")
+    public ResponseEntity<Map<String, Object>> syncStock(@RequestParam(defaultValue = "0") int wait) {
+        return runQueued(SyncJobType.STOCK_ONLY, false, wait);
+    }
+
+    @PostMapping("/stock/batch")
+    @Operation(summary = "Fast batch stock sync - updates all products from Mistral in batches - queued like POST /jobs?type=STOCK; wait=seconds blocks for the result up to the limit")
+    public ResponseEntity<Map<String, Object>> syncStockBatch(@RequestParam(defaultValue = "0") int wait) {
+        return runQueued(SyncJobType.STOCK, false, wait);
+    }
+
+    @GetMapping("/catalog/size")
+    @Operation(summary = "Number of rows in the Mistral catalog (cached; refresh=true probes again)")
+    public ResponseEntity<Map<String, Object>> catalogSize(@RequestParam(defaultValue = "false") boolean refresh) {
+        if (refresh) {
+            catalogSizeProbe.invalidate();
+        }
+        long start = System.currentTimeMillis();
+        int rows = catalogSizeProbe.getRowCount();
+        if (rows < 0) {
             return ResponseEntity.internalServerError().body(Map.of(
                     "status", "error",
-                    "message", e.getMessage()
+                    "message", "Could not determine the catalog size"
             ));
         }
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "rows", rows,
+                "durationMs", System.currentTimeMillis() - start
+        ));
     }
 
-    @PostMapping("/stock")
-    @Operation(summary = "Sync stock quantities only for existing products (slow - individual API calls)")
-    public ResponseEntity<Map<String, Object>> syncStock() {
+    @PostMapping("/jobs")
+    @Operation(summary = "Queue a sync job and return right away; merged into a queued sync that covers it (bulk applies to PRODUCTS). The job id is only returned once the sync has started; poll the request until then")
+    public ResponseEntity<Map<String, Object>> submitJob(
+            @RequestParam SyncJobType type,
+            @RequestParam(defaultValue = "true") boolean bulk) {
         try {
-            var result = mistralSyncService.syncStockOnly();
-            return ResponseEntity.ok(Map.of(
-                    "status", "success",
-                    "updated", result.updated(),
-                    "errors", result.errors(),
-                    "total", result.total()
-            ));
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().body(Map.of(
+            SyncScheduler.SyncTicket ticket = syncScheduler.request(type, bulk, SyncScheduler.Origin.ADMIN);
+            return ResponseEntity.accepted().body(accepted(ticket));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
                     "status", "error",
                     "message", e.getMessage()
             ));
         }
     }
 
-    @PostMapping("/stock/batch")
-    @Operation(summary = "Fast batch stock sync - updates all products from Mistral in batches")
-    public ResponseEntity<Map<String, Object>> syncStockBatch() {
-        try {
-            long startTime = System.currentTimeMillis();
-            var result = mistralSyncService.syncStockBatch();
-            long duration = System.currentTimeMillis() - startTime;
+    @GetMapping("/queue")
+    @Operation(summary = "Running and queued syncs in the order they run; jobId appears once a sync has started")
+    public ResponseEntity<List<SyncScheduler.QueuedSync>> getQueue() {
+        return ResponseEntity.ok(syncScheduler.getQueue());
+    }
+
+    @GetMapping("/queue/{requestId}")
+    @Operation(summary = "State of a queued or running sync request (QUEUED, WAITING_FOR_LEASE or RUNNING); jobId appears once it has started, 404 once it finished")
+    public ResponseEntity<SyncScheduler.QueuedSync> getQueuedRequest(@PathVariable UUID requestId) {
+        return syncScheduler.findRequest(requestId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
+    @GetMapping("/jobs")
+    @Operation(summary = "List the most recent sync jobs")
+    public ResponseEntity<List<SyncJobResponse>> listJobs() {
+        return ResponseEntity.ok(syncJobService.findRecentJobs().stream()
+                .map(syncJobService::describe)
+                .toList());
+    }
+
+    @GetMapping("/jobs/{id}")
+    @Operation(summary = "Get progress of a sync job: rows processed, throughput, ETA and errors")
+    public ResponseEntity<SyncJobResponse> getJob(@PathVariable UUID id) {
+        return syncJobService.findJob(id)
+                .map(syncJobService::describe)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/hot-skus")
+    @Operation(summary = "Current hot SKU set by source (cart, order, view) and the last refresh cycle")
+    public ResponseEntity<Map<String, Object>> getHotSkus() {
+        Map<String, HotSkuRefreshService.HotSkuSource> hot = hotSkuRefreshService.findHotSkus();
+        Map<HotSkuRefreshService.HotSkuSource, Long> bySource = hot.values().stream()
+                .collect(Collectors.groupingBy(source -> source, Collectors.counting()));
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", "success");
+        body.put("hotSkus", hot.size());
+        body.put("bySource", bySource);
+        body.put("lastRefresh", hotSkuRefreshService.getLastResult());
+        return ResponseEntity.ok(body);
+    }
+
+    @PostMapping("/hot-skus/refresh")
+    @Operation(summary = "Run one hot SKU stock refresh cycle now (bounded by the per-cycle call budget)")
+    public ResponseEntity<Map<String, Object>> refreshHotSkus() {
+        try {
+            var result = hotSkuRefreshService.refresh();
             return ResponseEntity.ok(Map.of(
                     "status", "success",
+                    "hotSkus", result.hotSkus(),
+                    "calls", result.calls(),
                     "updated", result.updated(),
-                    "errors", result.errors(),
-                    "total", result.total(),
-                    "durationMs", duration,
-                    "avgMsPerProduct", result.updated() > 0 ? duration / result.updated() : 0
+                    "missing", result.missing(),
+                    "failed", result.failed(),
+                    "deferred", result.deferred(),
+                    "durationMs", result.durationMs()
             ));
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(Map.of(
@@ -194,6 +304,40 @@ public class AdminSyncController {
         }
     }
 
+    @GetMapping("/adaptive")
+    @Operation(summary = "Last adaptive stock sync and the Mistral calls and DB writes saved against full sweeps")
+    public ResponseEntity<Map<String, Object>> getAdaptiveStats() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", "success");
+        body.put("totals", adaptiveStockSyncService.getTotals());
+        body.put("lastRun", adaptiveStockSyncService.getLastResult());
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/leases")
+    @Operation(summary = "Which instance holds each sync lease, and whether it is still alive")
+    public ResponseEntity<Map<String, Object>> listLeases() {
+        String instanceId = syncLeaseService.getInstanceId();
+        Map<String, SyncLeaseRepository.LeaseExpiry> expiries = syncLeaseService.findExpiries();
+        List<Map<String, Object>> leases = syncLeaseService.findAll().stream()
+                .map(lease -> describeLease(lease, instanceId, expiries.get(lease.getName())))
+                .toList();
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "instanceId", instanceId,
+                "leases", leases
+        ));
+    }
+
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream progress of a sync job as Server-Sent Events until it finishes")
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable UUID id) {
+        if (syncJobService.findJob(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(syncJobService.streamProgress(id));
+    }
+
     @GetMapping("/benchmark")
     @Operation(summary = "Benchmark to identify bottlenecks - tests API, DB read, and DB write speeds")
     public ResponseEntity<Map<String, Object>> benchmark() {
@@ -232,4 +376,125 @@ public class AdminSyncController {
 
         return ResponseEntity.ok(results);
     }
+
+    private Map<String, Object> describeLease(SyncLease lease, String instanceId, SyncLeaseRepository.LeaseExpiry expiry) {
+        // Lease times come from the database clock, so whether it is held is judged there too
+        boolean held = expiry != null && Boolean.TRUE.equals(expiry.getHeld());
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("name", lease.getName());
+        view.put("owner", lease.getOwner());
+        view.put("held", held);
+        view.put("remainingMs", held ? expiry.getRemainingMs() : 0L);
+        view.put("ownedByThisInstance", instanceId.equals(lease.getOwner()));
+        view.put("acquiredAt", lease.getAcquiredAt());
+        view.put("heartbeatAt", lease.getHeartbeatAt());
+        view.put("expiresAt", lease.getExpiresAt());
+        return view;
+    }
+
+    /**
+     * Runs a dry-run diff; nothing is written
+     */
+    private ResponseEntity<Map<String, Object>> dryRun(Supplier<CatalogDiffService.CatalogDiff> diff) {
+        try {
+            return ResponseEntity.ok(Map.of(
+                    "status", "success",
+                    "dryRun", true,
+                    "diff", diff.get()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                    "status", "error",
+                    "message", String.valueOf(e.getMessage())
+            ));
+        }
+    }
+
+    /**
+     * Where to follow a queued sync request
+     */
+    private static Map<String, Object> accepted(SyncScheduler.SyncTicket ticket) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", "accepted");
+        body.put("requestId", ticket.requestId());
+        body.put("type", ticket.type());
+        body.put("requestedType", ticket.requestedType());
+        body.put("merged", ticket.merged());
+        body.put("state", ticket.state());
+        body.put("queueUrl", "/api/admin/sync/queue");
+        body.put("requestUrl", "/api/admin/sync/queue/" + ticket.requestId());
+        if (ticket.jobId() != null) {
+            body.put("jobId", ticket.jobId());
+            body.put("statusUrl", "/api/admin/sync/jobs/" + ticket.jobId());
+            body.put("eventsUrl", "/api/admin/sync/jobs/" + ticket.jobId() + "/events");
+        }
+        return body;
+    }
+
+    /**
+     * Queues a sync and answers 202 with where to follow it. With a wait in seconds, capped at
+     * max-request-wait, it waits that long for the result of whichever sync the request ran as
+     * and answers 202 as well if the sync has not finished by then.
+     */
+    private ResponseEntity<Map<String, Object>> runQueued(SyncJobType type, boolean bulk, int waitSeconds) {
+        SyncScheduler.SyncTicket ticket;
+        try {
+            ticket = syncScheduler.request(type, bulk, SyncScheduler.Origin.ADMIN);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()
+            ));
+        }
+        if (waitSeconds <= 0) {
+            return ResponseEntity.accepted().body(accepted(ticket));
+        }
+
+        try {
+            long waitMs = Math.min(TimeUnit.SECONDS.toMillis(waitSeconds), maxRequestWait.toMillis());
+            SyncScheduler.SyncOutcome outcome = ticket.outcome().get(waitMs, TimeUnit.MILLISECONDS);
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", "success");
+            body.put("jobId", outcome.job().getId());
+            body.put("type", outcome.job().getType());
+            body.put("merged", ticket.merged() || outcome.result() == null);
+            if (outcome.result() instanceof MistralSyncService.SyncResult result) {
+                body.put("created", result.created());
+                body.put("updated", result.updated());
+                body.put("unchanged", result.unchanged());
+                body.put("errors", result.errors());
+                body.put("total", result.total());
+                body.put("duplicatesSkipped", result.duplicates());
+            } else if (outcome.result() instanceof MistralSyncService.StockSyncResult result) {
+                body.put("updated", result.updated());
+                body.put("unchanged", result.unchanged());
+                body.put("errors", result.errors());
+                body.put("total", result.total());
+                body.put("rowsScanned", result.rowsScanned());
+                body.put("durationMs", result.durationMs());
+                body.put("rowsPerSecond", Math.round(result.rowsPerSecond()));
+            } else {
+                body.put("rowsProcessed", outcome.job().getRowsProcessed());
+                body.put("errors", outcome.job().getErrors());
+            }
+            return ResponseEntity.ok(body);
+        } catch (TimeoutException e) {
+            return ResponseEntity.accepted().body(accepted(ticket));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.accepted().body(accepted(ticket));
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            return ResponseEntity.internalServerError().body(Map.of(
+                    "status", "error",
+                    "message", String.valueOf(cause.getMessage())
+            ));
+        }
+    }
 }
@@ -2,7 +2,9 @@ package bg.papa.controller;
 
 import bg.papa.entity.Product;
 import bg.papa.entity.ProductStatus;
+import bg.papa.repository.ProductBulkRepository;
 import bg.papa.repository.ProductRepository;
+import bg.papa.util.Slugs;
 import java.math.BigDecimal;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -29,6 +31,7 @@ import java.util.*;
 public class BarcodeController {
 
     private final ProductRepository productRepository;
+    private final ProductBulkRepository productBulkRepository;
     private final ObjectMapper objectMapper;
 
     @PostMapping("/upload")
@@ -114,6 +117,7 @@ public class BarcodeController {
             // Step 3: Process updates and creates
             log.info("Step 3: Processing updates...");
             List<Product> productsToSave = new ArrayList<>();
+            Map<String, String> wantedHandles = new LinkedHashMap<>();
 
             for (Map.Entry<String, List<String>> entry : barcodesBySku.entrySet()) {
                 String sku = entry.getKey();
@@ -146,7 +150,7 @@ public class BarcodeController {
                     newProduct.setSupplierSku(sku);
                     String name = namesBySku.getOrDefault(sku, "");
                     newProduct.setTitle(name.isEmpty() ? "Product " + sku : name);
-                    newProduct.setHandle(generateHandle(name, sku));
+                    wantedHandles.put(sku, Slugs.productHandle(name, sku));
                     newProduct.setPrice(BigDecimal.ZERO);
                     newProduct.setStock(0);
                     newProduct.setStatus(ProductStatus.DRAFT);
@@ -158,6 +162,12 @@ public class BarcodeController {
                 }
             }
 
+            // New products get unique handles, looked up for the whole upload at once
+            Map<String, String> handles = Slugs.uniqueHandles(wantedHandles, productBulkRepository::findHandleOwners);
+            productsToSave.stream()
+                    .filter(product -> product.getId() == null)
+                    .forEach(product -> product.setHandle(handles.get(product.getSupplierSku())));
+
             // Step 4: Batch save all products
             log.info("Step 4: Saving {} products in batch...", productsToSave.size());
             if (!productsToSave.isEmpty()) {
@@ -260,64 +270,6 @@ public class BarcodeController {
         }
     }
 
-    /**
-     * Generates a URL-friendly handle from product name
-     */
-    private String generateHandle(String name, String code) {
-        if (name == null || name.isEmpty()) {
-            return "product-" + code;
-        }
-
-        // Transliterate Bulgarian to Latin and create slug
-        String handle = transliterate(name.toLowerCase())
-                .replaceAll("[^a-z0-9\\s-]", "")
-                .replaceAll("\\s+", "-")
-                .replaceAll("-+", "-")
-                .replaceAll("^-|-$", "");
-
-        if (handle.isEmpty()) {
-            handle = "product";
-        }
-
-        // Add code to ensure uniqueness
-        handle = handle + "-" + code;
-
-        // Truncate if too long
-        if (handle.length() > 100) {
-            handle = handle.substring(0, 100);
-        }
-
-        return handle;
-    }
-
-    /**
-     * Simple Bulgarian to Latin transliteration
-     */
-    private String transliterate(String text) {
-        if (text == null) return "";
-
-        String[][] replacements = {
-                {"а", "a"}, {"б", "b"}, {"в", "v"}, {"г", "g"}, {"д", "d"},
-                {"е", "e"}, {"ж", "zh"}, {"з", "z"}, {"и", "i"}, {"й", "y"},
-                {"к", "k"}, {"л", "l"}, {"м", "m"}, {"н", "n"}, {"о", "o"},
-                {"п", "p"}, {"р", "r"}, {"с", "s"}, {"т", "t"}, {"у", "u"},
-                {"ф", "f"}, {"х", "h"}, {"ц", "ts"}, {"ч", "ch"}, {"ш", "sh"},
-                {"щ", "sht"}, {"ъ", "a"}, {"ь", "y"}, {"ю", "yu"}, {"я", "ya"},
-                {"А", "A"}, {"Б", "B"}, {"В", "V"}, {"Г", "G"}, {"Д", "D"},
-                {"Е", "E"}, {"Ж", "Zh"}, {"З", "Z"}, {"И", "I"}, {"Й", "Y"},
-                {"К", "K"}, {"Л", "L"}, {"М", "M"}, {"Н", "N"}, {"О", "O"},
-                {"П", "P"}, {"Р", "R"}, {"С", "S"}, {"Т", "T"}, {"У", "U"},
-                {"Ф", "F"}, {"Х", "H"}, {"Ц", "Ts"}, {"Ч", "Ch"}, {"Ш", "Sh"},
-                {"Щ", "Sht"}, {"Ъ", "A"}, {"Ь", "Y"}, {"Ю", "Yu"}, {"Я", "Ya"}
-        };
-
-        for (String[] replacement : replacements) {
-            text = text.replace(replacement[0], replacement[1]);
-        }
-
-        return text;
-    }
-
     /**
      * Parse a CSV line properly handling quoted fields with commas inside
      */
@@ -4,6 +4,7 @@ import bg.papa.dto.response.ProductResponse;
 import bg.papa.entity.Product;
 import bg.papa.entity.ProductStatus;
 import bg.papa.repository.ProductRepository;
+import bg.papa.service.HotSkuTracker;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -23,6 +24,7 @@ import java.util.UUID;
 public class ProductController {
 
     private final ProductRepository productRepository;
+    private final HotSkuTracker hotSkuTracker;
 
     @GetMapping
     @Operation(summary = "List products", description = "Get paginated list of products with optional filtering")
@@ -57,7 +59,7 @@ public class ProductController {
     public ResponseEntity<ProductResponse> getProduct(@PathVariable String handle) {
         return productRepository.findByHandle(handle)
                 .filter(p -> p.getStatus() == ProductStatus.PUBLISHED)
-                .map(ProductResponse::fromEntity)
+                .map(this::viewed)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -67,8 +69,14 @@ public class ProductController {
     public ResponseEntity<ProductResponse> getProductById(@PathVariable UUID id) {
         return productRepository.findById(id)
                 .filter(p -> p.getStatus() == ProductStatus.PUBLISHED)
-                .map(ProductResponse::fromEntity)
+                .map(this::viewed)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
+
+    private ProductResponse viewed(Product product) {
+        // Viewed products get their stock refreshed more often
+        hotSkuTracker.recordView(product.getSupplierSku());
+        return ProductResponse.fromEntity(product);
+    }
 }
@@ -0,0 +1,139 @@
+package bg.papa.dto.mistral;
+
+/**
+ * Allocation-free parsing of the numeric strings Mistral returns.
+ * Invalid input yields a fallback instead of throwing, so bad rows don't cost an exception each.
+ */
+public final class MistralNumbers {
+
+    private MistralNumbers() {
+    }
+
+    /**
+     * Parses a quantity such as "12", "-3" or "12.000"; the fractional part is dropped.
+     * Returns 0 for null, empty or malformed values.
+     */
+    public static int parseQuantity(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return 0;
+        }
+
+        boolean negative = false;
+        char first = text.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+        }
+
+        long value = 0;
+        int digits = 0;
+        int i = start;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = Math.min(value * 10 + (c - '0'), Integer.MAX_VALUE);
+            digits++;
+        }
+
+        if (i < end) {
+            char separator = text.charAt(i);
+            if (separator != '.' && separator != ',') {
+                return 0;
+            }
+            for (i++; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    return 0;
+                }
+            }
+        }
+
+        if (digits == 0) {
+            return 0;
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * Parses a decimal amount such as "12.5", "12,50" or "3" into cents, rounding half up past two decimals.
+     * Returns the fallback for null, empty or malformed values.
+     */
+    public static long parseCents(CharSequence text, long fallback) {
+        if (text == null) {
+            return fallback;
+        }
+
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return fallback;
+        }
+
+        boolean negative = false;
+        char first = text.charAt(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        int i = start;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (units > Long.MAX_VALUE / 1000) {
+                return fallback;
+            }
+            units = units * 10 + (c - '0');
+            digits++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end) {
+            char separator = text.charAt(i);
+            if (separator != '.' && separator != ',') {
+                return fallback;
+            }
+            for (i++; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    return fallback;
+                }
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (c - '0');
+                } else if (fractionDigits == 2) {
+                    roundUp = c >= '5';
+                }
+                fractionDigits++;
+                digits++;
+            }
+        }
+
+        if (digits == 0) {
+            return fallback;
+        }
+        if (fractionDigits == 1) {
+            fraction *= 10;
+        }
+
+        long cents = units * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+}
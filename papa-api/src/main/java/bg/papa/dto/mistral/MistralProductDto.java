@@ -152,18 +152,10 @@ public class MistralProductDto {
 
     // Helper methods
     public BigDecimal getSalesPriceAsBigDecimal() {
-        try {
-            return salesPrice != null ? new BigDecimal(salesPrice) : BigDecimal.ZERO;
-        } catch (NumberFormatException e) {
-            return BigDecimal.ZERO;
-        }
+        return BigDecimal.valueOf(MistralNumbers.parseCents(salesPrice, 0L), 2);
     }
 
     public Integer getQttyAsInteger() {
-        try {
-            return qtty != null ? Integer.parseInt(qtty) : 0;
-        } catch (NumberFormatException e) {
-            return 0;
-        }
+        return MistralNumbers.parseQuantity(qtty);
     }
 }
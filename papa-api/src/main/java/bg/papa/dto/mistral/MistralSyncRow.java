@@ -0,0 +1,41 @@
+package bg.papa.dto.mistral;
+
+import java.math.BigDecimal;
+
+/**
+ * Compact projection of a Mistral product with only the fields stock and price sync write.
+ * Prices are scaled to cents; NO_PRICE marks a missing base price and NO_UCODE a missing UCode.
+ */
+public record MistralSyncRow(int uCode, String code, String name, int quantity, long salesPriceCents, long baseSalePriceCents) {
+
+    public static final long NO_PRICE = -1L;
+    public static final int NO_UCODE = -1;
+
+    public static MistralSyncRow from(MistralProductDto product) {
+        return new MistralSyncRow(
+                product.getUCode() != null ? product.getUCode() : NO_UCODE,
+                product.getCode(),
+                product.getName(),
+                MistralNumbers.parseQuantity(product.getQtty()),
+                MistralNumbers.parseCents(product.getSalesPrice(), 0L),
+                product.getBaseSalePrice() != null
+                        ? MistralNumbers.parseCents(product.getBaseSalePrice().toPlainString(), NO_PRICE)
+                        : NO_PRICE
+        );
+    }
+
+    public BigDecimal salesPrice() {
+        return BigDecimal.valueOf(salesPriceCents, 2);
+    }
+
+    public BigDecimal baseSalePrice() {
+        return baseSalePriceCents != NO_PRICE ? BigDecimal.valueOf(baseSalePriceCents, 2) : null;
+    }
+
+    /**
+     * Base price if it is above the sales price (i.e. the product is discounted), otherwise null
+     */
+    public BigDecimal compareAtPrice() {
+        return baseSalePriceCents != NO_PRICE && baseSalePriceCents > salesPriceCents ? baseSalePrice() : null;
+    }
+}
@@ -0,0 +1,29 @@
+package bg.papa.dto.response;
+
+import bg.papa.entity.SyncJobStatus;
+import bg.papa.entity.SyncJobType;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+public class SyncJobResponse {
+    private UUID id;
+    private SyncJobType type;
+    private SyncJobStatus status;
+    private Integer cursor;
+    private Integer rowsProcessed;
+    private Integer expectedRows;
+    private Double percent;
+    private Double rowsPerSecond;
+    private Long etaSeconds;
+    private Integer errors;
+    private Integer failedWindows;
+    private String lastError;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -77,6 +78,11 @@ public class Product {
     @Column(nullable = false)
     private ProductStatus status = ProductStatus.DRAFT;
 
+    // Set when the catalog sync unpublished the product as missing from the supplier; republished when it reappears
+    @ColumnDefault("false")
+    @Column(name = "unpublished_by_sync", nullable = false)
+    private Boolean unpublishedBySync = false;
+
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
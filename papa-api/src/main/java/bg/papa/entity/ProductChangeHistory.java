@@ -0,0 +1,41 @@
+package bg.papa.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * How often a product's supplier stock changes, as observed by stock syncs.
+ * Keyed by supplier SKU; written with set-based statements by ProductChangeHistoryRepository, only when
+ * a SKU is first seen, its stock changed or it moved to another row. When it was last checked comes from
+ * the row window holding it (see StockCheckWindow).
+ * The adaptive stock sync derives each SKU's refresh interval from changes over the observed time.
+ */
+@Entity
+@Table(name = "product_change_history")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductChangeHistory {
+
+    @Id
+    @Column(name = "supplier_sku")
+    private String supplierSku;
+
+    // GetAllDataByPart row the product was last seen at
+    @Column(name = "row_number", nullable = false)
+    private Integer rowNumber;
+
+    @Column(name = "first_seen_at", nullable = false)
+    private LocalDateTime firstSeenAt;
+
+    @Column(name = "last_changed_at")
+    private LocalDateTime lastChangedAt;
+
+    // Times the stock was found changed
+    @Column(nullable = false)
+    private Integer changes;
+}
@@ -0,0 +1,39 @@
+package bg.papa.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * One supplier price change of a product, appended by the syncs whenever a write changes the price.
+ * Keyed by supplier SKU like the rest of the sync state, so it survives a product being recreated.
+ */
+@Entity
+@Table(name = "product_price_history", indexes = {
+    @Index(name = "idx_product_price_history_sku", columnList = "supplier_sku, changed_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPriceHistory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "supplier_sku", nullable = false)
+    private String supplierSku;
+
+    @Column(name = "old_price", precision = 10, scale = 2, nullable = false)
+    private BigDecimal oldPrice;
+
+    @Column(name = "new_price", precision = 10, scale = 2, nullable = false)
+    private BigDecimal newPrice;
+
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+}
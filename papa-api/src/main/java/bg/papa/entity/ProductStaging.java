@@ -0,0 +1,55 @@
+package bg.papa.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * One Mistral row staged by a catalog sweep before it is merged into products.
+ * Written with COPY and merged with set-based statements by ProductStagingRepository; the table is
+ * created UNLOGGED by db/sync-schema.sql, as staged rows can always be fetched again.
+ */
+@Entity
+@Table(name = "product_staging", indexes = {
+    @Index(name = "idx_product_staging_job_sku", columnList = "job_id, supplier_sku")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductStaging {
+
+    // Id of the product if the row creates one
+    @Id
+    private UUID id;
+
+    @Column(name = "job_id", nullable = false)
+    private UUID jobId;
+
+    @Column(name = "row_number", nullable = false)
+    private Integer rowNumber;
+
+    @Column(name = "supplier_sku", nullable = false, columnDefinition = "TEXT")
+    private String supplierSku;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String handle;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String title;
+
+    @Column(precision = 10, scale = 2)
+    private BigDecimal price;
+
+    @Column(name = "compare_at_price", precision = 10, scale = 2)
+    private BigDecimal compareAtPrice;
+
+    @Column(nullable = false)
+    private Integer stock;
+
+    @Column(nullable = false)
+    private Long fingerprint;
+}
@@ -0,0 +1,31 @@
+package bg.papa.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Last supplier data seen for a product, used to skip unchanged rows during sync.
+ * Keyed by supplier SKU; written with set-based statements by ProductSyncStateRepository.
+ */
+@Entity
+@Table(name = "product_sync_state")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSyncState {
+
+    @Id
+    @Column(name = "supplier_sku")
+    private String supplierSku;
+
+    // Hash of Code/SalesPrice/BaseSalePrice/Qtty/Name as last written to products
+    @Column(nullable = false)
+    private Long fingerprint;
+
+    @Column(name = "synced_at", nullable = false)
+    private LocalDateTime syncedAt;
+}
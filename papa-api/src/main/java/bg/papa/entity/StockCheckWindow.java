@@ -0,0 +1,30 @@
+package bg.papa.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * When a stock sync last checked a window of GetAllDataByPart rows, one row per window instead of one per SKU.
+ * Keyed by the window's first row; written with set-based statements by ProductChangeHistoryRepository.
+ */
+@Entity
+@Table(name = "stock_check_windows")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockCheckWindow {
+
+    @Id
+    @Column(name = "from_row")
+    private Integer fromRow;
+
+    @Column(name = "to_row", nullable = false)
+    private Integer toRow;
+
+    @Column(name = "checked_at", nullable = false)
+    private LocalDateTime checkedAt;
+}
@@ -0,0 +1,68 @@
+package bg.papa.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Persistent state of a row sweep, so an interrupted sync can resume from its last committed window
+ */
+@Entity
+@Table(name = "sync_jobs", indexes = {
+    @Index(name = "idx_sync_jobs_type_status", columnList = "type, status")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private SyncJobType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private SyncJobStatus status = SyncJobStatus.RUNNING;
+
+    // Next row to fetch; every row before it has been committed
+    @Column(name = "cursor_row", nullable = false)
+    private Integer cursor = 1;
+
+    @Column(name = "failed_windows", columnDefinition = "TEXT")
+    private String failedWindows; // JSON array of {fromRow, toRow}
+
+    @Column(name = "rows_processed", nullable = false)
+    private Integer rowsProcessed = 0;
+
+    @Column(name = "expected_rows")
+    private Integer expectedRows; // From the last completed job of the same type, for the ETA
+
+    @Column(nullable = false)
+    private Integer errors = 0;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    // Lease instance id of the instance that last started or resumed the job
+    @Column(name = "owner")
+    private String owner;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,9 @@
+package bg.papa.entity;
+
+public enum SyncJobStatus {
+    RUNNING,        // In progress (or the instance died mid-run)
+    INTERRUPTED,    // Stopped by an error, resumable from its cursor
+    COMPLETED,      // All windows synced
+    PARTIAL,        // Sweep finished but some windows still failed after retries
+    FAILED          // Abandoned, will not be resumed
+}
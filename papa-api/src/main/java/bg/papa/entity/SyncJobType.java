@@ -0,0 +1,36 @@
+package bg.papa.entity;
+
+public enum SyncJobType {
+    STOCK(true),            // Batch stock sweep over GetAllDataByPart
+    PRICE(true),            // Full price/product sweep over GetAllDataByPart
+    PRODUCTS(false),        // Full product sync, each Mistral product written once
+    STOCK_ONLY(false),      // Per-product stock refresh of existing products
+    ADAPTIVE_STOCK(false);  // Stock refresh of the row windows holding SKUs due by their change rate
+
+    private final boolean resumable;
+
+    SyncJobType(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * Whether an unfinished job continues from its cursor instead of starting over
+     */
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * Whether a run of this type also refreshes everything a run of the other type would,
+     * so a request for the other type can be merged into it
+     */
+    public boolean covers(SyncJobType other) {
+        return this == other || switch (this) {
+            // Full sweeps write stock and prices of every catalog row
+            case PRICE, PRODUCTS -> true;
+            // The stock sweep reaches every product the per-product and adaptive stock refreshes would
+            case STOCK -> other == STOCK_ONLY || other == ADAPTIVE_STOCK;
+            case STOCK_ONLY, ADAPTIVE_STOCK -> false;
+        };
+    }
+}
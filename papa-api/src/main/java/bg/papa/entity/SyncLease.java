@@ -0,0 +1,37 @@
+package bg.papa.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Cluster-wide lease on a sync, so only one instance runs it at a time.
+ * The holder renews expiresAt with a heartbeat; once it lapses another instance may take the lease over.
+ * Times come from the database clock; written with atomic statements by SyncLeaseRepository.
+ * They are stored with time zone (now()), so instances whose JVMs run in different zones agree on expiry.
+ */
+@Entity
+@Table(name = "sync_leases")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncLease {
+
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private String owner; // Instance id of the current or last holder
+
+    @Column(name = "acquired_at", nullable = false)
+    private Instant acquiredAt;
+
+    @Column(name = "heartbeat_at", nullable = false)
+    private Instant heartbeatAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+}
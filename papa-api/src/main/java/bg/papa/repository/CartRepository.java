@@ -6,6 +6,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -16,4 +18,8 @@ public interface CartRepository extends JpaRepository<Cart, UUID> {
     Optional<Cart> findByIdWithItems(@Param("id") UUID id);
 
     Optional<Cart> findByCustomerId(UUID customerId);
+
+    @Query("SELECT DISTINCT p.supplierSku FROM Cart c JOIN c.items i JOIN i.product p " +
+           "WHERE (c.updatedAt >= :since OR i.updatedAt >= :since) AND p.supplierSku IS NOT NULL")
+    List<String> findSupplierSkusInCartsActiveSince(@Param("since") LocalDateTime since);
 }
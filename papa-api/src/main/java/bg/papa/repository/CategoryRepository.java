@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -14,6 +15,8 @@ public interface CategoryRepository extends JpaRepository<Category, UUID> {
 
     Optional<Category> findByHandle(String handle);
 
+    List<Category> findByHandleIn(Collection<String> handles);
+
     List<Category> findByParentIsNullOrderBySortOrderAsc();
 
     List<Category> findByParentIdOrderBySortOrderAsc(UUID parentId);
@@ -9,6 +9,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -26,4 +28,8 @@ public interface OrderRepository extends JpaRepository<Order, UUID> {
 
     @Query("SELECT o FROM Order o LEFT JOIN FETCH o.items WHERE o.id = :id")
     Optional<Order> findByIdWithItems(@Param("id") UUID id);
+
+    @Query("SELECT DISTINCT i.supplierSku FROM Order o JOIN o.items i " +
+           "WHERE o.createdAt >= :since AND i.supplierSku IS NOT NULL")
+    List<String> findSupplierSkusOrderedSince(@Param("since") LocalDateTime since);
 }
@@ -0,0 +1,340 @@
+package bg.papa.repository;
+
+import bg.papa.entity.ProductStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Set-based product writes over plain JDBC.
+ * Used by the sync paths where one JPA round trip per product is too slow.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductBulkRepository {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    // CTEs share the statement's snapshot, so previous holds the prices from before the upsert
+    private static final String UPSERT_SQL = """
+            WITH input AS (
+                SELECT *
+                FROM unnest(?::uuid[], ?::text[], ?::text[], ?::text[], ?::numeric[], ?::numeric[], ?::int[])
+                     AS t(id, supplier_sku, handle, title, price, compare_at_price, stock)
+            ),
+            previous AS (
+                SELECT p.supplier_sku, p.price
+                FROM products p
+                JOIN input i ON i.supplier_sku = p.supplier_sku
+            ),
+            upserted AS (
+                INSERT INTO products (id, supplier_sku, handle, title, supplier_title, price, compare_at_price,
+                                      stock, status, created_at, updated_at)
+                SELECT i.id, i.supplier_sku, i.handle, i.title, i.title, i.price, i.compare_at_price,
+                       i.stock, ?, LOCALTIMESTAMP, LOCALTIMESTAMP
+                FROM input i
+                ON CONFLICT (supplier_sku) DO UPDATE SET
+                    supplier_title = EXCLUDED.supplier_title,
+                    price = EXCLUDED.price,
+                    compare_at_price = EXCLUDED.compare_at_price,
+                    stock = EXCLUDED.stock,
+                    updated_at = LOCALTIMESTAMP
+                RETURNING supplier_sku, price, (xmax = 0) AS inserted
+            ),
+            price_history AS (
+                INSERT INTO product_price_history (supplier_sku, old_price, new_price, changed_at)
+                SELECT u.supplier_sku, p.price, u.price, LOCALTIMESTAMP
+                FROM upserted u
+                JOIN previous p ON p.supplier_sku = u.supplier_sku
+                WHERE p.price IS DISTINCT FROM u.price
+            )
+            SELECT inserted FROM upserted
+            """;
+
+    // The fingerprint of a changed row no longer describes the product, so it is dropped with the same statement
+    private static final String UPDATE_STOCK_SQL = """
+            WITH changed AS (
+                UPDATE products p
+                SET stock = t.stock, updated_at = LOCALTIMESTAMP
+                FROM unnest(?::text[], ?::int[]) AS t(supplier_sku, stock)
+                WHERE p.supplier_sku = t.supplier_sku
+                  AND p.stock IS DISTINCT FROM t.stock
+                RETURNING p.supplier_sku
+            ),
+            stale AS (
+                DELETE FROM product_sync_state s
+                USING changed c
+                WHERE s.supplier_sku = c.supplier_sku
+            )
+            SELECT supplier_sku FROM changed
+            """;
+
+    private static final String SNAPSHOT_SQL = """
+            SELECT supplier_sku, supplier_title, price, compare_at_price, stock, status
+            FROM products
+            WHERE supplier_sku IS NOT NULL
+            """;
+
+    private static final String HANDLE_OWNERS_SQL = """
+            SELECT handle, supplier_sku
+            FROM products
+            WHERE handle = ANY(?)
+            """;
+
+    private static final String EXISTING_SKUS_SQL = """
+            SELECT supplier_sku
+            FROM products
+            WHERE supplier_sku = ANY(?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts new products and updates supplier data of existing ones, keyed by supplier SKU.
+     * Price changes of existing products are appended to product_price_history by the same statement.
+     * Rows must have distinct SKUs. Counts come from the database (xmax = 0 marks an inserted row).
+     * A chunk the database rejects (e.g. a handle taken since it was chosen) is retried row by row,
+     * so only the offending rows fail; they are returned with their error instead of failing the call.
+     */
+    public UpsertCounts upsertProducts(List<ProductUpsertRow> rows) {
+        int created = 0;
+        int updated = 0;
+        Map<String, String> failed = new LinkedHashMap<>();
+
+        for (int start = 0; start < rows.size(); start += CHUNK_SIZE) {
+            List<ProductUpsertRow> chunk = rows.subList(start, Math.min(start + CHUNK_SIZE, rows.size()));
+            try {
+                UpsertCounts counts = upsertChunk(chunk);
+                created += counts.created();
+                updated += counts.updated();
+            } catch (DataAccessException e) {
+                for (ProductUpsertRow row : chunk) {
+                    try {
+                        UpsertCounts counts = upsertChunk(List.of(row));
+                        created += counts.created();
+                        updated += counts.updated();
+                    } catch (DataAccessException rowError) {
+                        failed.put(row.supplierSku(), rowError.getMostSpecificCause().getMessage());
+                    }
+                }
+            }
+        }
+
+        return new UpsertCounts(created, updated, failed);
+    }
+
+    /**
+     * Sets stock for many products in one statement per chunk, keyed by supplier SKU.
+     * Rows whose stock already matches are not touched. Changed rows lose their sync fingerprint,
+     * so the next product sync rewrites them in full. Returns the number of rows actually changed.
+     */
+    public int updateStock(Map<String, Integer> stockBySku) {
+        return updateStockReturningChanged(stockBySku).size();
+    }
+
+    /**
+     * Same as {@link #updateStock(Map)}, returning the SKUs whose stock actually changed
+     */
+    public Set<String> updateStockReturningChanged(Map<String, Integer> stockBySku) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(stockBySku.entrySet());
+        Set<String> changed = new HashSet<>();
+
+        for (int start = 0; start < entries.size(); start += CHUNK_SIZE) {
+            List<Map.Entry<String, Integer>> chunk = entries.subList(start, Math.min(start + CHUNK_SIZE, entries.size()));
+            String[] skus = new String[chunk.size()];
+            Integer[] stocks = new Integer[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                skus[i] = chunk.get(i).getKey();
+                stocks[i] = chunk.get(i).getValue();
+            }
+
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(UPDATE_STOCK_SQL)) {
+                    statement.setArray(1, connection.createArrayOf("text", skus));
+                    statement.setArray(2, connection.createArrayOf("int4", stocks));
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            changed.add(resultSet.getString(1));
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        return changed;
+    }
+
+    /**
+     * Loads the supplier data of every product with a supplier SKU in one query, keyed by SKU.
+     * Prices are held as cents, so the map stays small enough for the whole catalog.
+     */
+    public Map<String, SupplierSnapshot> loadSupplierSnapshots() {
+        Map<String, SupplierSnapshot> snapshots = new HashMap<>();
+        jdbcTemplate.query(SNAPSHOT_SQL, (RowCallbackHandler) resultSet -> {
+            BigDecimal compareAtPrice = resultSet.getBigDecimal(4);
+            int stock = resultSet.getInt(5);
+            snapshots.put(resultSet.getString(1), new SupplierSnapshot(
+                    resultSet.getString(2),
+                    toCents(resultSet.getBigDecimal(3)),
+                    compareAtPrice != null ? toCents(compareAtPrice) : SupplierSnapshot.NO_PRICE,
+                    resultSet.wasNull() ? 0 : stock,
+                    ProductStatus.PUBLISHED.name().equals(resultSet.getString(6))
+            ));
+        });
+        return snapshots;
+    }
+
+    /**
+     * Returns which of the given handles are taken, with the supplier SKU of the product holding each
+     * (null for products without one). One query for the whole batch.
+     */
+    public Map<String, String> findHandleOwners(Collection<String> handles) {
+        if (handles.isEmpty()) {
+            return Map.of();
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<Map<String, String>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(HANDLE_OWNERS_SQL)) {
+                statement.setArray(1, connection.createArrayOf("text", handles.toArray()));
+
+                Map<String, String> owners = new HashMap<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        owners.put(resultSet.getString(1), resultSet.getString(2));
+                    }
+                }
+                return owners;
+            }
+        });
+    }
+
+    /**
+     * Returns which of the given supplier SKUs already have a product. One query for the whole batch.
+     */
+    public Set<String> findExistingSkus(Collection<String> supplierSkus) {
+        if (supplierSkus.isEmpty()) {
+            return Set.of();
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<Set<String>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(EXISTING_SKUS_SQL)) {
+                statement.setArray(1, connection.createArrayOf("text", supplierSkus.toArray()));
+
+                Set<String> existing = new HashSet<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        existing.add(resultSet.getString(1));
+                    }
+                }
+                return existing;
+            }
+        });
+    }
+
+    private static long toCents(BigDecimal price) {
+        return price != null ? price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue() : 0L;
+    }
+
+    private UpsertCounts upsertChunk(List<ProductUpsertRow> chunk) {
+        int size = chunk.size();
+        UUID[] ids = new UUID[size];
+        String[] skus = new String[size];
+        String[] handles = new String[size];
+        String[] titles = new String[size];
+        BigDecimal[] prices = new BigDecimal[size];
+        BigDecimal[] compareAtPrices = new BigDecimal[size];
+        Integer[] stocks = new Integer[size];
+
+        for (int i = 0; i < size; i++) {
+            ProductUpsertRow row = chunk.get(i);
+            ids[i] = UUID.randomUUID();
+            skus[i] = row.supplierSku();
+            handles[i] = row.handle();
+            titles[i] = row.title();
+            prices[i] = row.price();
+            compareAtPrices[i] = row.compareAtPrice();
+            stocks[i] = row.stock();
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<UpsertCounts>) connection -> {
+            // Inside a transaction a failed statement aborts it; the savepoint keeps the rest usable
+            Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(UPSERT_SQL)) {
+                statement.setArray(1, connection.createArrayOf("uuid", ids));
+                statement.setArray(2, connection.createArrayOf("text", skus));
+                statement.setArray(3, connection.createArrayOf("text", handles));
+                statement.setArray(4, connection.createArrayOf("text", titles));
+                statement.setArray(5, connection.createArrayOf("numeric", prices));
+                statement.setArray(6, connection.createArrayOf("numeric", compareAtPrices));
+                statement.setArray(7, connection.createArrayOf("int4", stocks));
+                statement.setString(8, ProductStatus.PUBLISHED.name());
+
+                int created = 0;
+                int updated = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        if (resultSet.getBoolean(1)) {
+                            created++;
+                        } else {
+                            updated++;
+                        }
+                    }
+                }
+                if (savepoint != null) {
+                    connection.releaseSavepoint(savepoint);
+                }
+                return new UpsertCounts(created, updated, Map.of());
+            } catch (SQLException e) {
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Supplier data for one product. Handle and title are only used when the product is created.
+     */
+    public record ProductUpsertRow(
+            String supplierSku,
+            String handle,
+            String title,
+            BigDecimal price,
+            BigDecimal compareAtPrice,
+            int stock
+    ) {}
+
+    /**
+     * Supplier data of a product as stored; compareAtPriceCents is NO_PRICE when there is none
+     */
+    public record SupplierSnapshot(String supplierTitle, long priceCents, long compareAtPriceCents, int stock,
+                                   boolean published) {
+        public static final long NO_PRICE = -1L;
+    }
+
+    /**
+     * Exact insert/update counts reported by the database, and the rows it rejected with their error by supplier SKU
+     */
+    public record UpsertCounts(int created, int updated, Map<String, String> failed) {}
+}
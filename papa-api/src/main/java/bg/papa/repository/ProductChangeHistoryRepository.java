@@ -0,0 +1,140 @@
+package bg.papa.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set-based access to product_change_history and stock_check_windows
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductChangeHistoryRepository {
+
+    // Unchanged SKUs already tracked at the same row are filtered out before the insert, so they are not touched
+    private static final String RECORD_SQL = """
+            INSERT INTO product_change_history (supplier_sku, row_number, first_seen_at, last_changed_at, changes)
+            SELECT t.supplier_sku, t.row_number, LOCALTIMESTAMP,
+                   CASE WHEN t.changed THEN LOCALTIMESTAMP END, CASE WHEN t.changed THEN 1 ELSE 0 END
+            FROM unnest(?::text[], ?::int4[], ?::bool[]) AS t(supplier_sku, row_number, changed)
+            LEFT JOIN product_change_history h ON h.supplier_sku = t.supplier_sku
+            WHERE t.changed OR h.supplier_sku IS NULL OR h.row_number <> t.row_number
+            ON CONFLICT (supplier_sku) DO UPDATE SET
+                row_number = EXCLUDED.row_number,
+                last_changed_at = COALESCE(EXCLUDED.last_changed_at, product_change_history.last_changed_at),
+                changes = product_change_history.changes + EXCLUDED.changes
+            """;
+
+    private static final String RECORD_WINDOW_SQL = """
+            INSERT INTO stock_check_windows (from_row, to_row, checked_at)
+            VALUES (?, ?, LOCALTIMESTAMP)
+            ON CONFLICT (from_row) DO UPDATE SET
+                to_row = EXCLUDED.to_row,
+                checked_at = EXCLUDED.checked_at
+            """;
+
+    // A SKU was last checked with the latest window covering its row, or when first seen if none has since.
+    // Interval = target changes per check * (observed seconds + prior seconds) / (changes + 1), clamped
+    private static final String DUE_ROWS_SQL = """
+            SELECT h.row_number
+            FROM product_change_history h
+            LEFT JOIN LATERAL (
+                SELECT max(w.checked_at) AS checked_at
+                FROM stock_check_windows w
+                WHERE w.from_row <= h.row_number AND w.to_row >= h.row_number
+            ) w ON true
+            WHERE GREATEST(w.checked_at, h.first_seen_at) <= LOCALTIMESTAMP - make_interval(secs => LEAST(GREATEST(
+                      ? * (EXTRACT(EPOCH FROM (LOCALTIMESTAMP - h.first_seen_at)) + ?) / (h.changes + 1), ?), ?))
+            ORDER BY h.row_number
+            """;
+
+    private static final String COUNT_SQL = "SELECT count(*) FROM product_change_history";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Records the stock checks of SKUs that changed, are seen for the first time or moved to another row;
+     * the others are left alone, their check is recorded by {@link #recordCheckedWindow(int, int)}.
+     * A SKU listed twice keeps its last observation. Returns the number of history rows written.
+     */
+    public int recordObservations(Collection<Observation> observations) {
+        if (observations.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, Observation> bySku = new LinkedHashMap<>();
+        observations.forEach(observation -> bySku.put(observation.supplierSku(), observation));
+
+        String[] skus = new String[bySku.size()];
+        Integer[] rows = new Integer[bySku.size()];
+        Boolean[] changed = new Boolean[bySku.size()];
+        int i = 0;
+        for (Observation observation : bySku.values()) {
+            skus[i] = observation.supplierSku();
+            rows[i] = observation.rowNumber();
+            changed[i] = observation.changed();
+            i++;
+        }
+
+        Integer written = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(RECORD_SQL)) {
+                statement.setArray(1, connection.createArrayOf("text", skus));
+                statement.setArray(2, connection.createArrayOf("int4", rows));
+                statement.setArray(3, connection.createArrayOf("bool", changed));
+                return statement.executeUpdate();
+            }
+        });
+        return written != null ? written : 0;
+    }
+
+    /**
+     * Records that a stock sync checked every SKU in the rows, with one row for the whole window
+     */
+    public void recordCheckedWindow(int fromRow, int toRow) {
+        jdbcTemplate.update(RECORD_WINDOW_SQL, fromRow, toRow);
+    }
+
+    /**
+     * Rows of SKUs whose refresh interval has passed since their window was last checked.
+     * A SKU's interval grows with the time it has been observed and shrinks with every change seen,
+     * starting from prior (as if observed that long with one change).
+     */
+    public List<Integer> findDueRows(double targetChangesPerCheck, Duration prior, Duration minInterval, Duration maxInterval) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Integer>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DUE_ROWS_SQL)) {
+                statement.setDouble(1, targetChangesPerCheck);
+                statement.setDouble(2, prior.toSeconds());
+                statement.setDouble(3, minInterval.toSeconds());
+                statement.setDouble(4, maxInterval.toSeconds());
+
+                List<Integer> rows = new ArrayList<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        rows.add(resultSet.getInt(1));
+                    }
+                }
+                return rows;
+            }
+        });
+    }
+
+    public long countTracked() {
+        Long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * A SKU seen at a row during a stock sync, and whether its stock differed from ours
+     */
+    public record Observation(String supplierSku, int rowNumber, boolean changed) {}
+}
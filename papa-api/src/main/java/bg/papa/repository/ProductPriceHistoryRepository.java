@@ -0,0 +1,13 @@
+package bg.papa.repository;
+
+import bg.papa.entity.ProductPriceHistory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ProductPriceHistoryRepository extends JpaRepository<ProductPriceHistory, Long> {
+
+    List<ProductPriceHistory> findBySupplierSkuOrderByChangedAtDesc(String supplierSku);
+}
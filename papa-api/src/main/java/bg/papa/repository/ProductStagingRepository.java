@@ -0,0 +1,363 @@
+package bg.papa.repository;
+
+import bg.papa.entity.ProductStatus;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bulk ingest of a full catalog sweep, bypassing JPA.
+ * Sweep windows are streamed into the unlogged product_staging table with COPY FROM STDIN,
+ * then set-based statements merge the staged rows into products, one chunk of SKUs at a time.
+ * Rows are keyed by sync job, so a resumed job keeps what it staged before it was interrupted.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductStagingRepository {
+
+    private static final String COPY_SQL = """
+            COPY product_staging (job_id, row_number, id, supplier_sku, handle, title, price, compare_at_price,
+                                  stock, fingerprint)
+            FROM STDIN WITH (FORMAT csv)
+            """;
+
+    private static final int MERGE_CHUNK_SIZE = 1000;
+
+    private static final String CHUNK_SKUS_SQL = """
+            SELECT DISTINCT supplier_sku
+            FROM product_staging
+            WHERE job_id = ? AND supplier_sku > ?
+            ORDER BY supplier_sku
+            LIMIT ?
+            """;
+
+    /*
+     * Merges the staged rows of the given SKUs, deduplicated by SKU (the row seen last wins), in one statement:
+     * new SKUs are inserted as published products, existing ones get supplier data only where it differs,
+     * products the sync unpublished earlier are published again, price changes are appended to the price
+     * history and fingerprints are stored so the per-window sync path skips these rows next time.
+     * CTEs share the statement's snapshot, so previous holds the products as they were before the upsert.
+     */
+    private static final String MERGE_SQL = """
+            WITH staged AS (
+                SELECT DISTINCT ON (supplier_sku) id, supplier_sku, handle, title, price, compare_at_price,
+                                                  stock, fingerprint
+                FROM product_staging
+                WHERE job_id = ? AND supplier_sku = ANY(?)
+                ORDER BY supplier_sku, row_number DESC
+            ),
+            previous AS (
+                SELECT p.supplier_sku, p.price, (p.unpublished_by_sync AND p.status = ?) AS republish
+                FROM products p
+                JOIN staged s ON s.supplier_sku = p.supplier_sku
+            ),
+            upserted AS (
+                INSERT INTO products (id, supplier_sku, handle, title, supplier_title, price, compare_at_price,
+                                      stock, status, created_at, updated_at)
+                SELECT s.id, s.supplier_sku, s.handle, s.title, s.title, s.price, s.compare_at_price,
+                       s.stock, ?, LOCALTIMESTAMP, LOCALTIMESTAMP
+                FROM staged s
+                ON CONFLICT (supplier_sku) DO UPDATE SET
+                    supplier_title = EXCLUDED.supplier_title,
+                    price = EXCLUDED.price,
+                    compare_at_price = EXCLUDED.compare_at_price,
+                    stock = EXCLUDED.stock,
+                    status = CASE WHEN products.unpublished_by_sync AND products.status = ?
+                                  THEN EXCLUDED.status ELSE products.status END,
+                    unpublished_by_sync = false,
+                    updated_at = LOCALTIMESTAMP
+                WHERE products.supplier_title IS DISTINCT FROM EXCLUDED.supplier_title
+                   OR products.price IS DISTINCT FROM EXCLUDED.price
+                   OR products.compare_at_price IS DISTINCT FROM EXCLUDED.compare_at_price
+                   OR products.stock IS DISTINCT FROM EXCLUDED.stock
+                   OR products.unpublished_by_sync
+                RETURNING supplier_sku, price, (xmax = 0) AS inserted
+            ),
+            price_history AS (
+                INSERT INTO product_price_history (supplier_sku, old_price, new_price, changed_at)
+                SELECT u.supplier_sku, p.price, u.price, LOCALTIMESTAMP
+                FROM upserted u
+                JOIN previous p ON p.supplier_sku = u.supplier_sku
+                WHERE p.price IS DISTINCT FROM u.price
+            ),
+            fingerprints AS (
+                INSERT INTO product_sync_state (supplier_sku, fingerprint, synced_at)
+                SELECT s.supplier_sku, s.fingerprint, LOCALTIMESTAMP
+                FROM staged s
+                ON CONFLICT (supplier_sku) DO UPDATE SET
+                    fingerprint = EXCLUDED.fingerprint,
+                    synced_at = EXCLUDED.synced_at
+            )
+            SELECT (SELECT count(*) FROM staged),
+                   (SELECT count(*) FROM upserted WHERE inserted),
+                   (SELECT count(*) FROM upserted WHERE NOT inserted),
+                   (SELECT count(*) FROM upserted u JOIN previous p ON p.supplier_sku = u.supplier_sku WHERE p.republish)
+            """;
+
+    /*
+     * Published supplier products missing from the sweep are unpublished and flagged, so a later sweep that
+     * finds them again republishes them. Only when the caller allows it and the missing products are at most
+     * the given share of published supplier products.
+     */
+    private static final String UNPUBLISH_SQL = """
+            WITH published AS (
+                SELECT p.id, p.supplier_sku
+                FROM products p
+                WHERE p.status = ? AND p.supplier_sku IS NOT NULL
+            ),
+            missing AS (
+                SELECT p.id
+                FROM published p
+                WHERE NOT EXISTS (SELECT 1 FROM product_staging s WHERE s.job_id = ? AND s.supplier_sku = p.supplier_sku)
+            ),
+            unpublished AS (
+                UPDATE products p
+                SET status = ?, unpublished_by_sync = true, updated_at = LOCALTIMESTAMP
+                FROM missing m
+                WHERE p.id = m.id
+                  AND ?::boolean
+                  AND (SELECT count(*) FROM missing) <= ?::float8 * (SELECT count(*) FROM published)
+                RETURNING p.id
+            )
+            SELECT (SELECT count(*) FROM missing),
+                   (SELECT count(*) FROM unpublished)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Streams rows into the staging table with COPY FROM STDIN. Returns the number of rows copied.
+     */
+    public long copyRows(UUID jobId, List<StagedProduct> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                PGCopyOutputStream stream = new PGCopyOutputStream(copyIn, 64 * 1024);
+                Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+                for (StagedProduct row : rows) {
+                    writeRow(writer, jobId, row);
+                }
+                writer.flush();
+                return stream.endCopy();
+            } catch (IOException e) {
+                throw new SQLException("COPY into product_staging failed", e);
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+    }
+
+    /**
+     * Next chunk of distinct SKUs staged by a job, in SKU order after the given one ("" for the first chunk).
+     * Merging chunk by chunk, each in its own transaction, keeps row locks on products short.
+     */
+    public List<String> findStagedSkus(UUID jobId, String after) {
+        return jdbcTemplate.queryForList(CHUNK_SKUS_SQL, String.class, jobId, after, MERGE_CHUNK_SIZE);
+    }
+
+    /**
+     * Merges the rows staged by a job for the given SKUs into products with one statement.
+     * A chunk the database rejects (e.g. a handle taken since it was chosen) is retried SKU by SKU,
+     * so only the offending SKUs fail; they are returned with their error and count as staged, not missing.
+     * Each statement runs under a savepoint when called within a transaction.
+     */
+    public MergeCounts mergeChunk(UUID jobId, List<String> skus) {
+        int[] totals = new int[4];
+        Map<String, String> failed = new LinkedHashMap<>();
+
+        try {
+            add(totals, mergeStatement(jobId, skus));
+        } catch (DataAccessException e) {
+            for (String sku : skus) {
+                try {
+                    add(totals, mergeStatement(jobId, List.of(sku)));
+                } catch (DataAccessException rowError) {
+                    totals[0]++;
+                    failed.put(sku, rowError.getMostSpecificCause().getMessage());
+                }
+            }
+        }
+
+        int staged = totals[0];
+        int created = totals[1];
+        int updated = totals[2];
+        return new MergeCounts(staged, created, updated, staged - created - updated - failed.size(), 0, 0,
+                totals[3], failed);
+    }
+
+    /**
+     * Unpublishes published supplier products absent from the rows staged by a job; the last step of a merge,
+     * once every chunk is merged. Returns counts with only missing and unpublished set.
+     *
+     * @param unpublishMissing  whether published supplier products absent from the staged rows may be unpublished
+     * @param maxUnpublishRatio largest share of published supplier products that may be unpublished at once;
+     *                          above it nothing is unpublished, as the sweep more likely missed rows than
+     *                          the supplier dropped that many products
+     */
+    public MergeCounts unpublishMissing(UUID jobId, boolean unpublishMissing, double maxUnpublishRatio) {
+        int[] unpublished = jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UNPUBLISH_SQL)) {
+                statement.setString(1, ProductStatus.PUBLISHED.name());
+                statement.setObject(2, jobId);
+                statement.setString(3, ProductStatus.DRAFT.name());
+                statement.setBoolean(4, unpublishMissing);
+                statement.setDouble(5, maxUnpublishRatio);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    return new int[] {resultSet.getInt(1), resultSet.getInt(2)};
+                }
+            }
+        });
+
+        return new MergeCounts(0, 0, 0, 0, unpublished[0], unpublished[1], 0, Map.of());
+    }
+
+    // staged, created, updated, republished
+    private int[] mergeStatement(UUID jobId, List<String> skus) {
+        return jdbcTemplate.execute((ConnectionCallback<int[]>) connection -> {
+            // Inside a transaction a failed statement aborts it; the savepoint keeps the rest usable
+            Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(MERGE_SQL)) {
+                statement.setObject(1, jobId);
+                statement.setArray(2, connection.createArrayOf("text", skus.toArray()));
+                statement.setString(3, ProductStatus.DRAFT.name());
+                statement.setString(4, ProductStatus.PUBLISHED.name());
+                statement.setString(5, ProductStatus.DRAFT.name());
+
+                int[] counts;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    counts = new int[] {resultSet.getInt(1), resultSet.getInt(2), resultSet.getInt(3), resultSet.getInt(4)};
+                }
+                if (savepoint != null) {
+                    connection.releaseSavepoint(savepoint);
+                }
+                return counts;
+            } catch (SQLException e) {
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                }
+                throw e;
+            }
+        });
+    }
+
+    private static void add(int[] totals, int[] counts) {
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] += counts[i];
+        }
+    }
+
+    /**
+     * Drops the staged rows of a job
+     */
+    public int clear(UUID jobId) {
+        return jdbcTemplate.update("DELETE FROM product_staging WHERE job_id = ?", jobId);
+    }
+
+    /**
+     * Drops rows left by other jobs, e.g. one abandoned after its resume window passed
+     */
+    public int clearAllExcept(UUID jobId) {
+        return jdbcTemplate.update("DELETE FROM product_staging WHERE job_id <> ?", jobId);
+    }
+
+    private void writeRow(Writer writer, UUID jobId, StagedProduct row) throws IOException {
+        writer.write(jobId.toString());
+        writer.write(',');
+        writer.write(Integer.toString(row.rowNumber()));
+        writer.write(',');
+        writer.write(UUID.randomUUID().toString());
+        writer.write(',');
+        writeText(writer, row.supplierSku());
+        writer.write(',');
+        writeText(writer, row.handle());
+        writer.write(',');
+        writeText(writer, row.title());
+        writer.write(',');
+        writeNumber(writer, row.price());
+        writer.write(',');
+        writeNumber(writer, row.compareAtPrice());
+        writer.write(',');
+        writer.write(Integer.toString(row.stock()));
+        writer.write(',');
+        writer.write(Long.toString(row.fingerprint()));
+        writer.write('\n');
+    }
+
+    /**
+     * Quoted CSV field; an unquoted empty field would be read as NULL
+     */
+    private void writeText(Writer writer, String value) throws IOException {
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private void writeNumber(Writer writer, BigDecimal value) throws IOException {
+        if (value != null) {
+            writer.write(value.toPlainString());
+        }
+    }
+
+    /**
+     * One Mistral row as staged. Handle and title are only used when the product is created.
+     */
+    public record StagedProduct(
+            int rowNumber,
+            String supplierSku,
+            String handle,
+            String title,
+            BigDecimal price,
+            BigDecimal compareAtPrice,
+            int stock,
+            long fingerprint
+    ) {}
+
+    /**
+     * Outcome of a merge, counted by distinct SKU. Unchanged staged rows already matched products; republished
+     * products were unpublished by an earlier sync and are among the updated ones. Missing products are published
+     * supplier products absent from the sweep, of which unpublished were set to DRAFT. Failed SKUs map to the
+     * database error that rejected them.
+     */
+    public record MergeCounts(int staged, int created, int updated, int unchanged, int missing, int unpublished,
+                              int republished, Map<String, String> failed) {
+
+        public static final MergeCounts NONE = new MergeCounts(0, 0, 0, 0, 0, 0, 0, Map.of());
+
+        public MergeCounts plus(MergeCounts other) {
+            Map<String, String> allFailed = new LinkedHashMap<>(failed);
+            allFailed.putAll(other.failed());
+            return new MergeCounts(staged + other.staged(), created + other.created(), updated + other.updated(),
+                    unchanged + other.unchanged(), missing + other.missing(), unpublished + other.unpublished(),
+                    republished + other.republished(), allFailed);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package bg.papa.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set-based access to product_sync_state fingerprints
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductSyncStateRepository {
+
+    private static final String FIND_SQL = """
+            SELECT p.supplier_sku, s.fingerprint
+            FROM products p
+            LEFT JOIN product_sync_state s ON s.supplier_sku = p.supplier_sku
+            WHERE p.supplier_sku = ANY(?)
+            """;
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO product_sync_state (supplier_sku, fingerprint, synced_at)
+            SELECT t.supplier_sku, t.fingerprint, LOCALTIMESTAMP
+            FROM unnest(?::text[], ?::int8[]) AS t(supplier_sku, fingerprint)
+            ON CONFLICT (supplier_sku) DO UPDATE SET
+                fingerprint = EXCLUDED.fingerprint,
+                synced_at = EXCLUDED.synced_at
+            """;
+
+    private static final String DELETE_SQL = """
+            DELETE FROM product_sync_state
+            WHERE supplier_sku = ANY(?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns stored fingerprints for the SKUs that exist in products.
+     * SKUs without a product are absent; products never fingerprinted map to null.
+     */
+    public Map<String, Long> findFingerprints(Collection<String> supplierSkus) {
+        if (supplierSkus.isEmpty()) {
+            return Map.of();
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<Map<String, Long>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(FIND_SQL)) {
+                statement.setArray(1, connection.createArrayOf("text", supplierSkus.toArray()));
+
+                Map<String, Long> fingerprints = new HashMap<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        String sku = resultSet.getString(1);
+                        long fingerprint = resultSet.getLong(2);
+                        // wasNull refers to the last column read, so the SKU is read first
+                        fingerprints.put(sku, resultSet.wasNull() ? null : fingerprint);
+                    }
+                }
+                return fingerprints;
+            }
+        });
+    }
+
+    /**
+     * Stores fingerprints for rows that were just written to products
+     */
+    public void upsertFingerprints(Map<String, Long> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+
+        String[] skus = new String[fingerprints.size()];
+        Long[] values = new Long[fingerprints.size()];
+        int i = 0;
+        for (Map.Entry<String, Long> entry : fingerprints.entrySet()) {
+            skus[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+
+        jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPSERT_SQL)) {
+                statement.setArray(1, connection.createArrayOf("text", skus));
+                statement.setArray(2, connection.createArrayOf("int8", values));
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Drops the fingerprints of products whose supplier data was written outside the product sync,
+     * so the next sync writes them again instead of skipping them as unchanged
+     */
+    public int invalidate(Collection<String> supplierSkus) {
+        if (supplierSkus.isEmpty()) {
+            return 0;
+        }
+
+        return jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+                statement.setArray(1, connection.createArrayOf("text", supplierSkus.toArray()));
+                return statement.executeUpdate();
+            }
+        });
+    }
+}
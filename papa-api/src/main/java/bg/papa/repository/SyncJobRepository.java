@@ -0,0 +1,26 @@
+package bg.papa.repository;
+
+import bg.papa.entity.SyncJob;
+import bg.papa.entity.SyncJobStatus;
+import bg.papa.entity.SyncJobType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface SyncJobRepository extends JpaRepository<SyncJob, UUID> {
+
+    Optional<SyncJob> findFirstByTypeAndStatusInOrderByStartedAtDesc(SyncJobType type, Collection<SyncJobStatus> statuses);
+
+    Optional<SyncJob> findFirstByTypeAndStatusOrderByFinishedAtDesc(SyncJobType type, SyncJobStatus status);
+
+    Optional<SyncJob> findFirstByTypeAndStatusAndStartedAtGreaterThanEqualOrderByFinishedAtDesc(
+            SyncJobType type, SyncJobStatus status, LocalDateTime startedAt);
+
+    List<SyncJob> findTop20ByOrderByStartedAtDesc();
+}
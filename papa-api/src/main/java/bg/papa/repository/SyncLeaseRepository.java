@@ -0,0 +1,109 @@
+package bg.papa.repository;
+
+import bg.papa.entity.SyncLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SyncLeaseRepository extends JpaRepository<SyncLease, String> {
+
+    /**
+     * Takes the lease if it is free, expired or already ours. Returns 1 if taken, 0 if another instance holds it.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            INSERT INTO sync_leases (name, owner, acquired_at, heartbeat_at, expires_at)
+            VALUES (:name, :owner, now(), now(), now() + CAST(:ttlSeconds AS integer) * INTERVAL '1 second')
+            ON CONFLICT (name) DO UPDATE SET
+                owner = EXCLUDED.owner,
+                acquired_at = EXCLUDED.acquired_at,
+                heartbeat_at = EXCLUDED.heartbeat_at,
+                expires_at = EXCLUDED.expires_at
+            WHERE sync_leases.expires_at <= now() OR sync_leases.owner = EXCLUDED.owner
+            """, nativeQuery = true)
+    int tryAcquire(@Param("name") String name, @Param("owner") String owner, @Param("ttlSeconds") long ttlSeconds);
+
+    /**
+     * Extends a lease we hold. Returns 0 if it was taken over in the meantime.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE sync_leases
+            SET heartbeat_at = now(),
+                expires_at = now() + CAST(:ttlSeconds AS integer) * INTERVAL '1 second'
+            WHERE name = :name AND owner = :owner
+            """, nativeQuery = true)
+    int renew(@Param("name") String name, @Param("owner") String owner, @Param("ttlSeconds") long ttlSeconds);
+
+    /**
+     * Locks a lease we hold and that has not expired until the caller's transaction ends, so it can be neither
+     * taken over nor renewed before then. The lock is shared: writers under the same lease do not wait for each other.
+     * Returns the lease name, or empty if the lease is no longer ours.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Query(value = """
+            SELECT name FROM sync_leases
+            WHERE name = :name AND owner = :owner AND expires_at > now()
+            FOR SHARE
+            """, nativeQuery = true)
+    Optional<String> lockIfHeld(@Param("name") String name, @Param("owner") String owner);
+
+    /**
+     * Whether each lease is held and for how much longer, judged by the database clock
+     */
+    @Query(value = """
+            SELECT name,
+                   expires_at > now() AS held,
+                   CAST(GREATEST(0, EXTRACT(EPOCH FROM expires_at - now()) * 1000) AS bigint) AS "remainingMs"
+            FROM sync_leases
+            """, nativeQuery = true)
+    List<LeaseExpiry> findExpiries();
+
+    /**
+     * Whether any instance holds the lease unexpired, judged by the database clock
+     */
+    @Query(value = """
+            SELECT count(*) > 0 FROM sync_leases
+            WHERE name = :name AND expires_at > now()
+            """, nativeQuery = true)
+    boolean isLive(@Param("name") String name);
+
+    /**
+     * Number of unexpired leases held by an instance, judged by the database clock
+     */
+    @Query(value = """
+            SELECT count(*) FROM sync_leases
+            WHERE owner = :owner AND expires_at > now()
+            """, nativeQuery = true)
+    long countLive(@Param("owner") String owner);
+
+    /**
+     * Lets a lease we hold expire now; the row stays as a record of the last holder
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE sync_leases
+            SET expires_at = now()
+            WHERE name = :name AND owner = :owner
+            """, nativeQuery = true)
+    int release(@Param("name") String name, @Param("owner") String owner);
+
+    interface LeaseExpiry {
+        String getName();
+
+        Boolean getHeld();
+
+        Long getRemainingMs();
+    }
+}
@@ -0,0 +1,97 @@
+package bg.papa.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD concurrency limit: grows by about one permit per round of fast successes and shrinks
+ * multiplicatively on errors or when latency exceeds the threshold.
+ * Like TCP, the limit is cut at most once per round trip: only calls started after the last cut can cut it
+ * again, so a burst of slow responses to requests sent at the old limit counts as one congestion signal.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private boolean cut;
+    private long lastCutNanos;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit,
+                                    long latencyThresholdMillis, double backoffRatio) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Blocks until a permit is available under the current limit
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                permitReleased.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit and adjusts the limit from the outcome of the call
+     */
+    public void release(long latencyNanos, boolean success) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            boolean wasSaturated = inFlight >= (int) limit;
+            inFlight--;
+
+            if (!success || latencyNanos > latencyThresholdNanos) {
+                boolean startedAfterLastCut = !cut || now - latencyNanos - lastCutNanos >= 0;
+                if (startedAfterLastCut) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    cut = true;
+                    lastCutNanos = now;
+                }
+            } else if (wasSaturated) {
+                // Only probe upwards when the current limit is actually the bottleneck
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
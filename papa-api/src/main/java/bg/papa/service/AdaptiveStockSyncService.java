@@ -0,0 +1,148 @@
+package bg.papa.service;
+
+import bg.papa.entity.SyncJob;
+import bg.papa.repository.ProductChangeHistoryRepository;
+import bg.papa.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stock sync that refreshes volatile SKUs often and stable ones rarely.
+ * Every stock sync records the SKUs whose stock changed (product_change_history) and when it checked each row
+ * window (stock_check_windows); from that each SKU gets a refresh interval that shrinks with its change rate.
+ * An adaptive run fetches only the row windows holding SKUs whose interval has passed, and reports the Mistral
+ * calls and DB writes saved against a full stock sweep.
+ * SKUs that moved to another row are found again by the next full sweep, which the daily price sync provides.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AdaptiveStockSyncService {
+
+    private final ProductChangeHistoryRepository productChangeHistoryRepository;
+    private final ProductRepository productRepository;
+    private final MistralApiClient mistralApiClient;
+    private final MistralSyncService mistralSyncService;
+    private final MistralRowSweeper rowSweeper;
+    private final SyncJobService syncJobService;
+    private final CatalogSizeProbe catalogSizeProbe;
+
+    @Value("${app.sync.adaptive.target-changes-per-check:0.5}")
+    private double targetChangesPerCheck;
+
+    @Value("${app.sync.adaptive.prior:24h}")
+    private Duration prior;
+
+    @Value("${app.sync.adaptive.min-interval:30m}")
+    private Duration minInterval;
+
+    @Value("${app.sync.adaptive.max-interval:24h}")
+    private Duration maxInterval;
+
+    private final AtomicLong totalCallsSaved = new AtomicLong();
+    private final AtomicLong totalWritesSaved = new AtomicLong();
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private volatile AdaptiveStockResult lastResult;
+
+    /**
+     * Whether enough change history exists for an adaptive run; without it a full stock sweep is needed first
+     */
+    public boolean hasHistory() {
+        return productChangeHistoryRepository.countTracked() > 0;
+    }
+
+    /**
+     * Adaptive stock refresh within an already started ADAPTIVE_STOCK job
+     */
+    public AdaptiveStockResult syncStockAdaptive(SyncJob job) {
+        long startTime = System.currentTimeMillis();
+        int windowSize = rowSweeper.getWindowSize();
+
+        long tracked = productChangeHistoryRepository.countTracked();
+        List<Integer> dueRows = productChangeHistoryRepository.findDueRows(targetChangesPerCheck, prior, minInterval, maxInterval);
+        List<Integer> windowStarts = dueRows.stream()
+                .map(row -> (row - 1) / windowSize * windowSize + 1)
+                .distinct()
+                .toList();
+
+        Set<String> ourSkus = new HashSet<>(productRepository.findAllSupplierSkus());
+        AtomicInteger checked = new AtomicInteger();
+        AtomicInteger changed = new AtomicInteger();
+        AtomicInteger rowsScanned = new AtomicInteger();
+        AtomicLong writes = new AtomicLong();
+        AtomicInteger failedWindows = new AtomicInteger();
+
+        syncJobService.run(job, () -> {
+            syncJobService.reportProgress(job, 0, windowStarts.size() * windowSize, 0);
+            rowSweeper.sweepWindows("adaptive-stock", windowStarts, mistralApiClient::fetchSyncRowsByRowRange,
+                    (fromRow, toRow, rows) -> {
+                        MistralSyncService.StockWindow window = syncJobService.writeUnderLease(job,
+                                () -> mistralSyncService.writeStockWindow(fromRow, rows, ourSkus));
+                        checked.addAndGet(window.matched());
+                        changed.addAndGet(window.changed());
+                        writes.addAndGet(window.writes());
+                        synchronized (job) {
+                            syncJobService.reportProgress(job, rowsScanned.addAndGet(rows.size()), null, failedWindows.get());
+                        }
+                    },
+                    (fromRow, toRow, error) -> {
+                        // Throwing here ends the sweep once the lease is lost
+                        syncJobService.checkLease(job);
+                        failedWindows.incrementAndGet();
+                    });
+            syncJobService.reportProgress(job, rowsScanned.get(), null, failedWindows.get());
+        });
+
+        // A full stock sweep fetches every window and records the check of each
+        int catalogRows = Math.max(catalogSizeProbe.getRowCount(), dueRows.isEmpty() ? 0 : dueRows.get(dueRows.size() - 1));
+        int fullSweepCalls = (catalogRows + windowSize - 1) / windowSize;
+        long fullSweepWrites = writes.get() + Math.max(0, fullSweepCalls - windowStarts.size());
+
+        AdaptiveStockResult result = new AdaptiveStockResult(tracked, dueRows.size(), windowStarts.size(), fullSweepCalls,
+                Math.max(0, fullSweepCalls - windowStarts.size()), rowsScanned.get(), checked.get(), changed.get(),
+                writes.get(), fullSweepWrites, fullSweepWrites - writes.get(), failedWindows.get(),
+                System.currentTimeMillis() - startTime);
+        totalCallsSaved.addAndGet(result.callsSaved());
+        totalWritesSaved.addAndGet(result.writesSaved());
+        runs.incrementAndGet();
+        lastResult = result;
+
+        log.info("Adaptive stock sync: {} of {} tracked SKUs due, {} of {} windows fetched ({} calls saved), "
+                        + "{} stock changes, {} of ~{} writes ({} saved), {} failed windows, {}ms",
+                result.dueSkus(), tracked, result.calls(), fullSweepCalls, result.callsSaved(), result.stockChanged(),
+                result.writes(), fullSweepWrites, result.writesSaved(), result.failedWindows(), result.durationMs());
+        return result;
+    }
+
+    public AdaptiveStockResult getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * Calls and writes saved by all adaptive runs since startup
+     */
+    public AdaptiveTotals getTotals() {
+        return new AdaptiveTotals(runs.get(), totalCallsSaved.get(), totalWritesSaved.get());
+    }
+
+    /**
+     * Outcome of an adaptive run next to what a full stock sweep would have cost.
+     * Writes are rows written to products, product_change_history and stock_check_windows; the full sweep figure
+     * assumes the skipped windows held no stock changes or new SKUs, so it is a lower bound.
+     */
+    public record AdaptiveStockResult(long trackedSkus, int dueSkus, int calls, int fullSweepCalls, int callsSaved,
+                                      int rowsScanned, int skusChecked, int stockChanged, long writes,
+                                      long fullSweepWrites, long writesSaved, int failedWindows, long durationMs) {}
+
+    public record AdaptiveTotals(int runs, long callsSaved, long writesSaved) {}
+}
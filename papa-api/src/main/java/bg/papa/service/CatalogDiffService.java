@@ -0,0 +1,266 @@
+package bg.papa.service;
+
+import bg.papa.dto.mistral.MistralSyncRow;
+import bg.papa.repository.ProductBulkRepository;
+import bg.papa.repository.ProductBulkRepository.SupplierSnapshot;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * Dry run of the catalog sync: compares Mistral rows with what the sync would overwrite, without writing anything.
+ * The supplier data of all our products is loaded into memory with one query, Mistral rows are streamed
+ * against it, and the result is a summary: change counts, the largest price moves, new SKUs and, for a
+ * full sweep, SKUs that are no longer in Mistral.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogDiffService {
+
+    private final ProductBulkRepository productBulkRepository;
+    private final MistralApiClient mistralApiClient;
+    private final MistralRowSweeper rowSweeper;
+    private final CatalogSizeProbe catalogSizeProbe;
+    private final SyncJobService syncJobService;
+
+    @Value("${app.sync.dry-run.top-price-moves:20}")
+    private int topPriceMoves;
+
+    @Value("${app.sync.dry-run.sample-size:50}")
+    private int sampleSize;
+
+    /**
+     * Diff of one row range (1-indexed, inclusive). Disappeared SKUs cannot be told from a partial range.
+     */
+    public CatalogDiff diffRowRange(int fromRow, int toRow) {
+        long startTime = System.currentTimeMillis();
+        DiffAccumulator diff = new DiffAccumulator(productBulkRepository.loadSupplierSnapshots());
+        int[] rowNumber = {fromRow};
+        mistralApiClient.streamSyncRowsByRowRange(fromRow, toRow, row -> diff.add(rowNumber[0]++, row));
+        return diff.finish("rows " + fromRow + "-" + toRow, false, 0, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Diff of the whole catalog, swept like a full sync. Disappeared SKUs are only reported when every window
+     * was fetched, as SKUs in a failed window would otherwise show up as gone.
+     *
+     * Runs under the sweep lease, so no sync job changes the products while they are compared.
+     *
+     * @throws IllegalStateException if a sync sweep or another dry run is running, so the dry run does not
+     *                               double the load on Mistral or compare against products a sync is writing
+     */
+    public CatalogDiff diffCatalog() {
+        return syncJobService.runUnderSweepLease(lease -> sweepCatalog())
+                .orElseThrow(() -> new IllegalStateException(
+                        "A sync sweep or another dry run is running; try the dry run when it has finished"));
+    }
+
+    private CatalogDiff sweepCatalog() {
+        long startTime = System.currentTimeMillis();
+        DiffAccumulator diff = new DiffAccumulator(productBulkRepository.loadSupplierSnapshots());
+        MistralRowSweeper.WindowHandler<MistralSyncRow> handler = (fromRow, toRow, rows) -> {
+            for (int i = 0; i < rows.size(); i++) {
+                diff.add(fromRow + i, rows.get(i));
+            }
+        };
+
+        int catalogRows = catalogSizeProbe.getRowCount();
+        MistralRowSweeper.SweepResult sweep = catalogRows > 0
+                ? rowSweeper.sweepPartitioned("dry-run", 1, catalogRows, mistralApiClient::fetchSyncRowsByRowRange,
+                        handler, (fromRow, toRow, error) -> {})
+                : rowSweeper.sweep("dry-run", 1, mistralApiClient::fetchSyncRowsByRowRange, handler);
+
+        CatalogDiff result = diff.finish("catalog", sweep.failedWindows().isEmpty(), sweep.failedWindows().size(),
+                System.currentTimeMillis() - startTime);
+        log.info("Catalog dry run: {} rows, {} changed ({} price, {} stock, {} title), {} new, {} disappeared, {}ms",
+                result.rowsScanned(), result.changed(), result.priceChanged(), result.stockChanged(),
+                result.titleChanged(), result.newSkus(), result.disappeared(), result.durationMs());
+        return result;
+    }
+
+    /**
+     * Collects the rows while they stream in and diffs them at the end. Like the sync, a SKU listed on several
+     * rows is taken from the last of them, whatever order the windows arrive in. Synchronized, as a partitioned
+     * sweep adds rows from several workers.
+     */
+    private final class DiffAccumulator {
+
+        private final Map<String, SupplierSnapshot> current;
+        private final Map<String, RowAt> latest = new HashMap<>();
+        // Smallest move on top, so the heap keeps the largest ones
+        private final PriorityQueue<PriceMove> largestMoves = new PriorityQueue<>(
+                Comparator.comparingDouble(PriceMove::rank));
+        private final List<NewSku> newSkuSample = new ArrayList<>();
+
+        private int rowsScanned;
+        private int invalidRows;
+        private int duplicates;
+        private int existing;
+        private int changed;
+        private int priceIncreased;
+        private int priceDecreased;
+        private int compareAtPriceChanged;
+        private int stockChanged;
+        private int titleChanged;
+        private int newSkus;
+
+        private DiffAccumulator(Map<String, SupplierSnapshot> current) {
+            this.current = current;
+        }
+
+        private synchronized void add(int rowNumber, MistralSyncRow row) {
+            rowsScanned++;
+            String sku = row.code();
+            if (sku == null || sku.isBlank()) {
+                invalidRows++;
+                return;
+            }
+            RowAt previous = latest.get(sku);
+            if (previous != null) {
+                duplicates++;
+                if (previous.rowNumber() > rowNumber) {
+                    return;
+                }
+            }
+            latest.put(sku, new RowAt(rowNumber, row));
+        }
+
+        private void compare(String sku, MistralSyncRow row) {
+            SupplierSnapshot stored = current.get(sku);
+            if (stored == null) {
+                newSkus++;
+                if (newSkuSample.size() < sampleSize) {
+                    newSkuSample.add(new NewSku(sku, row.name(), row.salesPrice(), row.quantity()));
+                }
+                return;
+            }
+
+            existing++;
+            long compareAtCents = row.compareAtPrice() != null ? row.baseSalePriceCents() : SupplierSnapshot.NO_PRICE;
+            boolean priceMoved = stored.priceCents() != row.salesPriceCents();
+            boolean compareAtMoved = stored.compareAtPriceCents() != compareAtCents;
+            boolean stockMoved = stored.stock() != row.quantity();
+            boolean titleMoved = !Objects.equals(stored.supplierTitle(), row.name());
+
+            if (priceMoved) {
+                if (row.salesPriceCents() > stored.priceCents()) {
+                    priceIncreased++;
+                } else {
+                    priceDecreased++;
+                }
+                offer(PriceMove.of(sku, row.name(), stored.priceCents(), row.salesPriceCents()));
+            }
+            if (compareAtMoved) {
+                compareAtPriceChanged++;
+            }
+            if (stockMoved) {
+                stockChanged++;
+            }
+            if (titleMoved) {
+                titleChanged++;
+            }
+            if (priceMoved || compareAtMoved || stockMoved || titleMoved) {
+                changed++;
+            }
+        }
+
+        private void offer(PriceMove move) {
+            if (topPriceMoves <= 0) {
+                return;
+            }
+            if (largestMoves.size() < topPriceMoves) {
+                largestMoves.add(move);
+            } else if (move.rank() > largestMoves.peek().rank()) {
+                largestMoves.poll();
+                largestMoves.add(move);
+            }
+        }
+
+        private synchronized CatalogDiff finish(String scope, boolean complete, int failedWindows, long durationMs) {
+            latest.forEach((sku, rowAt) -> compare(sku, rowAt.row()));
+            List<PriceMove> moves = new ArrayList<>(largestMoves);
+            moves.sort(Comparator.comparingDouble(PriceMove::rank).reversed());
+
+            Integer disappeared = null;
+            Integer disappearedPublished = null;
+            List<String> disappearedSample = List.of();
+            if (complete) {
+                int gone = 0;
+                int gonePublished = 0;
+                List<String> sample = new ArrayList<>();
+                for (Map.Entry<String, SupplierSnapshot> entry : current.entrySet()) {
+                    if (latest.containsKey(entry.getKey())) {
+                        continue;
+                    }
+                    gone++;
+                    if (entry.getValue().published()) {
+                        gonePublished++;
+                    }
+                    if (sample.size() < sampleSize) {
+                        sample.add(entry.getKey());
+                    }
+                }
+                disappeared = gone;
+                disappearedPublished = gonePublished;
+                disappearedSample = sample;
+            }
+
+            return new CatalogDiff(scope, rowsScanned, invalidRows, duplicates, existing, changed, existing - changed,
+                    priceIncreased + priceDecreased, priceIncreased, priceDecreased, compareAtPriceChanged,
+                    stockChanged, titleChanged, moves, newSkus, List.copyOf(newSkuSample), disappeared,
+                    disappearedPublished, disappearedSample, failedWindows, durationMs);
+        }
+    }
+
+    private record RowAt(int rowNumber, MistralSyncRow row) {}
+
+    /**
+     * Summary of what a sync would change. disappeared and disappearedPublished are null when the sweep
+     * did not cover the whole catalog; samples hold at most the configured number of SKUs.
+     */
+    public record CatalogDiff(String scope, int rowsScanned, int invalidRows, int duplicates, int existing,
+                              int changed, int unchanged, int priceChanged, int priceIncreased, int priceDecreased,
+                              int compareAtPriceChanged, int stockChanged, int titleChanged,
+                              List<PriceMove> largestPriceMoves, int newSkus, List<NewSku> newSkuSample,
+                              Integer disappeared, Integer disappearedPublished, List<String> disappearedSample,
+                              int failedWindows, long durationMs) {}
+
+    /**
+     * A price change; changePercent is null when the stored price is zero
+     */
+    public record PriceMove(String sku, String title, BigDecimal oldPrice, BigDecimal newPrice, BigDecimal change,
+                            BigDecimal changePercent) {
+
+        private static PriceMove of(String sku, String title, long oldCents, long newCents) {
+            BigDecimal percent = oldCents != 0
+                    ? BigDecimal.valueOf((newCents - oldCents) * 100, 0).divide(BigDecimal.valueOf(oldCents), 1, RoundingMode.HALF_UP)
+                    : null;
+            return new PriceMove(sku, title, BigDecimal.valueOf(oldCents, 2), BigDecimal.valueOf(newCents, 2),
+                    BigDecimal.valueOf(newCents - oldCents, 2), percent);
+        }
+
+        /**
+         * Relative size of the move; a price moving away from zero ranks above any relative move
+         */
+        private double rank() {
+            return changePercent != null ? changePercent.abs().doubleValue() : Double.MAX_VALUE;
+        }
+    }
+
+    /**
+     * A Mistral SKU the sync would create
+     */
+    public record NewSku(String sku, String name, BigDecimal price, int stock) {}
+}
@@ -0,0 +1,124 @@
+package bg.papa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Finds the number of rows GetAllDataByPart serves, so sweeps can cover the exact range instead of
+ * stopping at a hardcoded limit. Probes single-row windows with a galloping binary search around the
+ * last known size, which usually takes two calls, and caches the result between runs.
+ * Completed sweeps report the last row they saw, which keeps the cached size current for free.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogSizeProbe {
+
+    private static final int INITIAL_GUESS = 1024;
+
+    private final MistralApiClient mistralApiClient;
+
+    @Value("${app.sync.catalog-size.cache-ttl:6h}")
+    private Duration cacheTtl;
+
+    @Value("${app.sync.catalog-size.max-rows:2000000}")
+    private int maxRows;
+
+    private volatile CachedSize cached;
+
+    /**
+     * Number of catalog rows, probing Mistral if the cached value is missing or expired.
+     * Returns -1 if the probe fails, so callers can fall back to an open-ended sweep.
+     */
+    public synchronized int getRowCount() {
+        CachedSize current = cached;
+        if (current != null && current.measuredAt().plus(cacheTtl).isAfter(Instant.now())) {
+            return current.rows();
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            ProbeResult result = probe(current != null ? current.rows() : INITIAL_GUESS);
+            cached = new CachedSize(result.rows(), Instant.now());
+            log.info("Catalog has {} rows (probed with {} calls in {}ms)",
+                    result.rows(), result.calls(), System.currentTimeMillis() - start);
+            return result.rows();
+        } catch (Exception e) {
+            log.warn("Could not probe catalog size: {}", e.getMessage());
+            return current != null ? current.rows() : -1;
+        }
+    }
+
+    /**
+     * Records the row count observed by a complete sweep
+     */
+    public void record(int rows) {
+        if (rows > 0) {
+            cached = new CachedSize(rows, Instant.now());
+        }
+    }
+
+    public void invalidate() {
+        cached = null;
+    }
+
+    private ProbeResult probe(int hint) {
+        int[] calls = {0};
+        RowCheck exists = row -> {
+            calls[0]++;
+            return !mistralApiClient.fetchSyncRowsByRowRange(row, row).isEmpty();
+        };
+
+        if (!exists.test(1)) {
+            return new ProbeResult(0, calls[0]);
+        }
+
+        // Bracket the end: lo is a row that exists, hi one that does not
+        int lo = 1;
+        int hi;
+        int guess = Math.max(2, Math.min(hint, maxRows));
+        if (exists.test(guess)) {
+            // Unchanged since last time is the common case
+            if (!exists.test(guess + 1)) {
+                return new ProbeResult(guess, calls[0]);
+            }
+            lo = guess + 1;
+            int step = Math.max(INITIAL_GUESS, guess / 8);
+            hi = Math.min(lo + step, maxRows + 1);
+            while (hi <= maxRows && exists.test(hi)) {
+                lo = hi;
+                step *= 2;
+                hi = Math.min(lo + step, maxRows + 1);
+            }
+        } else {
+            hi = guess;
+        }
+
+        while (hi - lo > 1) {
+            int mid = lo + (hi - lo) / 2;
+            if (exists.test(mid)) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo == maxRows) {
+            log.warn("Catalog probe reached the limit of {} rows", maxRows);
+        }
+        return new ProbeResult(lo, calls[0]);
+    }
+
+    @FunctionalInterface
+    private interface RowCheck {
+        boolean test(int row);
+    }
+
+    private record CachedSize(int rows, Instant measuredAt) {}
+
+    private record ProbeResult(int rows, int calls) {}
+}
@@ -0,0 +1,85 @@
+package bg.papa.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Runs long syncs in fixed-size chunks, each in its own transaction.
+ * The persistence context is flushed and cleared after every chunk, so memory and flush cost stay flat
+ * instead of growing with the catalog, and a failure only rolls back the chunk it happened in.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ChunkedTransactions {
+
+    private final PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.sync.transaction-chunk-size:500}")
+    private int chunkSize;
+
+    private TransactionTemplate chunkTransaction;
+
+    @PostConstruct
+    void init() {
+        // Always a new transaction, so a chunk commits even if the caller already has one open
+        chunkTransaction = new TransactionTemplate(transactionManager);
+        chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Runs the work once per chunk of items, committing after each chunk, and collects the results of committed chunks.
+     * A failing chunk is rolled back, logged and counted; the remaining chunks still run.
+     */
+    public <T, R> ChunkRun<R> forEachChunk(String label, List<T> items, Function<List<T>, R> work) {
+        List<R> results = new ArrayList<>();
+        int chunks = 0;
+        int failedChunks = 0;
+        int failedItems = 0;
+
+        for (int start = 0; start < items.size(); start += chunkSize) {
+            List<T> chunk = items.subList(start, Math.min(start + chunkSize, items.size()));
+            chunks++;
+            try {
+                results.add(chunkTransaction.execute(status -> {
+                    R result = work.apply(chunk);
+                    entityManager.flush();
+                    entityManager.clear();
+                    return result;
+                }));
+            } catch (RuntimeException e) {
+                log.error("[{}] Chunk {}-{} rolled back: {}", label, start, start + chunk.size() - 1, e.getMessage());
+                // Drop whatever the failed chunk left in an extended (open-in-view) persistence context
+                entityManager.clear();
+                failedChunks++;
+                failedItems += chunk.size();
+            }
+        }
+
+        return new ChunkRun<>(results, chunks, failedChunks, failedItems);
+    }
+
+    /**
+     * Outcome of a chunked run
+     */
+    public record ChunkRun<R>(List<R> results, int chunks, int failedChunks, int failedItems) {}
+}
@@ -0,0 +1,170 @@
+package bg.papa.service;
+
+import bg.papa.dto.mistral.MistralProductDto;
+import bg.papa.repository.CartRepository;
+import bg.papa.repository.OrderRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fast incremental stock refresh for the SKUs shoppers are looking at right now: those in active carts,
+ * recently ordered, or recently viewed. Runs every few minutes between the full stock sweeps.
+ * Each cycle makes at most budget Mistral calls; the least recently refreshed hot SKUs go first,
+ * so a hot set larger than the budget is covered over consecutive cycles.
+ * A cycle runs under the sweep lease, so only one instance refreshes and never while a sync job runs,
+ * and writes through the same path as the stock sweeps.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HotSkuRefreshService {
+
+    private final CartRepository cartRepository;
+    private final OrderRepository orderRepository;
+    private final HotSkuTracker hotSkuTracker;
+    private final MistralApiClient mistralApiClient;
+    private final MistralRequestExecutor requestExecutor;
+    private final MistralCircuitBreaker circuitBreaker;
+    private final MistralSyncService mistralSyncService;
+    private final SyncJobService syncJobService;
+
+    @Value("${app.sync.hot-skus.budget:200}")
+    private int budget;
+
+    @Value("${app.sync.hot-skus.cart-window:24h}")
+    private Duration cartWindow;
+
+    @Value("${app.sync.hot-skus.order-window:48h}")
+    private Duration orderWindow;
+
+    @Value("${app.sync.hot-skus.view-window:2h}")
+    private Duration viewWindow;
+
+    // When each hot SKU was last refreshed by this service
+    private final Map<String, Long> lastRefreshedAt = new ConcurrentHashMap<>();
+
+    private volatile HotRefreshResult lastResult;
+
+    /**
+     * Current hot set, each SKU with the strongest reason it is hot
+     */
+    public Map<String, HotSkuSource> findHotSkus() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, HotSkuSource> hot = new LinkedHashMap<>();
+        cartRepository.findSupplierSkusInCartsActiveSince(now.minus(cartWindow))
+                .forEach(sku -> hot.putIfAbsent(sku, HotSkuSource.CART));
+        orderRepository.findSupplierSkusOrderedSince(now.minus(orderWindow))
+                .forEach(sku -> hot.putIfAbsent(sku, HotSkuSource.ORDER));
+        hotSkuTracker.viewedWithin(viewWindow)
+                .forEach(sku -> hot.putIfAbsent(sku, HotSkuSource.VIEW));
+        return hot;
+    }
+
+    /**
+     * Refreshes the stock of up to budget hot SKUs from Mistral and writes the changed ones.
+     * Skipped, with every hot SKU deferred, while a sync job or another instance holds the sweep lease.
+     */
+    public synchronized HotRefreshResult refresh() {
+        long startTime = System.currentTimeMillis();
+        Map<String, HotSkuSource> hot = findHotSkus();
+        lastRefreshedAt.keySet().retainAll(hot.keySet());
+
+        Map<HotSkuSource, Integer> bySource = new EnumMap<>(HotSkuSource.class);
+        hot.values().forEach(source -> bySource.merge(source, 1, Integer::sum));
+
+        if (hot.isEmpty() || circuitBreaker.isOpen()) {
+            if (!hot.isEmpty()) {
+                log.info("Skipping hot SKU refresh of {} SKUs, Mistral circuit is open", hot.size());
+            }
+            return remember(new HotRefreshResult(hot.size(), bySource, 0, 0, 0, 0, hot.size(),
+                    System.currentTimeMillis() - startTime));
+        }
+
+        return remember(syncJobService.runUnderSweepLease(lease -> refresh(lease, hot, bySource, startTime))
+                .orElseGet(() -> {
+                    log.info("Skipping hot SKU refresh of {} SKUs, a sync job holds the sweep lease", hot.size());
+                    return new HotRefreshResult(hot.size(), bySource, 0, 0, 0, 0, hot.size(),
+                            System.currentTimeMillis() - startTime);
+                }));
+    }
+
+    private HotRefreshResult refresh(SyncLeaseService.Lease lease, Map<String, HotSkuSource> hot,
+                                     Map<HotSkuSource, Integer> bySource, long startTime) {
+        // Never refreshed first, then least recently refreshed; carts before orders before views
+        List<String> due = hot.keySet().stream()
+                .sorted(Comparator.<String>comparingLong(sku -> lastRefreshedAt.getOrDefault(sku, 0L))
+                        .thenComparing(hot::get))
+                .limit(Math.max(0, budget))
+                .toList();
+
+        // One call per SKU and no retries, so the budget is a hard cap on Mistral calls
+        Map<String, CompletableFuture<MistralProductDto>> lookups = new LinkedHashMap<>();
+        for (String sku : due) {
+            lookups.put(sku, requestExecutor.submit(() -> mistralApiClient.fetchProductByCode(sku)));
+        }
+
+        Map<String, Integer> stockBySku = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        int failed = 0;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, CompletableFuture<MistralProductDto>> lookup : lookups.entrySet()) {
+            try {
+                MistralProductDto product = lookup.getValue().join();
+                lastRefreshedAt.put(lookup.getKey(), now);
+                if (product == null) {
+                    // Left to the full sweep, which also handles products leaving the catalog
+                    missing.add(lookup.getKey());
+                } else {
+                    stockBySku.put(lookup.getKey(), product.getQttyAsInteger());
+                }
+            } catch (RuntimeException e) {
+                failed++;
+                log.debug("Hot SKU refresh of {} failed: {}", lookup.getKey(), e.getMessage());
+            }
+        }
+
+        int updated = syncJobService.writeUnderLease(lease, () -> mistralSyncService.writeStock(stockBySku)).size();
+        HotRefreshResult result = new HotRefreshResult(hot.size(), bySource, due.size(), updated, missing.size(), failed,
+                hot.size() - due.size(), System.currentTimeMillis() - startTime);
+        log.info("Hot SKU refresh: {} hot ({}), {} Mistral calls, {} stock changes, {} not found, {} failed, {} deferred, {}ms",
+                result.hotSkus(), bySource, result.calls(), updated, result.missing(), failed, result.deferred(), result.durationMs());
+        return result;
+    }
+
+    public HotRefreshResult getLastResult() {
+        return lastResult;
+    }
+
+    private HotRefreshResult remember(HotRefreshResult result) {
+        lastResult = result;
+        return result;
+    }
+
+    /**
+     * Why a SKU is hot, strongest first
+     */
+    public enum HotSkuSource {
+        CART,   // In a cart changed within the cart window
+        ORDER,  // Ordered within the order window
+        VIEW    // Product page viewed within the view window
+    }
+
+    /**
+     * Outcome of one refresh cycle. Deferred SKUs did not fit in the budget and go first next cycle.
+     */
+    public record HotRefreshResult(int hotSkus, Map<HotSkuSource, Integer> bySource, int calls, int updated,
+                                   int missing, int failed, int deferred, long durationMs) {}
+}
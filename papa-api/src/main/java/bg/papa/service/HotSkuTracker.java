@@ -0,0 +1,63 @@
+package bg.papa.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which SKUs were viewed recently, in memory.
+ * Feeds the hot-SKU stock refresh together with active carts and recent orders, which come from the database.
+ * Bounded: once over capacity, views older than the window go first, then the oldest remaining ones.
+ */
+@Component
+public class HotSkuTracker {
+
+    private final Map<String, Long> lastViewedAt = new ConcurrentHashMap<>();
+
+    @Value("${app.sync.hot-skus.max-tracked-views:10000}")
+    private int maxTrackedViews;
+
+    public void recordView(String supplierSku) {
+        if (supplierSku == null || supplierSku.isBlank()) {
+            return;
+        }
+        lastViewedAt.put(supplierSku, System.currentTimeMillis());
+        if (lastViewedAt.size() > maxTrackedViews) {
+            trim();
+        }
+    }
+
+    /**
+     * SKUs viewed within the window, most recent first
+     */
+    public List<String> viewedWithin(Duration window) {
+        long since = System.currentTimeMillis() - window.toMillis();
+        return lastViewedAt.entrySet().stream()
+                .filter(entry -> entry.getValue() >= since)
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    public int size() {
+        return lastViewedAt.size();
+    }
+
+    private synchronized void trim() {
+        if (lastViewedAt.size() <= maxTrackedViews) {
+            return;
+        }
+        // Drop the oldest tenth, so trimming does not run on every view once full
+        int excess = lastViewedAt.size() - maxTrackedViews + maxTrackedViews / 10;
+        lastViewedAt.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(lastViewedAt::remove);
+    }
+}
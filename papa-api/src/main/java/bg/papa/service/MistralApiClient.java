@@ -1,21 +1,34 @@
 package bg.papa.service;
 
 import bg.papa.config.MistralConfig;
-import bg.papa.dto.mistral.MistralAuthResponse;
+import bg.papa.dto.mistral.MistralNumbers;
 import bg.papa.dto.mistral.MistralProductDto;
+import bg.papa.dto.mistral.MistralSyncRow;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import java.time.Instant;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
@@ -23,90 +36,49 @@ import java.util.List;
 public class MistralApiClient {
 
     private final MistralConfig mistralConfig;
-    private final RestTemplate restTemplate;
-
-    private String accessToken;
-    private Instant tokenExpiry;
+    private final MistralTokenManager tokenManager;
+    private final MistralRequestExecutor requestExecutor;
+    private final MistralCircuitBreaker circuitBreaker;
+    private final RestTemplate mistralRestTemplate;
+    private final ObjectMapper objectMapper;
+    private final SyncMetrics syncMetrics;
+
+    private ObjectReader productReader;
+
+    @PostConstruct
+    void init() {
+        productReader = objectMapper.readerFor(MistralProductDto.class);
+    }
 
     /**
-     * Authenticates with Mistral API and returns access token
+     * Returns a valid Mistral access token (cached and renewed by MistralTokenManager)
      */
     public String authenticate() {
-        // Return cached token if still valid
-        if (accessToken != null && tokenExpiry != null && Instant.now().isBefore(tokenExpiry)) {
-            return accessToken;
-        }
-
-        String tokenUrl = mistralConfig.getBaseUrl() + "/token";
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
-        body.add("Username", mistralConfig.getUsername());
-        body.add("Password", mistralConfig.getPassword());
-        body.add("grant_type", "password");
-
-        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
-
-        try {
-            ResponseEntity<MistralAuthResponse> response = restTemplate.postForEntity(
-                    tokenUrl,
-                    request,
-                    MistralAuthResponse.class
-            );
-
-            if (response.getBody() != null) {
-                accessToken = response.getBody().getAccessToken();
-                // Set expiry to 90% of actual expiry to be safe
-                long expiresInSeconds = response.getBody().getExpiresIn();
-                tokenExpiry = Instant.now().plusSeconds((long) (expiresInSeconds * 0.9));
-                log.info("Successfully authenticated with Mistral API");
-                return accessToken;
-            }
-        } catch (Exception e) {
-            log.error("Failed to authenticate with Mistral API: {}", e.getMessage());
-            throw new RuntimeException("Mistral authentication failed", e);
-        }
-
-        throw new RuntimeException("Mistral authentication returned empty response");
+        return tokenManager.getToken();
     }
 
     /**
      * Fetches products from Mistral API by search term
      */
     public List<MistralProductDto> fetchProducts(String search) {
-        String token = authenticate();
+        List<MistralProductDto> products = new ArrayList<>();
+        streamProducts(search, products::add);
+        return products;
+    }
 
+    /**
+     * Streams products matching a search term to the consumer as they are parsed from the response
+     */
+    public int streamProducts(String search, Consumer<MistralProductDto> consumer) {
         String url = UriComponentsBuilder.fromHttpUrl(mistralConfig.getBaseUrl() + "/api/GetAllData")
                 .queryParam("locationid", mistralConfig.getLocationId())
                 .queryParam("priceid", mistralConfig.getPriceId())
                 .queryParam("search", search != null ? search : "")
                 .toUriString();
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(token);
-        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
-
-        HttpEntity<Void> request = new HttpEntity<>(headers);
-
-        try {
-            ResponseEntity<List<MistralProductDto>> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.GET,
-                    request,
-                    new ParameterizedTypeReference<List<MistralProductDto>>() {}
-            );
-
-            List<MistralProductDto> products = response.getBody();
-            log.info("Fetched {} products from Mistral for search: '{}'",
-                    products != null ? products.size() : 0, search);
-            return products != null ? products : Collections.emptyList();
-
-        } catch (Exception e) {
-            log.error("Failed to fetch products from Mistral: {}", e.getMessage());
-            throw new RuntimeException("Failed to fetch products from Mistral", e);
-        }
+        int count = streamProductArray("GetAllData", url, consumer);
+        log.info("Fetched {} products from Mistral for search: '{}'", count, search);
+        return count;
     }
 
     /**
@@ -114,8 +86,15 @@ public class MistralApiClient {
      * Much faster than fetching by code one-by-one
      */
     public List<MistralProductDto> fetchProductsByRowRange(int fromRow, int toRow) {
-        String token = authenticate();
+        List<MistralProductDto> products = new ArrayList<>();
+        streamProductsByRowRange(fromRow, toRow, products::add);
+        return products;
+    }
 
+    /**
+     * Streams a row range to the consumer one product at a time, while the response is still downloading
+     */
+    public int streamProductsByRowRange(int fromRow, int toRow, Consumer<MistralProductDto> consumer) {
         String url = UriComponentsBuilder.fromHttpUrl(mistralConfig.getBaseUrl() + "/api/GetAllDataByPart")
                 .queryParam("locationid", mistralConfig.getLocationId())
                 .queryParam("priceid", mistralConfig.getPriceId())
@@ -123,31 +102,229 @@ public class MistralApiClient {
                 .queryParam("torow", toRow)
                 .toUriString();
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setBearerAuth(token);
-        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        int count = streamProductArray("GetAllDataByPart", url, consumer);
+        log.info("Fetched {} products from Mistral for rows {}-{}", count, fromRow, toRow);
+        return count;
+    }
 
-        HttpEntity<Void> request = new HttpEntity<>(headers);
+    /**
+     * Fetches a row range as lean sync rows (Code, Name, Qtty, SalesPrice, BaseSalePrice only)
+     */
+    public List<MistralSyncRow> fetchSyncRowsByRowRange(int fromRow, int toRow) {
+        List<MistralSyncRow> rows = new ArrayList<>();
+        streamSyncRowsByRowRange(fromRow, toRow, rows::add);
+        return rows;
+    }
 
-        try {
-            ResponseEntity<List<MistralProductDto>> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.GET,
-                    request,
-                    new ParameterizedTypeReference<List<MistralProductDto>>() {}
-            );
-
-            List<MistralProductDto> products = response.getBody();
-            log.info("Fetched {} products from Mistral for rows {}-{}",
-                    products != null ? products.size() : 0, fromRow, toRow);
-            return products != null ? products : Collections.emptyList();
+    /**
+     * Streams a row range as lean sync rows. Every other field is skipped by the parser without being bound.
+     */
+    public int streamSyncRowsByRowRange(int fromRow, int toRow, Consumer<MistralSyncRow> consumer) {
+        String url = UriComponentsBuilder.fromHttpUrl(mistralConfig.getBaseUrl() + "/api/GetAllDataByPart")
+                .queryParam("locationid", mistralConfig.getLocationId())
+                .queryParam("priceid", mistralConfig.getPriceId())
+                .queryParam("row", fromRow)
+                .queryParam("torow", toRow)
+                .toUriString();
+
+        int count = streamArray("GetAllDataByPart", url, MistralApiClient::readSyncRow, consumer);
+        log.info("Fetched {} sync rows from Mistral for rows {}-{}", count, fromRow, toRow);
+        return count;
+    }
+
+    private int streamProductArray(String endpoint, String url, Consumer<MistralProductDto> consumer) {
+        return streamArray(endpoint, url, parser -> productReader.readValue(parser), consumer);
+    }
 
+    /**
+     * GETs a Mistral endpoint returning a JSON array and parses it element by element
+     * with the Jackson streaming parser, so only one element is held in memory at a time.
+     * Fails fast with {@link MistralCircuitBreaker.CircuitOpenException} while Mistral is considered down.
+     * The HTTP round trip and the body decode are recorded separately in {@link SyncMetrics}; time spent in
+     * the consumer is left out of the decode, as it belongs to whatever the consumer does with the rows.
+     * An exception thrown by the consumer (e.g. a failed DB write) stops the stream and reaches the caller
+     * unwrapped; Mistral answered, so the breaker records the call as a success. The breaker judges slowness
+     * on Mistral's time only, leaving the consumer's time out.
+     */
+    private <T> int streamArray(String endpoint, String url, ElementReader<T> elementReader, Consumer<T> consumer) {
+        ConsumerException[] consumerFailure = new ConsumerException[1];
+        long[] consumerNanos = new long[1];
+        int count = circuitBreaker.call(() -> {
+            try {
+                return streamArray(endpoint, url, elementReader, consumer, consumerNanos, true);
+            } catch (ConsumerException e) {
+                consumerFailure[0] = e;
+                return 0;
+            }
+        }, () -> consumerNanos[0]);
+        if (consumerFailure[0] != null) {
+            throw consumerFailure[0].failure;
+        }
+        return count;
+    }
+
+    private <T> int streamArray(String endpoint, String url, ElementReader<T> elementReader, Consumer<T> consumer,
+                                long[] consumerTime, boolean retryOnUnauthorized) {
+        String token = authenticate();
+
+        RequestCallback requestCallback = request -> {
+            request.getHeaders().setBearerAuth(token);
+            request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        };
+
+        long requestStart = System.nanoTime();
+        long[] responseAt = new long[1];
+        ResponseExtractor<Integer> responseExtractor = response -> {
+            long decodeStart = System.nanoTime();
+            responseAt[0] = decodeStart;
+            long consumerNanos = 0;
+            int count = 0;
+            String decodeOutcome = SyncMetrics.FAILURE;
+
+            try (JsonParser parser = objectMapper.getFactory().createParser(response.getBody())) {
+                JsonToken first = parser.nextToken();
+                if (first == null || first == JsonToken.VALUE_NULL) {
+                    decodeOutcome = SyncMetrics.SUCCESS;
+                    return 0;
+                }
+                if (first != JsonToken.START_ARRAY) {
+                    throw new IOException("Expected JSON array from Mistral but got " + first);
+                }
+
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    T element = elementReader.read(parser);
+                    long consumerStart = System.nanoTime();
+                    try {
+                        consumer.accept(element);
+                    } catch (RuntimeException e) {
+                        throw new ConsumerException(e);
+                    } finally {
+                        consumerNanos += System.nanoTime() - consumerStart;
+                    }
+                    count++;
+                }
+                decodeOutcome = SyncMetrics.SUCCESS;
+                return count;
+            } catch (ConsumerException e) {
+                decodeOutcome = "aborted";
+                throw e;
+            } finally {
+                consumerTime[0] += consumerNanos;
+                syncMetrics.record(SyncMetrics.Phase.DECODE, endpoint, decodeOutcome,
+                        System.nanoTime() - decodeStart - consumerNanos);
+                syncMetrics.countRows("decoded", count);
+            }
+        };
+
+        try {
+            Integer count = timeHttp(endpoint, requestStart, responseAt,
+                    () -> mistralRestTemplate.execute(url, HttpMethod.GET, requestCallback, responseExtractor));
+            return count != null ? count : 0;
+        } catch (HttpClientErrorException.Unauthorized e) {
+            if (retryOnUnauthorized) {
+                // Token was revoked or expired early on the Mistral side
+                log.warn("Mistral rejected the access token, renewing and retrying once");
+                tokenManager.invalidate(token);
+                return streamArray(endpoint, url, elementReader, consumer, consumerTime, false);
+            }
+            log.error("Failed to fetch products from Mistral: {}", e.getMessage());
+            throw new RuntimeException("Failed to fetch products from Mistral", e);
+        } catch (ConsumerException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Failed to fetch products from Mistral: {}", e.getMessage());
             throw new RuntimeException("Failed to fetch products from Mistral", e);
         }
     }
 
+    /**
+     * Runs a Mistral request and records its HTTP round trip in finally, up to the response headers when they
+     * arrived (tagged success, whatever then happens to the body), otherwise up to the failure, tagged with
+     * its kind: client_error, server_error, io_error (connect or read timeout, reset) or failure
+     */
+    private <T> T timeHttp(String endpoint, long requestStart, long[] responseAt, Supplier<T> request) {
+        String outcome = SyncMetrics.FAILURE;
+        try {
+            T result = request.get();
+            outcome = SyncMetrics.SUCCESS;
+            return result;
+        } catch (HttpStatusCodeException e) {
+            outcome = e.getStatusCode().is4xxClientError() ? "client_error" : "server_error";
+            throw e;
+        } catch (ResourceAccessException e) {
+            outcome = "io_error";
+            throw e;
+        } finally {
+            boolean responded = responseAt[0] != 0;
+            syncMetrics.record(SyncMetrics.Phase.HTTP, endpoint, responded ? SyncMetrics.SUCCESS : outcome,
+                    (responded ? responseAt[0] : System.nanoTime()) - requestStart);
+        }
+    }
+
+    /**
+     * Reads one product object into a sync row. Numbers are parsed straight from the parser's
+     * character buffer; unknown fields, including Lots and Attributes, are skipped.
+     */
+    private static MistralSyncRow readSyncRow(JsonParser parser) throws IOException {
+        int uCode = MistralSyncRow.NO_UCODE;
+        String code = null;
+        String name = null;
+        int quantity = 0;
+        long salesPriceCents = 0L;
+        long baseSalePriceCents = MistralSyncRow.NO_PRICE;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+
+            if (value.isStructStart()) {
+                parser.skipChildren();
+                continue;
+            }
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            switch (field) {
+                case "UCode" -> uCode = parser.getValueAsInt(MistralSyncRow.NO_UCODE);
+                case "Code" -> code = parser.getText();
+                case "Name" -> name = parser.getText();
+                case "Qtty" -> quantity = MistralNumbers.parseQuantity(textOf(parser));
+                case "SalesPrice" -> salesPriceCents = MistralNumbers.parseCents(textOf(parser), 0L);
+                case "BaseSalePrice" -> baseSalePriceCents = MistralNumbers.parseCents(textOf(parser), MistralSyncRow.NO_PRICE);
+                default -> {
+                    // not needed for sync
+                }
+            }
+        }
+
+        return new MistralSyncRow(uCode, code, name, quantity, salesPriceCents, baseSalePriceCents);
+    }
+
+    private static CharSequence textOf(JsonParser parser) throws IOException {
+        return CharBuffer.wrap(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    @FunctionalInterface
+    private interface ElementReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Carries an exception thrown by a stream consumer past the fetch error handling
+     */
+    private static class ConsumerException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RuntimeException failure;
+
+        ConsumerException(RuntimeException failure) {
+            super(failure);
+            this.failure = failure;
+        }
+    }
+
     /**
      * Fetches a single product by code
      */
@@ -163,39 +340,29 @@ public class MistralApiClient {
      * Fetches products by iterating through a range of codes (parallel)
      */
     public List<MistralProductDto> fetchProductsByCodeRange(int startCode, int endCode) {
-        List<MistralProductDto> allProducts = java.util.Collections.synchronizedList(new java.util.ArrayList<>());
-
-        // Use parallel streams with limited concurrency
-        java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(10);
-        java.util.List<java.util.concurrent.Future<?>> futures = new java.util.ArrayList<>();
+        List<MistralProductDto> allProducts = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
 
+        // One virtual thread per code; the shared executor decides how many hit Mistral at once
         for (int code = startCode; code <= endCode; code++) {
             final int currentCode = code;
-            futures.add(executor.submit(() -> {
-                try {
-                    List<MistralProductDto> products = fetchProducts(String.valueOf(currentCode));
-                    if (!products.isEmpty()) {
-                        allProducts.addAll(products);
-                        log.debug("Found {} products for code {}", products.size(), currentCode);
-                    }
-                } catch (Exception e) {
-                    log.warn("Error fetching code {}: {}", currentCode, e.getMessage());
-                }
-            }));
+            futures.add(requestExecutor.submit(() -> fetchProducts(String.valueOf(currentCode)))
+                    .handle((products, error) -> {
+                        if (error != null) {
+                            log.warn("Error fetching code {}: {}", currentCode, error.getMessage());
+                        } else if (!products.isEmpty()) {
+                            allProducts.addAll(products);
+                            log.debug("Found {} products for code {}", products.size(), currentCode);
+                        }
+                        return null;
+                    }));
         }
 
         // Wait for all to complete
-        for (java.util.concurrent.Future<?> future : futures) {
-            try {
-                future.get();
-            } catch (Exception e) {
-                log.warn("Task failed: {}", e.getMessage());
-            }
-        }
-        executor.shutdown();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new)).join();
 
-        log.info("Fetched total of {} products from code range {}-{}",
-                allProducts.size(), startCode, endCode);
+        log.info("Fetched total of {} products from code range {}-{} (concurrency limit now {})",
+                allProducts.size(), startCode, endCode, requestExecutor.getLimit());
         return allProducts;
     }
 }
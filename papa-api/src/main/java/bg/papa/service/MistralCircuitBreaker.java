@@ -0,0 +1,188 @@
+package bg.papa.service;
+
+import bg.papa.config.MistralConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker around Mistral calls.
+ * Opens when too many of the recent calls failed or were too slow, rejects calls immediately while open,
+ * then lets a few trial calls through and closes again once they succeed.
+ * Client errors (4xx) mean Mistral is up and do not count as failures.
+ * Every MistralApiClient request goes through the breaker, so callers must not wrap client calls in it again.
+ */
+@Component
+@Slf4j
+public class MistralCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final MistralConfig.CircuitBreaker config;
+    private final MeterRegistry meterRegistry;
+    private final long slowCallNanos;
+
+    // Outcomes of the most recent calls while closed, as a ring buffer
+    private final boolean[] outcomes;
+    private int outcomeCount;
+    private int nextOutcome;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int trialCallsStarted;
+    private int trialCallsSucceeded;
+
+    public MistralCircuitBreaker(MistralConfig mistralConfig, MeterRegistry meterRegistry) {
+        this.config = mistralConfig.getCircuitBreaker();
+        this.meterRegistry = meterRegistry;
+        this.slowCallNanos = config.getSlowCallThreshold().toNanos();
+        this.outcomes = new boolean[Math.max(1, config.getSlidingWindowSize())];
+    }
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("mistral.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("Mistral circuit breaker state (0 closed, 1 open, 2 half-open)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the call if the circuit allows it and records the outcome
+     *
+     * @throws CircuitOpenException if the circuit is open
+     */
+    public <T> T call(Supplier<T> call) {
+        return call(call, () -> 0L);
+    }
+
+    /**
+     * Same as {@link #call(Supplier)} for calls that spend part of their time on work of ours, such as
+     * a stream handing rows to a consumer that writes them; that time is left out when judging slowness
+     *
+     * @param ownNanos time the call spent outside Mistral, read once the call has returned
+     * @throws CircuitOpenException if the circuit is open
+     */
+    public <T> T call(Supplier<T> call, LongSupplier ownNanos) {
+        if (!tryAcquire()) {
+            throw new CircuitOpenException();
+        }
+
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            record(System.nanoTime() - start - ownNanos.getAsLong() <= slowCallNanos);
+            return result;
+        } catch (RuntimeException e) {
+            record(!isFailure(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Whether calls are currently rejected without trying Mistral
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.nanoTime() - openedAtNanos < config.getOpenDuration().toNanos();
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < config.getOpenDuration().toNanos()) {
+                return false;
+            }
+            log.info("Mistral circuit half-open, letting {} trial calls through", config.getHalfOpenCalls());
+            state = State.HALF_OPEN;
+            trialCallsStarted = 0;
+            trialCallsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialCallsStarted >= config.getHalfOpenCalls()) {
+                return false;
+            }
+            trialCallsStarted++;
+        }
+        return true;
+    }
+
+    private synchronized void record(boolean success) {
+        if (state == State.HALF_OPEN) {
+            if (!success) {
+                open("trial call failed");
+            } else if (++trialCallsSucceeded >= config.getHalfOpenCalls()) {
+                log.info("Mistral circuit closed");
+                state = State.CLOSED;
+                resetOutcomes();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // Call started before the circuit opened
+            return;
+        }
+
+        if (outcomeCount == outcomes.length) {
+            if (!outcomes[nextOutcome]) {
+                failures--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[nextOutcome] = success;
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+        if (!success) {
+            failures++;
+        }
+
+        if (outcomeCount >= config.getMinimumCalls()
+                && (double) failures / outcomeCount >= config.getFailureRateThreshold()) {
+            open(failures + " of the last " + outcomeCount + " calls failed");
+        }
+    }
+
+    private void open(String reason) {
+        log.warn("Mistral circuit opened for {}s: {}", config.getOpenDuration().toSeconds(), reason);
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        resetOutcomes();
+    }
+
+    private void resetOutcomes() {
+        outcomeCount = 0;
+        nextOutcome = 0;
+        failures = 0;
+    }
+
+    /**
+     * Client errors anywhere in the cause chain mean Mistral answered; everything else is a failure
+     */
+    static boolean isFailure(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof HttpClientErrorException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Thrown instead of calling Mistral while the circuit is open
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitOpenException() {
+            super("Mistral circuit is open");
+        }
+    }
+}
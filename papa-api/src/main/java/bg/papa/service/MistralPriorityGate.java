@@ -0,0 +1,70 @@
+package bg.papa.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Gives interactive Mistral calls (single-SKU syncs, cart stock checks) priority over bulk sweeps.
+ * While any interactive call is in flight, sweeps hold back their next window fetch, up to a short
+ * maximum so a steady stream of interactive calls cannot starve a sweep.
+ */
+@Component
+public class MistralPriorityGate {
+
+    private final AtomicInteger interactiveCalls = new AtomicInteger();
+    private final AtomicLong yields = new AtomicLong();
+    private final Object idle = new Object();
+
+    @Value("${app.sync.scheduler.max-yield:2s}")
+    private Duration maxYield;
+
+    /**
+     * Runs an interactive call; sweeps yield to it until it returns
+     */
+    public <T> T interactive(Supplier<T> call) {
+        interactiveCalls.incrementAndGet();
+        try {
+            return call.get();
+        } finally {
+            if (interactiveCalls.decrementAndGet() == 0) {
+                synchronized (idle) {
+                    idle.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by sweeps before each window fetch: waits while interactive calls are in flight, at most the maximum yield
+     */
+    public void yieldToInteractive() throws InterruptedException {
+        if (interactiveCalls.get() == 0) {
+            return;
+        }
+        yields.incrementAndGet();
+        long deadline = System.nanoTime() + maxYield.toNanos();
+        synchronized (idle) {
+            long remaining;
+            while (interactiveCalls.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(idle, remaining);
+            }
+        }
+    }
+
+    public int getInteractiveCalls() {
+        return interactiveCalls.get();
+    }
+
+    /**
+     * Window fetches that waited for interactive calls since startup
+     */
+    public long getYields() {
+        return yields.get();
+    }
+}
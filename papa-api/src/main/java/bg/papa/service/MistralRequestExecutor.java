@@ -0,0 +1,167 @@
+package bg.papa.service;
+
+import bg.papa.config.MistralConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shared executor for parallel Mistral requests.
+ * Each request runs on its own virtual thread; how many run at once is decided by an
+ * AIMD limit fed by observed latency and errors, so we push Mistral as hard as it keeps up with.
+ * Cancelling a request's future interrupts its thread, which aborts a blocked HTTP read.
+ */
+@Component
+@Slf4j
+public class MistralRequestExecutor {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AdaptiveConcurrencyLimit limit;
+    private final MistralConfig.Retry retryConfig;
+
+    public MistralRequestExecutor(MistralConfig mistralConfig, MeterRegistry meterRegistry) {
+        this.retryConfig = mistralConfig.getRetry();
+        MistralConfig.Concurrency concurrency = mistralConfig.getConcurrency();
+        this.limit = new AdaptiveConcurrencyLimit(
+                concurrency.getInitialLimit(),
+                concurrency.getMinLimit(),
+                concurrency.getMaxLimit(),
+                concurrency.getLatencyThreshold().toMillis(),
+                concurrency.getBackoffRatio()
+        );
+
+        Gauge.builder("mistral.requests.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .description("Current adaptive concurrency limit for Mistral requests")
+                .register(meterRegistry);
+        Gauge.builder("mistral.requests.in.flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .description("Mistral requests currently running")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the request on a virtual thread once the concurrency limit lets it through
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(call(request));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(new CompletionException(e));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Like {@link #submit(Callable)}, retrying failed requests with exponential backoff and full jitter.
+     * Client errors (4xx) and calls rejected by the open circuit are not retried. Every attempt takes its own
+     * permit, and the backoff waits on a timer, so a request waiting to retry holds neither a permit nor a thread.
+     * After the timeout the future completes with a TimeoutException and the running attempt is interrupted;
+     * cancelling the future does the same.
+     */
+    public <T> CompletableFuture<T> submitWithRetry(Callable<T> request, Duration timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> currentAttempt = new AtomicReference<>();
+        result.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            CompletableFuture<T> attempt = currentAttempt.get();
+            if (error != null && attempt != null) {
+                attempt.cancel(true);
+            }
+        });
+        attempt(request, 1, result, currentAttempt);
+        return result;
+    }
+
+    private <T> void attempt(Callable<T> request, int attemptNumber, CompletableFuture<T> result,
+                             AtomicReference<CompletableFuture<T>> currentAttempt) {
+        CompletableFuture<T> attempt = submit(request);
+        currentAttempt.set(attempt);
+        if (result.isDone()) {
+            // Timed out or cancelled while waiting to retry
+            attempt.cancel(true);
+            return;
+        }
+
+        attempt.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (result.isDone() || attemptNumber >= retryConfig.getMaxAttempts() || !isRetryable(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            CompletableFuture.delayedExecutor(backoffMillis(attemptNumber), TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> attempt(request, attemptNumber + 1, result, currentAttempt));
+        });
+    }
+
+    private static boolean isRetryable(Throwable error) {
+        return !(error instanceof MistralCircuitBreaker.CircuitOpenException) && MistralCircuitBreaker.isFailure(error);
+    }
+
+    /**
+     * Full jitter: a random wait up to the exponentially growing ceiling
+     */
+    private long backoffMillis(int attempt) {
+        long ceiling = Math.min(retryConfig.getMaxBackoff().toMillis(),
+                retryConfig.getInitialBackoff().toMillis() << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Runs the request on the calling thread under the concurrency limit
+     */
+    public <T> T call(Callable<T> request) throws InterruptedException {
+        limit.acquire();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = request.call();
+            success = true;
+            return result;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            limit.release(System.nanoTime() - start, success);
+        }
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return limit.getInFlight();
+    }
+}
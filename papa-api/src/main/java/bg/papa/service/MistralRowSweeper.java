@@ -0,0 +1,383 @@
+package bg.papa.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Pipelined sweep over Mistral GetAllDataByPart row windows.
+ * Keeps several windows in flight while the caller processes the previous one,
+ * and hands windows to the caller strictly in row order.
+ * Every window fetch first yields to interactive Mistral calls in flight.
+ * Window times (fetch plus processing) go to {@link SyncMetrics}, tagged with the sync type of the calling thread.
+ * Partitioned sweeps process windows on their own handler threads, so slow writes never hold a fetch worker.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MistralRowSweeper {
+
+    private final MistralPriorityGate priorityGate;
+    private final SyncMetrics syncMetrics;
+
+    @Value("${app.sync.sweep.window-size:1000}")
+    private int windowSize;
+
+    @Value("${app.sync.sweep.concurrency:3}")
+    private int concurrency;
+
+    @Value("${app.sync.sweep.max-rows:50000}")
+    private int maxRows;
+
+    private ExecutorService fetchExecutor;
+    private ExecutorService handlerExecutor;
+
+    @PostConstruct
+    void init() {
+        fetchExecutor = newPool("mistral-sweep-");
+        handlerExecutor = newPool("mistral-sweep-handler-");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        fetchExecutor.shutdownNow();
+        handlerExecutor.shutdownNow();
+    }
+
+    private ExecutorService newPool(String threadPrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, threadPrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sweeps the catalog starting at the given row until Mistral returns an empty window.
+     * The handler runs on the calling thread, in row order, while the next windows are fetched.
+     * A window shorter than requested only narrows prefetching to one window at a time, since Mistral can return
+     * short windows mid-catalog; the sweep ends at the first empty window.
+     */
+    public <T> SweepResult sweep(String label, int startRow, WindowFetcher<T> fetcher, WindowHandler<T> handler) {
+        return sweep(label, startRow, fetcher, handler, (fromRow, toRow, error) -> {});
+    }
+
+    /**
+     * Same as {@link #sweep(String, int, WindowFetcher, WindowHandler)}, reporting every window
+     * that could not be fetched or processed to the failure listener as it happens
+     */
+    public <T> SweepResult sweep(String label, int startRow, WindowFetcher<T> fetcher, WindowHandler<T> handler,
+                                 WindowFailureListener failureListener) {
+        long startTime = System.currentTimeMillis();
+        int lastAllowedRow = startRow + maxRows - 1;
+
+        Deque<PendingWindow<T>> inFlight = new ArrayDeque<>();
+        List<Integer> failedWindows = new ArrayList<>();
+        int nextRow = startRow;
+        int windows = 0;
+        int rows = 0;
+        int lastRow = 0;
+        boolean endSuspected = false;
+
+        try {
+            while (true) {
+                // Keep the pipeline full; after a short window fetch one window at a time until an empty one confirms the end
+                int depth = endSuspected ? 1 : concurrency;
+                while (inFlight.size() < depth && nextRow <= lastAllowedRow) {
+                    int fromRow = nextRow;
+                    int toRow = Math.min(fromRow + windowSize - 1, lastAllowedRow);
+                    inFlight.addLast(new PendingWindow<>(fromRow, toRow,
+                            fetchExecutor.submit(syncMetrics.propagate(() -> fetchTimed(fetcher, fromRow, toRow)))));
+                    nextRow = toRow + 1;
+                }
+
+                PendingWindow<T> window = inFlight.pollFirst();
+                if (window == null) {
+                    if (nextRow > lastAllowedRow) {
+                        log.warn("[{}] Reached safety limit of {} rows", label, maxRows);
+                    }
+                    break;
+                }
+
+                FetchedWindow<T> fetched;
+                try {
+                    fetched = window.future().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    log.error("[{}] Error fetching rows {}-{}: {}", label, window.fromRow(), window.toRow(), cause.getMessage());
+                    failedWindows.add(window.fromRow());
+                    failureListener.failed(window.fromRow(), window.toRow(), cause);
+                    continue;
+                }
+                List<T> windowRows = fetched.rows();
+
+                if (windowRows.isEmpty()) {
+                    log.info("[{}] No products at rows {}-{}, end of catalog", label, window.fromRow(), window.toRow());
+                    break;
+                }
+
+                // A short window usually means the end, but only an empty window ends the sweep
+                endSuspected = windowRows.size() < window.toRow() - window.fromRow() + 1;
+
+                long handleStart = System.nanoTime();
+                try {
+                    handler.handle(window.fromRow(), window.toRow(), windowRows);
+                } catch (Exception e) {
+                    log.error("[{}] Error processing rows {}-{}: {}", label, window.fromRow(), window.toRow(), e.getMessage());
+                    syncMetrics.recordWindow(false, fetched.fetchNanos() + System.nanoTime() - handleStart);
+                    failedWindows.add(window.fromRow());
+                    failureListener.failed(window.fromRow(), window.toRow(), e);
+                    continue;
+                }
+                syncMetrics.recordWindow(true, fetched.fetchNanos() + System.nanoTime() - handleStart);
+
+                windows++;
+                rows += windowRows.size();
+                lastRow = window.fromRow() + windowRows.size() - 1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Sweep interrupted", e);
+        } finally {
+            inFlight.forEach(pending -> pending.future().cancel(true));
+        }
+
+        long duration = System.currentTimeMillis() - startTime;
+        log.info("[{}] Sweep completed in {}ms: {} windows, {} rows, {} failed windows",
+                label, duration, windows, rows, failedWindows.size());
+        return new SweepResult(windows, rows, lastRow, failedWindows, duration);
+    }
+
+    /**
+     * Sweeps a catalog whose size is known: the rows from startRow to endRow are split into windows that
+     * several workers fetch and process in parallel, each worker taking the next unclaimed window.
+     * The handler and failure listener are called concurrently and out of row order, so they must be thread-safe.
+     * Every window reaches one of them; a window past the end of a catalog that shrank reaches the handler with no rows.
+     * Rows past endRow are then swept with {@link #sweep(String, int, WindowFetcher, WindowHandler, WindowFailureListener)},
+     * so products added since the size was measured are not missed.
+     */
+    public <T> SweepResult sweepPartitioned(String label, int startRow, int endRow, WindowFetcher<T> fetcher,
+                                            WindowHandler<T> handler, WindowFailureListener failureListener) {
+        if (startRow > endRow) {
+            return sweep(label, startRow, fetcher, handler, failureListener);
+        }
+
+        long startTime = System.currentTimeMillis();
+        int windowCount = (endRow - startRow) / windowSize + 1;
+        SweepResult partitions = runWindows(label, windowCount, window -> startRow + window * windowSize, endRow,
+                fetcher, handler, failureListener);
+        log.info("[{}] Partitioned rows {}-{} in {}ms: {} windows, {} rows, {} failed windows",
+                label, startRow, endRow, partitions.durationMs(), partitions.windows(), partitions.rows(),
+                partitions.failedWindows().size());
+
+        // Rows past the measured end: the catalog may have grown since
+        SweepResult tail = sweep(label, endRow + 1, fetcher, handler, failureListener);
+        if (tail.rows() > 0) {
+            log.info("[{}] Found {} rows past the measured catalog end of {}", label, tail.rows(), endRow);
+        }
+
+        List<Integer> allFailed = new ArrayList<>(partitions.failedWindows());
+        allFailed.addAll(tail.failedWindows());
+        return new SweepResult(partitions.windows() + tail.windows(), partitions.rows() + tail.rows(),
+                Math.max(partitions.lastRow(), tail.lastRow()), allFailed, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Fetches and processes only the windows starting at the given rows, in parallel like
+     * {@link #sweepPartitioned(String, int, int, WindowFetcher, WindowHandler, WindowFailureListener)}.
+     * Used to revisit the parts of the catalog where something is expected to have changed.
+     */
+    public <T> SweepResult sweepWindows(String label, List<Integer> fromRows, WindowFetcher<T> fetcher,
+                                        WindowHandler<T> handler, WindowFailureListener failureListener) {
+        SweepResult result = runWindows(label, fromRows.size(), fromRows::get, Integer.MAX_VALUE,
+                fetcher, handler, failureListener);
+        log.info("[{}] Swept {} selected windows in {}ms: {} rows, {} failed windows",
+                label, fromRows.size(), result.durationMs(), result.rows(), result.failedWindows().size());
+        return result;
+    }
+
+    /**
+     * Runs windowCount windows on the fetch workers, each worker taking the next unclaimed window and passing it
+     * on to the handler threads. At most concurrency windows are fetched or processed at a time.
+     * Windows never extend past endRow. A failure listener that throws stops the workers from taking further windows.
+     */
+    private <T> SweepResult runWindows(String label, int windowCount, IntUnaryOperator windowStart, int endRow,
+                                       WindowFetcher<T> fetcher, WindowHandler<T> handler,
+                                       WindowFailureListener failureListener) {
+        long startTime = System.currentTimeMillis();
+        AtomicInteger nextWindow = new AtomicInteger();
+        AtomicInteger windows = new AtomicInteger();
+        AtomicInteger rows = new AtomicInteger();
+        AtomicInteger lastRow = new AtomicInteger();
+        List<Integer> failedWindows = Collections.synchronizedList(new ArrayList<>());
+        // Released once a window is handled, so fetching never runs far ahead of processing
+        Semaphore windowsInFlight = new Semaphore(Math.max(1, concurrency));
+        List<Future<?>> handling = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean stopped = new AtomicBoolean();
+
+        int workerCount = Math.max(1, Math.min(concurrency, windowCount));
+        List<Future<?>> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(fetchExecutor.submit(syncMetrics.propagate(() -> {
+                while (!stopped.get() && !Thread.currentThread().isInterrupted()) {
+                    try {
+                        windowsInFlight.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    int window = nextWindow.getAndIncrement();
+                    if (window >= windowCount) {
+                        windowsInFlight.release();
+                        return;
+                    }
+                    int fromRow = windowStart.applyAsInt(window);
+                    int toRow = (int) Math.min((long) fromRow + windowSize - 1, endRow);
+                    long windowStartNanos = System.nanoTime();
+
+                    List<T> windowRows;
+                    try {
+                        windowRows = fetchYielding(fetcher, fromRow, toRow);
+                    } catch (InterruptedException e) {
+                        windowsInFlight.release();
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (Exception e) {
+                        windowsInFlight.release();
+                        log.error("[{}] Error fetching rows {}-{}: {}", label, fromRow, toRow, e.getMessage());
+                        syncMetrics.recordWindow(false, System.nanoTime() - windowStartNanos);
+                        failedWindows.add(fromRow);
+                        reportFailure(failureListener, stopped, fromRow, toRow, e);
+                        continue;
+                    }
+
+                    handling.add(handlerExecutor.submit(syncMetrics.propagate(() -> {
+                        try {
+                            // An empty window (the catalog shrank since it was measured) still goes to the handler,
+                            // so a checkpointing caller can move its cursor past it
+                            handler.handle(fromRow, toRow, windowRows);
+                        } catch (Exception e) {
+                            log.error("[{}] Error processing rows {}-{}: {}", label, fromRow, toRow, e.getMessage());
+                            syncMetrics.recordWindow(false, System.nanoTime() - windowStartNanos);
+                            failedWindows.add(fromRow);
+                            reportFailure(failureListener, stopped, fromRow, toRow, e);
+                            return;
+                        } finally {
+                            windowsInFlight.release();
+                        }
+                        if (windowRows.isEmpty()) {
+                            return;
+                        }
+                        syncMetrics.recordWindow(true, System.nanoTime() - windowStartNanos);
+
+                        windows.incrementAndGet();
+                        rows.addAndGet(windowRows.size());
+                        lastRow.accumulateAndGet(fromRow + windowRows.size() - 1, Math::max);
+                    })));
+                }
+            })));
+        }
+
+        try {
+            awaitAll(workers);
+            // Every window was handed to a handler once all workers are done
+            awaitAll(new ArrayList<>(handling));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Sweep interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sweep worker failed", e.getCause());
+        } finally {
+            workers.forEach(worker -> worker.cancel(true));
+            synchronized (handling) {
+                handling.forEach(task -> task.cancel(true));
+            }
+        }
+
+        return new SweepResult(windows.get(), rows.get(), lastRow.get(), new ArrayList<>(failedWindows),
+                System.currentTimeMillis() - startTime);
+    }
+
+    private static void reportFailure(WindowFailureListener failureListener, AtomicBoolean stopped,
+                                      int fromRow, int toRow, Throwable error) {
+        try {
+            failureListener.failed(fromRow, toRow, error);
+        } catch (RuntimeException e) {
+            stopped.set(true);
+            throw e;
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws InterruptedException, ExecutionException {
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private <T> FetchedWindow<T> fetchTimed(WindowFetcher<T> fetcher, int fromRow, int toRow) throws InterruptedException {
+        long start = System.nanoTime();
+        List<T> rows = fetchYielding(fetcher, fromRow, toRow);
+        return new FetchedWindow<>(rows, System.nanoTime() - start);
+    }
+
+    private <T> List<T> fetchYielding(WindowFetcher<T> fetcher, int fromRow, int toRow) throws InterruptedException {
+        priorityGate.yieldToInteractive();
+        return fetcher.fetch(fromRow, toRow);
+    }
+
+    /**
+     * Fetches one window of rows (1-indexed, inclusive)
+     */
+    @FunctionalInterface
+    public interface WindowFetcher<T> {
+        List<T> fetch(int fromRow, int toRow);
+    }
+
+    /**
+     * Processes one fetched window of rows. In partitioned and selected-window sweeps rows can be empty,
+     * for a window past the end of a catalog that shrank since it was measured.
+     */
+    @FunctionalInterface
+    public interface WindowHandler<T> {
+        void handle(int fromRow, int toRow, List<T> rows);
+    }
+
+    /**
+     * Notified when a window is skipped because fetching or processing it failed
+     */
+    @FunctionalInterface
+    public interface WindowFailureListener {
+        void failed(int fromRow, int toRow, Throwable error);
+    }
+
+    private record PendingWindow<T>(int fromRow, int toRow, Future<FetchedWindow<T>> future) {}
+
+    private record FetchedWindow<T>(List<T> rows, long fetchNanos) {}
+
+    /**
+     * Result of a sweep. lastRow is the highest row number returned by Mistral, 0 if none.
+     */
+    public record SweepResult(int windows, int rows, int lastRow, List<Integer> failedWindows, long durationMs) {}
+}
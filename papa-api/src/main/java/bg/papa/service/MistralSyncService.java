@@ -1,17 +1,31 @@
 package bg.papa.service;
 
 import bg.papa.dto.mistral.MistralProductDto;
+import bg.papa.dto.mistral.MistralSyncRow;
 import bg.papa.entity.Product;
+import bg.papa.entity.ProductPriceHistory;
 import bg.papa.entity.ProductStatus;
+import bg.papa.entity.SyncJob;
+import bg.papa.entity.SyncJobType;
+import bg.papa.repository.ProductBulkRepository;
+import bg.papa.repository.ProductChangeHistoryRepository;
+import bg.papa.repository.ProductPriceHistoryRepository;
 import bg.papa.repository.ProductRepository;
+import bg.papa.repository.ProductStagingRepository;
+import bg.papa.repository.ProductSyncStateRepository;
+import bg.papa.util.Slugs;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,22 +35,52 @@ public class MistralSyncService {
 
     private final MistralApiClient mistralApiClient;
     private final ProductRepository productRepository;
+    private final ProductBulkRepository productBulkRepository;
+    private final ProductSyncStateRepository productSyncStateRepository;
+    private final ProductChangeHistoryRepository productChangeHistoryRepository;
+    private final ProductPriceHistoryRepository productPriceHistoryRepository;
+    private final ProductStagingRepository productStagingRepository;
+    private final StockCache stockCache;
+    private final MistralRowSweeper rowSweeper;
+    private final SyncJobService syncJobService;
+    private final ChunkedTransactions chunkedTransactions;
+    private final MistralCircuitBreaker circuitBreaker;
+    private final MistralPriorityGate priorityGate;
+    private final SyncMetrics syncMetrics;
+
+    @Value("${app.sync.skip-unchanged:true}")
+    private boolean skipUnchanged;
+
+    @Value("${app.sync.stream-chunk-size:250}")
+    private int streamChunkSize;
+
+    @Value("${app.sync.bulk-upsert:true}")
+    private boolean bulkUpsert;
+
+    @Value("${app.sync.staging.enabled:true}")
+    private boolean stagingIngest;
+
+    @Value("${app.sync.staging.unpublish-missing:true}")
+    private boolean unpublishMissing;
+
+    @Value("${app.sync.staging.max-unpublish-ratio:0.05}")
+    private double maxUnpublishRatio;
 
     public ProductRepository getProductRepository() {
         return productRepository;
     }
 
     /**
-     * Syncs a single product by Mistral code
+     * Syncs a single product by Mistral code. The lookup is interactive, so running sweeps yield to it.
      */
     @Transactional
     public Product syncProductByCode(String code) {
-        MistralProductDto mistralProduct = mistralApiClient.fetchProductByCode(code);
+        MistralProductDto mistralProduct = priorityGate.interactive(() -> mistralApiClient.fetchProductByCode(code));
         if (mistralProduct == null) {
             log.warn("No product found in Mistral for code: {}", code);
             return null;
         }
-        return syncProduct(mistralProduct);
+        return syncProduct(MistralSyncRow.from(mistralProduct)).product();
     }
 
     /**
@@ -47,98 +91,196 @@ public class MistralSyncService {
         log.info("Starting sync for code range {}-{}", startCode, endCode);
 
         List<MistralProductDto> mistralProducts = mistralApiClient.fetchProductsByCodeRange(startCode, endCode);
+        SyncResult result = syncProducts(mistralProducts, false);
 
-        int created = 0;
-        int updated = 0;
-        int errors = 0;
+        log.info("Sync completed: {} created, {} updated, {} errors", result.created(), result.updated(), result.errors());
+        return result;
+    }
 
-        for (MistralProductDto mistralProduct : mistralProducts) {
-            try {
-                Product product = syncProduct(mistralProduct);
-                if (product.getCreatedAt() != null &&
-                    product.getCreatedAt().isAfter(LocalDateTime.now().minusSeconds(5))) {
-                    created++;
-                } else {
-                    updated++;
-                }
-            } catch (Exception e) {
-                log.error("Error syncing product {}: {}", mistralProduct.getCode(), e.getMessage());
-                errors++;
+    /**
+     * Syncs products by row range using GetAllDataByPart endpoint
+     * Much faster than syncing by code
+     */
+    @Transactional
+    public SyncResult syncProductsByRowRange(int fromRow, int toRow) {
+        return syncProductsByRowRange(fromRow, toRow, false);
+    }
+
+    /**
+     * Syncs products by row range, optionally writing the whole window with set-based upserts.
+     * The response is streamed: each chunk of parsed products is written while the rest is still downloading.
+     */
+    @Transactional
+    public SyncResult syncProductsByRowRange(int fromRow, int toRow, boolean bulk) {
+        log.info("Starting {} sync for row range {}-{}", bulk ? "bulk" : "per-product", fromRow, toRow);
+
+        List<SyncResult> chunkResults = new ArrayList<>();
+        List<MistralSyncRow> chunk = new ArrayList<>(streamChunkSize);
+
+        mistralApiClient.streamSyncRowsByRowRange(fromRow, toRow, row -> {
+            chunk.add(row);
+            if (chunk.size() >= streamChunkSize) {
+                chunkResults.add(syncRows(chunk, bulk));
+                chunk.clear();
             }
+        });
+        if (!chunk.isEmpty()) {
+            chunkResults.add(syncRows(chunk, bulk));
         }
 
-        log.info("Sync completed: {} created, {} updated, {} errors", created, updated, errors);
-        return new SyncResult(created, updated, errors, mistralProducts.size());
+        SyncResult result = sum(chunkResults);
+        log.info("Row sync completed: {} created, {} updated, {} unchanged, {} errors",
+                result.created(), result.updated(), result.unchanged(), result.errors());
+        return result;
     }
 
     /**
-     * Syncs products by row range using GetAllDataByPart endpoint
-     * Much faster than syncing by code
+     * Syncs an already fetched list of full Mistral products
      */
     @Transactional
-    public SyncResult syncProductsByRowRange(int fromRow, int toRow) {
-        log.info("Starting sync for row range {}-{}", fromRow, toRow);
+    public SyncResult syncProducts(List<MistralProductDto> mistralProducts, boolean bulk) {
+        return syncRows(mistralProducts.stream().map(MistralSyncRow::from).toList(), bulk);
+    }
+
+    /**
+     * Syncs an already fetched window of Mistral sync rows.
+     * Rows whose fingerprint matches the last written one are skipped.
+     * In bulk mode the window is written with INSERT ... ON CONFLICT statements instead of one save per product.
+     * The cached real-time answers of the written SKUs are evicted.
+     */
+    @Transactional
+    public SyncResult syncRows(List<MistralSyncRow> rows, boolean bulk) {
+        List<MistralSyncRow> toWrite = rows;
+        Map<String, Long> fingerprints = new HashMap<>();
+        int unchanged = 0;
+
+        if (skipUnchanged) {
+            Set<String> codes = rows.stream()
+                    .map(MistralSyncRow::code)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet());
+            Map<String, Long> stored = syncMetrics.time(SyncMetrics.Phase.DB_LOOKUP, "fingerprints",
+                    () -> productSyncStateRepository.findFingerprints(codes));
+
+            toWrite = new ArrayList<>();
+            for (MistralSyncRow row : rows) {
+                String code = row.code();
+                if (code == null) {
+                    toWrite.add(row);
+                    continue;
+                }
+
+                long fingerprint = ProductFingerprint.of(row);
+                if (stored.containsKey(code) && Objects.equals(stored.get(code), fingerprint)) {
+                    unchanged++;
+                } else {
+                    toWrite.add(row);
+                    fingerprints.put(code, fingerprint);
+                }
+            }
+        }
 
-        List<MistralProductDto> mistralProducts = mistralApiClient.fetchProductsByRowRange(fromRow, toRow);
+        Set<String> failedCodes = new HashSet<>();
+        SyncResult written = bulk ? upsertProducts(toWrite, failedCodes) : saveProducts(toWrite, failedCodes);
 
+        if (skipUnchanged) {
+            fingerprints.keySet().removeAll(failedCodes);
+            syncMetrics.time(SyncMetrics.Phase.DB_WRITE, "fingerprints",
+                    () -> productSyncStateRepository.upsertFingerprints(fingerprints));
+        }
+        stockCache.invalidate(toWrite.stream()
+                .map(MistralSyncRow::code)
+                .filter(Objects::nonNull)
+                .toList());
+
+        return new SyncResult(written.created(), written.updated(), written.errors(), rows.size(), unchanged);
+    }
+
+    /**
+     * Saves products one by one through JPA, collecting the codes that failed
+     */
+    private SyncResult saveProducts(List<MistralSyncRow> rows, Set<String> failedCodes) {
         int created = 0;
         int updated = 0;
         int errors = 0;
 
-        for (MistralProductDto mistralProduct : mistralProducts) {
+        for (MistralSyncRow row : rows) {
             try {
-                Product product = syncProduct(mistralProduct);
-                if (product.getCreatedAt() != null &&
-                    product.getCreatedAt().isAfter(LocalDateTime.now().minusSeconds(5))) {
+                if (syncProduct(row).created()) {
                     created++;
                 } else {
                     updated++;
                 }
             } catch (Exception e) {
-                log.error("Error syncing product {}: {}", mistralProduct.getCode(), e.getMessage());
+                log.error("Error syncing product {}: {}", row.code(), e.getMessage());
+                failedCodes.add(row.code());
                 errors++;
             }
         }
 
-        log.info("Row sync completed: {} created, {} updated, {} errors", created, updated, errors);
-        return new SyncResult(created, updated, errors, mistralProducts.size());
+        return new SyncResult(created, updated, errors, rows.size());
     }
 
     /**
      * Updates stock quantities for existing products
      */
-    @Transactional
     public SyncResult syncStockOnly() {
+        return syncStockOnly(ProgressListener.NONE);
+    }
+
+    /**
+     * Updates stock quantities for existing products, reporting progress after each chunk.
+     * Mistral is called outside any transaction; each chunk's stock is then written with one
+     * set-based UPDATE that commits on its own, so a failure only loses the current chunk.
+     */
+    public SyncResult syncStockOnly(ProgressListener progress) {
         log.info("Starting stock-only sync");
 
-        List<Product> existingProducts = productRepository.findProductsForSync();
+        List<String> skus = syncMetrics.time(SyncMetrics.Phase.DB_LOOKUP, "supplier_skus",
+                productRepository::findAllSupplierSkus);
+        int chunkSize = chunkedTransactions.getChunkSize();
+        int found = 0;
         int updated = 0;
         int errors = 0;
 
-        for (Product product : existingProducts) {
-            try {
-                MistralProductDto mistralProduct = mistralApiClient.fetchProductByCode(product.getSupplierSku());
-                if (mistralProduct != null) {
-                    product.setStock(mistralProduct.getQttyAsInteger());
-                    productRepository.save(product);
-                    updated++;
+        for (int start = 0; start < skus.size(); start += chunkSize) {
+            progress.onProgress(start, skus.size(), errors);
+            List<String> chunk = skus.subList(start, Math.min(start + chunkSize, skus.size()));
+
+            Map<String, Integer> stockBySku = new LinkedHashMap<>();
+            for (String sku : chunk) {
+                try {
+                    MistralProductDto mistralProduct = mistralApiClient.fetchProductByCode(sku);
+                    if (mistralProduct != null) {
+                        stockBySku.put(sku, mistralProduct.getQttyAsInteger());
+                    }
+                } catch (Exception e) {
+                    log.error("Error syncing stock for product {}: {}", sku, e.getMessage());
+                    errors++;
                 }
+            }
+
+            try {
+                updated += writeStock(stockBySku).size();
+                found += stockBySku.size();
             } catch (Exception e) {
-                log.error("Error syncing stock for product {}: {}", product.getSupplierSku(), e.getMessage());
-                errors++;
+                log.error("Error writing stock for products {}-{}: {}", start, start + chunk.size() - 1, e.getMessage());
+                errors += stockBySku.size();
             }
         }
 
-        log.info("Stock sync completed: {} updated, {} errors", updated, errors);
-        return new SyncResult(0, updated, errors, existingProducts.size());
+        progress.onProgress(skus.size(), skus.size(), errors);
+        log.info("Stock sync completed: {} updated, {} unchanged, {} errors", updated, found - updated, errors);
+        return new SyncResult(0, updated, errors, skus.size(), found - updated);
     }
 
     /**
      * Syncs a single Mistral product to our database
      */
-    private Product syncProduct(MistralProductDto mistralProduct) {
+    private SyncedProduct syncProduct(MistralSyncRow row) {
         // Find existing product by supplier SKU (Mistral code)
-        Optional<Product> existingProduct = productRepository.findBySupplierSku(mistralProduct.getCode());
+        Optional<Product> existingProduct = syncMetrics.time(SyncMetrics.Phase.DB_LOOKUP, "product",
+                () -> productRepository.findBySupplierSku(row.code()));
 
         Product product;
         boolean isNew = false;
@@ -147,237 +289,470 @@ public class MistralSyncService {
             product = existingProduct.get();
         } else {
             product = new Product();
-            product.setSupplierSku(mistralProduct.getCode());
-            product.setHandle(generateHandle(mistralProduct.getName(), mistralProduct.getCode()));
+            product.setSupplierSku(row.code());
+            product.setHandle(productHandles(Collections.singletonMap(row.code(), row.name())).get(row.code()));
             product.setStatus(ProductStatus.PUBLISHED);
             // Set title from Mistral only on first create
-            product.setTitle(mistralProduct.getName());
+            product.setTitle(row.name());
             isNew = true;
         }
 
         // Always update supplier title from Mistral
-        product.setSupplierTitle(mistralProduct.getName());
+        product.setSupplierTitle(row.name());
 
-        // Update price and stock from Mistral
-        BigDecimal salesPrice = mistralProduct.getSalesPriceAsBigDecimal();
-        BigDecimal basePrice = mistralProduct.getBaseSalePrice();
-
-        product.setPrice(salesPrice);
-
-        // Set compareAtPrice if there's a discount (basePrice > salesPrice)
-        if (basePrice != null && basePrice.compareTo(salesPrice) > 0) {
-            product.setCompareAtPrice(basePrice);
-        } else {
-            product.setCompareAtPrice(null);
+        // Update price and stock from Mistral, keeping a record of price changes like the bulk upsert
+        if (!isNew && product.getPrice() != null && row.salesPrice() != null
+                && product.getPrice().compareTo(row.salesPrice()) != 0) {
+            productPriceHistoryRepository.save(new ProductPriceHistory(null, row.code(), product.getPrice(),
+                    row.salesPrice(), LocalDateTime.now()));
         }
+        product.setPrice(row.salesPrice());
+        product.setCompareAtPrice(row.compareAtPrice());
+        product.setStock(row.quantity());
 
-        product.setStock(mistralProduct.getQttyAsInteger());
-
-        return productRepository.save(product);
+        Product saved = syncMetrics.time(SyncMetrics.Phase.DB_WRITE, "product_save", () -> productRepository.save(product));
+        syncMetrics.countRows("written", 1);
+        return new SyncedProduct(saved, isNew);
     }
 
     /**
-     * Generates a URL-friendly handle from product name
+     * Writes a window of Mistral products with set-based upserts.
+     * Duplicate codes within the window collapse to the last occurrence.
+     * Rows the database rejects are counted as errors one by one, collecting their codes, like saveProducts.
      */
-    private String generateHandle(String name, String code) {
-        if (name == null || name.isEmpty()) {
-            return "product-" + code;
-        }
-
-        // Transliterate Bulgarian to Latin and create slug
-        String handle = transliterate(name.toLowerCase())
-                .replaceAll("[^a-z0-9\\s-]", "")
-                .replaceAll("\\s+", "-")
-                .replaceAll("-+", "-")
-                .replaceAll("^-|-$", "");
-
-        if (handle.isEmpty()) {
-            handle = "product";
-        }
-
-        // Add code to ensure uniqueness
-        handle = handle + "-" + code;
+    private SyncResult upsertProducts(List<MistralSyncRow> rows, Set<String> failedCodes) {
+        Map<String, MistralSyncRow> rowsBySku = new LinkedHashMap<>();
+        int errors = 0;
 
-        // Truncate if too long
-        if (handle.length() > 100) {
-            handle = handle.substring(0, 100);
+        for (MistralSyncRow row : rows) {
+            String code = row.code();
+            if (code == null || code.isBlank()) {
+                errors++;
+                continue;
+            }
+            rowsBySku.put(code, row);
         }
 
-        return handle;
+        Map<String, String> handles = productHandles(namesBySku(rowsBySku.values()));
+        List<ProductBulkRepository.ProductUpsertRow> upserts = rowsBySku.values().stream()
+                .map(row -> new ProductBulkRepository.ProductUpsertRow(
+                        row.code(),
+                        handles.get(row.code()),
+                        productTitle(row.name(), row.code()),
+                        row.salesPrice(),
+                        row.compareAtPrice(),
+                        row.quantity()
+                ))
+                .toList();
+
+        var counts = syncMetrics.time(SyncMetrics.Phase.DB_WRITE, "product_upsert",
+                () -> productBulkRepository.upsertProducts(upserts));
+        syncMetrics.countRows("written", counts.created() + counts.updated());
+        counts.failed().forEach((code, error) -> log.error("Error syncing product {}: {}", code, error));
+        failedCodes.addAll(counts.failed().keySet());
+        return new SyncResult(counts.created(), counts.updated(), errors + counts.failed().size(), rows.size());
     }
 
     /**
-     * Simple Bulgarian to Latin transliteration
+     * Handles for products the sync may create, by supplier SKU. Only SKUs not stored yet get a unique handle,
+     * with one handle lookup per batch; stored products keep their handle, as the upsert never overwrites it,
+     * so theirs is the wanted handle unchecked.
      */
-    private String transliterate(String text) {
-        if (text == null) return "";
-
-        String[][] replacements = {
-                {"а", "a"}, {"б", "b"}, {"в", "v"}, {"г", "g"}, {"д", "d"},
-                {"е", "e"}, {"ж", "zh"}, {"з", "z"}, {"и", "i"}, {"й", "y"},
-                {"к", "k"}, {"л", "l"}, {"м", "m"}, {"н", "n"}, {"о", "o"},
-                {"п", "p"}, {"р", "r"}, {"с", "s"}, {"т", "t"}, {"у", "u"},
-                {"ф", "f"}, {"х", "h"}, {"ц", "ts"}, {"ч", "ch"}, {"ш", "sh"},
-                {"щ", "sht"}, {"ъ", "a"}, {"ь", "y"}, {"ю", "yu"}, {"я", "ya"},
-                {"А", "A"}, {"Б", "B"}, {"В", "V"}, {"Г", "G"}, {"Д", "D"},
-                {"Е", "E"}, {"Ж", "Zh"}, {"З", "Z"}, {"И", "I"}, {"Й", "Y"},
-                {"К", "K"}, {"Л", "L"}, {"М", "M"}, {"Н", "N"}, {"О", "O"},
-                {"П", "P"}, {"Р", "R"}, {"С", "S"}, {"Т", "T"}, {"У", "U"},
-                {"Ф", "F"}, {"Х", "H"}, {"Ц", "Ts"}, {"Ч", "Ch"}, {"Ш", "Sh"},
-                {"Щ", "Sht"}, {"Ъ", "A"}, {"Ь", "Y"}, {"Ю", "Yu"}, {"Я", "Ya"}
-        };
+    private Map<String, String> productHandles(Map<String, String> namesBySku) {
+        Map<String, String> handles = new LinkedHashMap<>();
+        namesBySku.forEach((sku, name) -> handles.put(sku, Slugs.productHandle(name, sku)));
+        return syncMetrics.time(SyncMetrics.Phase.DB_LOOKUP, "handles", () -> {
+            Set<String> stored = productBulkRepository.findExistingSkus(handles.keySet());
+            Map<String, String> wanted = new LinkedHashMap<>(handles);
+            wanted.keySet().removeAll(stored);
+            handles.putAll(Slugs.uniqueHandles(wanted, productBulkRepository::findHandleOwners));
+            return handles;
+        });
+    }
 
-        for (String[] replacement : replacements) {
-            text = text.replace(replacement[0], replacement[1]);
+    /**
+     * Mistral names by code, for rows that have a code; a later row of the same code wins
+     */
+    private Map<String, String> namesBySku(Collection<MistralSyncRow> rows) {
+        Map<String, String> names = new LinkedHashMap<>();
+        for (MistralSyncRow row : rows) {
+            if (row.code() != null && !row.code().isBlank()) {
+                names.put(row.code(), row.name());
+            }
         }
-
-        return text;
+        return names;
     }
 
     /**
-     * Bulk sync all products using search patterns
-     * More efficient than code-by-code iteration
+     * Title for a product created by the sync; the Mistral name, or a placeholder when it has none
      */
-    @Transactional
-    public SyncResult syncAllProducts() {
-        log.info("Starting bulk sync of all products");
+    private String productTitle(String name, String code) {
+        return name != null && !name.isBlank() ? name : "Product " + code;
+    }
 
+    private SyncResult sum(List<SyncResult> results) {
         int created = 0;
         int updated = 0;
         int errors = 0;
         int total = 0;
-
-        // Search with single digits 0-9 to get all products
-        for (int digit = 0; digit <= 9; digit++) {
-            try {
-                List<MistralProductDto> products = mistralApiClient.fetchProducts(String.valueOf(digit));
-                log.info("Found {} products for digit {}", products.size(), digit);
-
-                for (MistralProductDto mistralProduct : products) {
-                    try {
-                        Product product = syncProduct(mistralProduct);
-                        if (product.getCreatedAt() != null &&
-                            product.getCreatedAt().isAfter(LocalDateTime.now().minusSeconds(5))) {
-                            created++;
-                        } else {
-                            updated++;
-                        }
-                        total++;
-                    } catch (Exception e) {
-                        log.error("Error syncing product {}: {}", mistralProduct.getCode(), e.getMessage());
-                        errors++;
-                    }
-                }
-            } catch (Exception e) {
-                log.error("Error fetching products for digit {}: {}", digit, e.getMessage());
-            }
+        int unchanged = 0;
+        int duplicates = 0;
+        for (SyncResult result : results) {
+            created += result.created();
+            updated += result.updated();
+            errors += result.errors();
+            total += result.total();
+            unchanged += result.unchanged();
+            duplicates += result.duplicates();
         }
+        return new SyncResult(created, updated, errors, total, unchanged, duplicates);
+    }
+
+    /**
+     * Bulk sync all products with one sweep over the whole catalog
+     * More efficient than code-by-code iteration
+     */
+    public SyncResult syncAllProducts() {
+        return syncAllProducts(false);
+    }
+
+    /**
+     * Bulk sync all products, optionally writing each window with set-based upserts
+     */
+    public SyncResult syncAllProducts(boolean bulk) {
+        return syncAllProducts(bulk, ProgressListener.NONE);
+    }
+
+    /**
+     * Bulk sync all products, reporting progress after each window.
+     * Every Mistral product is written at most once: rows whose UCode was already seen in this sweep
+     * (e.g. shifted into the next window by a concurrent insert) are skipped and counted as duplicates.
+     * Each window is written in chunks that commit on their own and clear the persistence context.
+     */
+    public SyncResult syncAllProducts(boolean bulk, ProgressListener progress) {
+        log.info("Starting {} sync of all products", bulk ? "bulk-upsert" : "per-product");
+
+        SeenProducts seen = new SeenProducts();
+        List<SyncResult> windowResults = new ArrayList<>();
+        AtomicInteger failedRows = new AtomicInteger();
+
+        var sweep = rowSweeper.sweep("products", 1, mistralApiClient::fetchSyncRowsByRowRange, (fromRow, toRow, rows) -> {
+            List<MistralSyncRow> firstSeen = rows.stream().filter(seen::add).toList();
+
+            var run = chunkedTransactions.forEachChunk("products", firstSeen, chunk -> syncRows(chunk, bulk));
+            windowResults.addAll(run.results());
+            failedRows.addAndGet(run.failedItems());
 
-        log.info("Bulk sync completed: {} created, {} updated, {} errors, {} total", created, updated, errors, total);
-        return new SyncResult(created, updated, errors, total);
+            SyncResult soFar = sum(windowResults);
+            progress.onProgress(seen.size() + seen.duplicates(), null, soFar.errors() + failedRows.get());
+        });
+
+        SyncResult totals = sum(windowResults);
+        int errors = totals.errors() + failedRows.get() + sweep.failedWindows().size();
+        int total = totals.created() + totals.updated() + totals.unchanged();
+
+        log.info("Bulk sync completed: {} created, {} updated, {} unchanged, {} errors, {} total, {} duplicates skipped",
+                totals.created(), totals.updated(), totals.unchanged(), errors, total, seen.duplicates());
+        return new SyncResult(totals.created(), totals.updated(), errors, total, totals.unchanged(), seen.duplicates());
     }
 
     /**
      * FAST batch stock sync - fetches all Mistral products and updates stock in batches
-     * Much faster than individual API calls per product
+     * Each window is written with one set-based UPDATE that skips rows whose stock is unchanged.
+     * Runs as a checkpointed job: every window commits on its own, so a failed run resumes from the last window.
      */
-    @Transactional
-    public SyncResult syncStockBatch() {
+    public StockSyncResult syncStockBatch() {
+        return syncStockBatch(syncJobService.start(SyncJobType.STOCK));
+    }
+
+    /**
+     * Batch stock sync within an already started STOCK job
+     */
+    public StockSyncResult syncStockBatch(SyncJob job) {
         log.info("Starting fast batch stock sync");
         long startTime = System.currentTimeMillis();
 
         // Get all supplier SKUs we have in our database
-        List<String> ourSkus = productRepository.findAllSupplierSkus();
+        List<String> ourSkus = syncMetrics.time(SyncMetrics.Phase.DB_LOOKUP, "supplier_skus",
+                productRepository::findAllSupplierSkus);
         Set<String> ourSkuSet = new HashSet<>(ourSkus);
         log.info("Found {} products in our database to update", ourSkus.size());
 
-        int updated = 0;
-        int errors = 0;
-        int batchSize = 1000;
-        int fromRow = 1;
+        AtomicInteger matched = new AtomicInteger();
+        AtomicInteger updated = new AtomicInteger();
+        AtomicInteger rowsScanned = new AtomicInteger();
 
-        // Fetch all products from Mistral in batches and update stock
-        while (true) {
-            try {
-                List<MistralProductDto> mistralProducts = mistralApiClient.fetchProductsByRowRange(fromRow, fromRow + batchSize - 1);
+        // Fetch all products from Mistral in parallel partitions of windows and update stock window by window
+        syncJobService.runSweep(job, mistralApiClient::fetchSyncRowsByRowRange, (fromRow, toRow, rows) -> {
+            // A failed update propagates so the window is recorded on the job and retried
+            StockWindow window = writeStockWindow(fromRow, rows, ourSkuSet);
+            updated.addAndGet(window.changed());
+            matched.addAndGet(window.matched());
+            rowsScanned.addAndGet(rows.size());
 
-                if (mistralProducts.isEmpty()) {
-                    break; // No more products
-                }
+            log.info("Processed rows {}-{}, updated {} so far", fromRow, fromRow + rows.size() - 1, updated.get());
+        });
+        int errors = syncJobService.getFailedWindows(job).size();
 
-                // Update stock for products we have
-                for (MistralProductDto mp : mistralProducts) {
-                    if (ourSkuSet.contains(mp.getCode())) {
-                        try {
-                            int rowsUpdated = productRepository.updateStockBySupplierSku(mp.getCode(), mp.getQttyAsInteger());
-                            if (rowsUpdated > 0) {
-                                updated++;
-                            }
-                        } catch (Exception e) {
-                            log.error("Error updating stock for {}: {}", mp.getCode(), e.getMessage());
-                            errors++;
-                        }
-                    }
-                }
-
-                log.info("Processed rows {}-{}, updated {} so far", fromRow, fromRow + mistralProducts.size() - 1, updated);
-                fromRow += batchSize;
+        long duration = System.currentTimeMillis() - startTime;
+        double rowsPerSecond = duration > 0 ? rowsScanned.get() * 1000.0 / duration : 0;
+        log.info("Batch stock sync completed in {}ms: {} updated, {} unchanged, {} failed windows, {} rows/s",
+                duration, updated.get(), matched.get() - updated.get(), errors, Math.round(rowsPerSecond));
+        return new StockSyncResult(updated.get(), matched.get() - updated.get(), errors,
+                rowsScanned.get(), duration, rowsPerSecond);
+    }
 
-                // Safety limit - don't process more than 50k products
-                if (fromRow > 50000) {
-                    log.warn("Reached safety limit of 50000 rows");
-                    break;
-                }
+    /**
+     * Writes the stock of one window of sync rows for the products we have, and records the check of the window
+     * and the SKUs whose stock changed, which drives the adaptive stock sync. Duplicates within a window keep the last row.
+     */
+    public StockWindow writeStockWindow(int fromRow, List<MistralSyncRow> rows, Set<String> ourSkus) {
+        Map<String, Integer> stockBySku = new LinkedHashMap<>();
+        Map<String, Integer> rowBySku = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            MistralSyncRow row = rows.get(i);
+            if (ourSkus.contains(row.code())) {
+                stockBySku.put(row.code(), row.quantity());
+                rowBySku.put(row.code(), fromRow + i);
+            }
+        }
 
-            } catch (Exception e) {
-                log.error("Error fetching batch starting at row {}: {}", fromRow, e.getMessage());
-                errors++;
-                fromRow += batchSize; // Skip this batch and continue
+        Set<String> changed = writeStock(stockBySku);
+        int historyWrites = syncMetrics.time(SyncMetrics.Phase.DB_WRITE, "change_history", () -> {
+            if (rows.isEmpty()) {
+                return 0;
             }
+            productChangeHistoryRepository.recordCheckedWindow(fromRow, fromRow + rows.size() - 1);
+            return 1 + productChangeHistoryRepository.recordObservations(stockBySku.keySet().stream()
+                    .map(sku -> new ProductChangeHistoryRepository.Observation(sku, rowBySku.get(sku), changed.contains(sku)))
+                    .toList());
+        });
+        return new StockWindow(stockBySku.size(), changed.size(), changed.size() + historyWrites);
+    }
+
+    /**
+     * Writes stock levels from Mistral the way every sweep does: only rows whose stock changed are updated,
+     * dropping their sync fingerprints, and the cached real-time answers for the SKUs are evicted.
+     * Returns the SKUs whose stock changed.
+     */
+    public Set<String> writeStock(Map<String, Integer> stockBySku) {
+        Set<String> changed = syncMetrics.time(SyncMetrics.Phase.DB_WRITE, "stock",
+                () -> productBulkRepository.updateStockReturningChanged(stockBySku));
+        syncMetrics.countRows("written", changed.size());
+        stockCache.invalidate(stockBySku.keySet());
+        return changed;
+    }
+
+    /**
+     * Full sync to update prices, stock and add new products, within an already started PRICE job.
+     * The catalog is swept in parallel partitions, one transaction per window;
+     * the job checkpoints after each window so a failed run resumes instead of starting over.
+     * With staging ingest enabled the windows go through the staging table instead, see {@link #syncPricesStaged(SyncJob)}.
+     */
+    public SyncResult syncPrices(SyncJob job) {
+        if (stagingIngest) {
+            return syncPricesStaged(job);
         }
 
-        long duration = System.currentTimeMillis() - startTime;
-        log.info("Batch stock sync completed in {}ms: {} updated, {} errors", duration, updated, errors);
-        return new SyncResult(0, updated, errors, updated + errors);
+        AtomicInteger totalCreated = new AtomicInteger();
+        AtomicInteger totalUpdated = new AtomicInteger();
+        AtomicInteger totalUnchanged = new AtomicInteger();
+        AtomicInteger totalErrors = new AtomicInteger();
+        AtomicInteger total = new AtomicInteger();
+
+        syncJobService.runSweep(job, mistralApiClient::fetchSyncRowsByRowRange, (fromRow, toRow, rows) -> {
+            var result = syncRows(rows, bulkUpsert);
+            totalCreated.addAndGet(result.created());
+            totalUpdated.addAndGet(result.updated());
+            totalUnchanged.addAndGet(result.unchanged());
+            totalErrors.addAndGet(result.errors());
+            total.addAndGet(result.total());
+
+            log.info("Price sync progress: rows {}-{}, created={}, updated={}, unchanged={}, errors={}",
+                    fromRow, toRow, result.created(), result.updated(), result.unchanged(), result.errors());
+        });
+        totalErrors.addAndGet(syncJobService.getFailedWindows(job).size());
+
+        log.info("Price sync {} ({}): {} created, {} updated, {} unchanged, {} errors",
+                job.getStatus(), job.getId(), totalCreated.get(), totalUpdated.get(), totalUnchanged.get(), totalErrors.get());
+        return new SyncResult(totalCreated.get(), totalUpdated.get(), totalErrors.get(), total.get(), totalUnchanged.get());
+    }
+
+    /**
+     * Merges the rows a job staged chunk by chunk, each chunk in its own transaction under the job's lease,
+     * then unpublishes missing products in a last transaction of its own, once every staged SKU is merged
+     */
+    private ProductStagingRepository.MergeCounts mergeStaged(SyncJob job, boolean unpublish) {
+        ProductStagingRepository.MergeCounts counts = ProductStagingRepository.MergeCounts.NONE;
+        String after = "";
+        List<String> chunk;
+        while (!(chunk = productStagingRepository.findStagedSkus(job.getId(), after)).isEmpty()) {
+            after = chunk.get(chunk.size() - 1);
+            List<String> skus = chunk;
+            syncJobService.checkLease(job);
+            counts = counts.plus(syncJobService.writeUnderLease(job,
+                    () -> productStagingRepository.mergeChunk(job.getId(), skus)));
+        }
+
+        syncJobService.checkLease(job);
+        return counts.plus(syncJobService.writeUnderLease(job,
+                () -> productStagingRepository.unpublishMissing(job.getId(), unpublish, maxUnpublishRatio)));
+    }
+
+    /**
+     * Full sync that bypasses JPA: each window is streamed into product_staging with COPY, and once the sweep
+     * is done set-based statements create, update, republish and unpublish products from the staged rows.
+     * SKUs the database rejects fail alone and count as errors.
+     * Each chunk of the merge commits on its own, so product rows stay locked only briefly; staged rows survive
+     * an interrupted run, so a resumed job merges them together with the rest of the catalog.
+     * Missing products are only unpublished after a run that swept the whole catalog itself without failed
+     * windows: a resumed run relies on rows staged earlier, which the unlogged table drops on a database crash.
+     */
+    private SyncResult syncPricesStaged(SyncJob job) {
+        long startTime = System.currentTimeMillis();
+        boolean fromStart = job.getCursor() <= 1 && job.getRowsProcessed() == 0;
+        int stale = productStagingRepository.clearAllExcept(job.getId());
+        if (stale > 0) {
+            log.info("Dropped {} staged rows of earlier price sync jobs", stale);
+        }
+
+        AtomicInteger invalid = new AtomicInteger();
+        AtomicInteger staged = new AtomicInteger();
+        AtomicReference<ProductStagingRepository.MergeCounts> merged = new AtomicReference<>();
+
+        syncJobService.runSweep(job, mistralApiClient::fetchSyncRowsByRowRange, (fromRow, toRow, rows) -> {
+            Map<String, String> handles = productHandles(namesBySku(rows));
+            List<ProductStagingRepository.StagedProduct> window = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                MistralSyncRow row = rows.get(i);
+                String code = row.code();
+                if (code == null || code.isBlank()) {
+                    invalid.incrementAndGet();
+                    continue;
+                }
+                window.add(new ProductStagingRepository.StagedProduct(
+                        fromRow + i,
+                        code,
+                        handles.get(code),
+                        productTitle(row.name(), code),
+                        row.salesPrice(),
+                        row.compareAtPrice(),
+                        row.quantity(),
+                        ProductFingerprint.of(row)
+                ));
+            }
+            staged.addAndGet((int) (long) syncMetrics.time(SyncMetrics.Phase.DB_WRITE, "staging_copy",
+                    () -> productStagingRepository.copyRows(job.getId(), window)));
+        }, allWindowsSynced -> {
+            long mergeStart = System.currentTimeMillis();
+            var counts = syncMetrics.time(SyncMetrics.Phase.DB_WRITE, "staging_merge",
+                    () -> mergeStaged(job, unpublishMissing && fromStart && allWindowsSynced));
+            syncMetrics.countRows("written", counts.created() + counts.updated() + counts.unpublished());
+            // The merge wrote the stock of every staged SKU, i.e. of the whole catalog swept
+            stockCache.invalidateAll();
+            merged.set(counts);
+            counts.failed().forEach((code, error) -> log.error("Error merging staged product {}: {}", code, error));
+            log.info("Merged {} staged products in {}ms: {} created, {} updated ({} republished), {} unchanged, "
+                            + "{} failed, {} of {} missing unpublished",
+                    counts.staged(), System.currentTimeMillis() - mergeStart, counts.created(), counts.updated(),
+                    counts.republished(), counts.unchanged(), counts.failed().size(), counts.unpublished(), counts.missing());
+            if (counts.missing() > counts.unpublished()) {
+                log.warn("{} published products are missing from the sweep and were left published "
+                        + "(resumed run: {}, all windows synced: {})", counts.missing() - counts.unpublished(),
+                        !fromStart, allWindowsSynced);
+            }
+        });
+        productStagingRepository.clear(job.getId());
+
+        var counts = merged.get();
+        int errors = invalid.get() + counts.failed().size() + syncJobService.getFailedWindows(job).size();
+        log.info("Staged price sync {} ({}) in {}ms: {} rows copied, {} created, {} updated, {} unchanged, "
+                        + "{} unpublished, {} errors",
+                job.getStatus(), job.getId(), System.currentTimeMillis() - startTime, staged.get(), counts.created(),
+                counts.updated(), counts.unchanged(), counts.unpublished(), errors);
+        return new SyncResult(counts.created(), counts.updated(), errors, counts.staged(), counts.unchanged());
     }
 
     /**
      * Real-time stock check for specific products (for cart/checkout validation)
-     * Returns current stock levels directly from Mistral
+     * Returns current stock levels directly from Mistral. Lookups that fail, time out or are rejected
+     * by the open circuit breaker are answered from the stored product stock and marked stale.
+     * Running sweeps yield to the check while it is in flight.
      */
     public Map<String, StockInfo> checkStockRealTime(List<String> supplierSkus) {
+        return priorityGate.interactive(() -> lookUpStock(supplierSkus));
+    }
+
+    private Map<String, StockInfo> lookUpStock(List<String> supplierSkus) {
         log.info("Real-time stock check for {} products", supplierSkus.size());
-        Map<String, StockInfo> result = new HashMap<>();
-        long totalApiTime = 0;
+        long startTime = System.currentTimeMillis();
 
-        for (String sku : supplierSkus) {
-            try {
-                long apiStart = System.currentTimeMillis();
-                MistralProductDto product = mistralApiClient.fetchProductByCode(sku);
-                totalApiTime += System.currentTimeMillis() - apiStart;
-
-                if (product != null) {
-                    result.put(sku, new StockInfo(
-                            sku,
-                            product.getQttyAsInteger(),
-                            product.getQttyAsInteger() > 0,
-                            product.getSalesPriceAsBigDecimal()
-                    ));
+        Map<String, StockInfo> result = new HashMap<>();
+        List<String> unanswered = new ArrayList<>();
+
+        if (circuitBreaker.isOpen()) {
+            // Mistral is down: answer from the cache where we can, without queueing lookups that would be rejected anyway
+            for (String sku : new LinkedHashSet<>(supplierSkus)) {
+                StockInfo cached = stockCache.peek(sku);
+                if (cached != null) {
+                    result.put(sku, cached);
                 } else {
-                    result.put(sku, new StockInfo(sku, 0, false, null));
+                    unanswered.add(sku);
                 }
-            } catch (Exception e) {
-                log.error("Error checking stock for {}: {}", sku, e.getMessage());
-                result.put(sku, new StockInfo(sku, null, false, null));
             }
+        } else {
+            // Look all SKUs up in parallel; recent answers come from the stock cache, the rest from Mistral
+            // through the shared, adaptively limited executor, given up after the stock check timeout
+            Map<String, CompletableFuture<StockInfo>> lookups = new LinkedHashMap<>();
+            for (String sku : supplierSkus) {
+                lookups.computeIfAbsent(sku, key -> stockCache.get(key)
+                        .handle((info, error) -> {
+                            if (error != null) {
+                                log.warn("Error checking stock for {}, using stored stock: {}", key, error.getMessage());
+                                return null;
+                            }
+                            return info;
+                        }));
+            }
+
+            lookups.forEach((sku, lookup) -> {
+                StockInfo info = lookup.join();
+                if (info != null) {
+                    result.put(sku, info);
+                } else {
+                    unanswered.add(sku);
+                }
+            });
+        }
+
+        if (!unanswered.isEmpty()) {
+            result.putAll(storedStock(unanswered));
         }
 
-        log.info("Real-time stock check completed. Total Mistral API time: {}ms for {} items (avg {}ms/item)",
-                totalApiTime, supplierSkus.size(), supplierSkus.isEmpty() ? 0 : totalApiTime / supplierSkus.size());
+        log.info("Real-time stock check completed in {}ms for {} items ({} stale)",
+                System.currentTimeMillis() - startTime, supplierSkus.size(), unanswered.size());
 
         return result;
     }
 
+    /**
+     * Stock as last synced into our database, for when Mistral cannot answer
+     */
+    private Map<String, StockInfo> storedStock(List<String> supplierSkus) {
+        Map<String, StockInfo> stale = new HashMap<>();
+        List<Product> products = syncMetrics.time(SyncMetrics.Phase.DB_LOOKUP, "stored_stock",
+                () -> productRepository.findBySupplierSkuIn(supplierSkus));
+        for (Product product : products) {
+            int stock = product.getStock() != null ? product.getStock() : 0;
+            stale.put(product.getSupplierSku(),
+                    new StockInfo(product.getSupplierSku(), stock, stock > 0, product.getPrice(), true));
+        }
+        for (String sku : supplierSkus) {
+            stale.putIfAbsent(sku, new StockInfo(sku, null, false, null, true));
+        }
+        return stale;
+    }
+
     /**
      * Validate cart items - checks if requested quantities are available
      */
@@ -401,24 +776,78 @@ public class MistralSyncService {
             validations.add(new CartItemValidation(
                     item.supplierSku(),
                     item.requestedQuantity(),
-                    stock != null ? stock.quantity() : 0,
+                    stock != null && stock.quantity() != null ? stock.quantity() : 0,
                     available,
-                    stock != null ? stock.currentPrice() : null
+                    stock != null ? stock.currentPrice() : null,
+                    stock != null && stock.stale()
             ));
         }
 
-        return new CartValidationResult(allAvailable, validations);
+        boolean stale = validations.stream().anyMatch(CartItemValidation::stale);
+        return new CartValidationResult(allAvailable, validations, stale);
     }
 
     /**
-     * Result of a sync operation
+     * Products of ours found in a stock window, how many of them had changed stock, and the rows written for it
+     */
+    public record StockWindow(int matched, int changed, int writes) {}
+
+    /**
+     * A synced product and whether it was created by this sync
      */
-    public record SyncResult(int created, int updated, int errors, int total) {}
+    private record SyncedProduct(Product product, boolean created) {}
 
     /**
-     * Stock information for a single product
+     * Progress callback for long syncs; total is null when it is not known up front
      */
-    public record StockInfo(String supplierSku, Integer quantity, boolean inStock, BigDecimal currentPrice) {}
+    @FunctionalInterface
+    public interface ProgressListener {
+        ProgressListener NONE = (processed, total, errors) -> {};
+
+        void onProgress(int processed, Integer total, int errors);
+    }
+
+    /**
+     * Result of a sync operation. Unchanged rows were skipped by fingerprint comparison,
+     * duplicates were rows of a product already written earlier in the same sweep.
+     */
+    public record SyncResult(int created, int updated, int errors, int total, int unchanged, int duplicates) {
+
+        public SyncResult(int created, int updated, int errors, int total, int unchanged) {
+            this(created, updated, errors, total, unchanged, 0);
+        }
+
+        public SyncResult(int created, int updated, int errors, int total) {
+            this(created, updated, errors, total, 0, 0);
+        }
+    }
+
+    /**
+     * Result of a batch stock sync. Scanned rows are all Mistral rows read; throughput is scanned rows per second.
+     */
+    public record StockSyncResult(
+            int updated,
+            int unchanged,
+            int errors,
+            int rowsScanned,
+            long durationMs,
+            double rowsPerSecond
+    ) {
+        public int total() {
+            return updated + unchanged + errors;
+        }
+    }
+
+    /**
+     * Stock information for a single product. Stale values are the stored stock, used when Mistral could not answer,
+     * or a cached Mistral answer older than the stock cache's refresh-after.
+     */
+    public record StockInfo(String supplierSku, Integer quantity, boolean inStock, BigDecimal currentPrice, boolean stale) {
+
+        public StockInfo(String supplierSku, Integer quantity, boolean inStock, BigDecimal currentPrice) {
+            this(supplierSku, quantity, inStock, currentPrice, false);
+        }
+    }
 
     /**
      * Item to check in cart validation
@@ -433,11 +862,12 @@ public class MistralSyncService {
             int requestedQuantity,
             int availableQuantity,
             boolean available,
-            BigDecimal currentPrice
+            BigDecimal currentPrice,
+            boolean stale
     ) {}
 
     /**
      * Full cart validation result
      */
-    public record CartValidationResult(boolean allAvailable, List<CartItemValidation> items) {}
+    public record CartValidationResult(boolean allAvailable, List<CartItemValidation> items, boolean stale) {}
 }
@@ -0,0 +1,139 @@
+package bg.papa.service;
+
+import bg.papa.config.MistralConfig;
+import bg.papa.dto.mistral.MistralAuthResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the Mistral access token.
+ * Only one /token request runs at a time; concurrent callers wait for it and reuse its result.
+ * A background check renews the token before it expires so request paths normally never block on /token.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MistralTokenManager {
+
+    private final MistralConfig mistralConfig;
+    private final RestTemplate mistralRestTemplate;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile CachedToken current;
+
+    /**
+     * Returns a valid token, fetching one only if there is none or it has expired
+     */
+    public String getToken() {
+        CachedToken token = current;
+        if (token != null && Instant.now().isBefore(token.expiresAt())) {
+            return token.value();
+        }
+        return refresh(token).value();
+    }
+
+    /**
+     * Drops the token if it is still the current one, e.g. after Mistral answered 401
+     */
+    public void invalidate(String tokenValue) {
+        CachedToken token = current;
+        if (token != null && token.value().equals(tokenValue)) {
+            refresh(token);
+        }
+    }
+
+    /**
+     * Renews the token ahead of expiry. Does nothing until the first token has been requested.
+     */
+    @Scheduled(fixedDelayString = "${mistral.api.token.check-interval-ms:30000}")
+    public void refreshAhead() {
+        CachedToken token = current;
+        if (token == null || Instant.now().isBefore(token.refreshAt())) {
+            return;
+        }
+
+        try {
+            refresh(token);
+        } catch (Exception e) {
+            // The current token stays in use until it actually expires
+            log.warn("Proactive Mistral token refresh failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Single-flight refresh: callers that saw the same stale token queue on the lock,
+     * and all but the first find a fresh token already in place
+     */
+    private CachedToken refresh(CachedToken stale) {
+        refreshLock.lock();
+        try {
+            CachedToken token = current;
+            if (token != stale && token != null && Instant.now().isBefore(token.expiresAt())) {
+                return token;
+            }
+
+            CachedToken fresh = requestToken();
+            current = fresh;
+            return fresh;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private CachedToken requestToken() {
+        String tokenUrl = mistralConfig.getBaseUrl() + "/token";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+        MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
+        body.add("Username", mistralConfig.getUsername());
+        body.add("Password", mistralConfig.getPassword());
+        body.add("grant_type", "password");
+
+        HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(body, headers);
+
+        ResponseEntity<MistralAuthResponse> response;
+        try {
+            response = mistralRestTemplate.postForEntity(tokenUrl, request, MistralAuthResponse.class);
+        } catch (Exception e) {
+            log.error("Failed to authenticate with Mistral API: {}", e.getMessage());
+            throw new RuntimeException("Mistral authentication failed", e);
+        }
+
+        MistralAuthResponse auth = response.getBody();
+        if (auth == null || auth.getAccessToken() == null) {
+            throw new RuntimeException("Mistral authentication returned empty response");
+        }
+
+        Instant now = Instant.now();
+        long expiresInSeconds = auth.getExpiresIn() != null ? auth.getExpiresIn() : 0;
+        // Set expiry to 90% of actual expiry to be safe
+        Instant expiresAt = now.plusSeconds((long) (expiresInSeconds * 0.9));
+        // Renew ahead of that, but never earlier than halfway through the token's life
+        Instant refreshAt = expiresAt.minus(mistralConfig.getToken().getRefreshAhead());
+        Instant halfLife = now.plusSeconds(expiresInSeconds / 2);
+        if (refreshAt.isBefore(halfLife)) {
+            refreshAt = halfLife;
+        }
+
+        log.info("Successfully authenticated with Mistral API (token valid for {}s)", expiresInSeconds);
+        return new CachedToken(auth.getAccessToken(), expiresAt, refreshAt);
+    }
+
+    private record CachedToken(String value, Instant expiresAt, Instant refreshAt) {}
+}
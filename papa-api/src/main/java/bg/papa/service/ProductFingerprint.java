@@ -0,0 +1,50 @@
+package bg.papa.service;
+
+import bg.papa.dto.mistral.MistralSyncRow;
+
+/**
+ * 64-bit FNV-1a fingerprint of the Mistral fields the sync writes to a product.
+ * Prices are hashed as cents so "12.5" and "12.50" compare equal.
+ */
+public final class ProductFingerprint {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ProductFingerprint() {
+    }
+
+    public static long of(MistralSyncRow row) {
+        return of(row.code(), row.name(), row.quantity(), row.salesPriceCents(), row.baseSalePriceCents());
+    }
+
+    public static long of(String code, String name, int quantity, long salesPriceCents, long baseSalePriceCents) {
+        long hash = OFFSET_BASIS;
+        hash = mix(hash, code);
+        hash = mix(hash, name);
+        hash = mix(hash, quantity);
+        hash = mix(hash, salesPriceCents);
+        hash = mix(hash, baseSalePriceCents);
+        return hash;
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) {
+            return mix(hash, -1L);
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * PRIME;
+            hash = (hash ^ (c >>> 8)) * PRIME;
+        }
+        // Field separator so ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0xff) * PRIME;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xff)) * PRIME;
+        }
+        return hash;
+    }
+}
@@ -1,5 +1,6 @@
 package bg.papa.service;
 
+import bg.papa.entity.SyncJobType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,38 +10,65 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 
+/**
+ * Cron triggers for the regular syncs. They only queue the sync on the {@link SyncScheduler}, which runs one
+ * sync at a time and merges the stock sync into the price sync when both fire at midnight.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ScheduledSyncService {
 
-    private final MistralSyncService mistralSyncService;
+    private final SyncScheduler syncScheduler;
+    private final HotSkuRefreshService hotSkuRefreshService;
+    private final AdaptiveStockSyncService adaptiveStockSyncService;
 
     private static final ZoneId BULGARIA_ZONE = ZoneId.of("Europe/Sofia");
 
     @Value("${app.sync.scheduled.enabled:true}")
     private boolean scheduledSyncEnabled;
 
+    // full: sweep all stock every 3 hours; adaptive: refresh the SKUs due by their change rate every interval
+    @Value("${app.sync.stock-mode:full}")
+    private String stockMode;
+
+    @Value("${app.sync.hot-skus.enabled:true}")
+    private boolean hotSkuRefreshEnabled;
+
     /**
      * Sync stock every 3 hours
      * Runs at minute 0 of every 3rd hour (e.g., 00:00, 03:00, 06:00, 09:00, 12:00, 15:00, 18:00, 21:00)
      */
-    @Scheduled(cron = "0 0 */3 * * *")
+    @Scheduled(cron = "${app.sync.scheduled.stock-cron:0 0 */3 * * *}")
     public void syncStockEvery3Hours() {
         if (!scheduledSyncEnabled) {
             log.debug("Scheduled sync is disabled, skipping stock sync");
             return;
         }
+        if (isAdaptiveStockMode()) {
+            log.debug("Adaptive stock mode, skipping full stock sync");
+            return;
+        }
 
         LocalDateTime now = LocalDateTime.now(BULGARIA_ZONE);
-        log.info("Starting scheduled stock sync at {} (Bulgaria time)", now);
+        log.info("Queueing scheduled stock sync at {} (Bulgaria time)", now);
+        queue(SyncJobType.STOCK);
+    }
+
+    /**
+     * Adaptive stock sync every 30 minutes (in adaptive stock mode)
+     * Only the SKUs whose change rate says they are due are refreshed; without change history yet, a full stock sync runs
+     */
+    @Scheduled(fixedDelayString = "${app.sync.adaptive.interval-ms:1800000}", initialDelayString = "${app.sync.adaptive.interval-ms:1800000}")
+    public void syncStockAdaptive() {
+        if (!scheduledSyncEnabled || !isAdaptiveStockMode()) {
+            return;
+        }
 
         try {
-            var result = mistralSyncService.syncStockBatch();
-            log.info("Stock sync completed: {} updated, {} errors",
-                    result.updated(), result.errors());
+            queue(adaptiveStockSyncService.hasHistory() ? SyncJobType.ADAPTIVE_STOCK : SyncJobType.STOCK);
         } catch (Exception e) {
-            log.error("Stock sync failed: {}", e.getMessage(), e);
+            log.error("Could not queue adaptive stock sync: {}", e.getMessage(), e);
         }
     }
 
@@ -48,7 +76,7 @@ public class ScheduledSyncService {
      * Sync prices daily at 12:00 AM (midnight) Bulgaria time
      * This does a full product sync to update prices, stock, and any new products
      */
-    @Scheduled(cron = "0 0 0 * * *", zone = "Europe/Sofia")
+    @Scheduled(cron = "${app.sync.scheduled.price-cron:0 0 0 * * *}", zone = "Europe/Sofia")
     public void syncPricesDaily() {
         if (!scheduledSyncEnabled) {
             log.debug("Scheduled sync is disabled, skipping daily price sync");
@@ -56,41 +84,43 @@ public class ScheduledSyncService {
         }
 
         LocalDateTime now = LocalDateTime.now(BULGARIA_ZONE);
-        log.info("Starting scheduled daily price sync at {} (Bulgaria time)", now);
+        log.info("Queueing scheduled daily price sync at {} (Bulgaria time)", now);
+        queue(SyncJobType.PRICE);
+    }
 
-        try {
-            // Full sync to update prices and add new products
-            // Process in batches of 1000 to avoid memory issues
-            int totalCreated = 0;
-            int totalUpdated = 0;
-            int totalErrors = 0;
-            int batchSize = 1000;
-
-            for (int fromRow = 1; fromRow <= 20000; fromRow += batchSize) {
-                try {
-                    var result = mistralSyncService.syncProductsByRowRange(fromRow, fromRow + batchSize - 1);
-                    totalCreated += result.created();
-                    totalUpdated += result.updated();
-                    totalErrors += result.errors();
-
-                    log.info("Price sync progress: rows {}-{}, created={}, updated={}, errors={}",
-                            fromRow, fromRow + batchSize - 1, result.created(), result.updated(), result.errors());
-
-                    // If we got no products, we've reached the end
-                    if (result.total() == 0) {
-                        log.info("No more products found, ending price sync");
-                        break;
-                    }
-                } catch (Exception e) {
-                    log.error("Error syncing rows {}-{}: {}", fromRow, fromRow + batchSize - 1, e.getMessage());
-                    totalErrors++;
-                }
-            }
+    /**
+     * Refresh stock of hot SKUs (in carts, recently ordered or viewed) every few minutes
+     * Bounded per cycle, so it stays cheap between the full stock sweeps
+     */
+    @Scheduled(fixedDelayString = "${app.sync.hot-skus.interval-ms:300000}", initialDelayString = "${app.sync.hot-skus.interval-ms:300000}")
+    public void refreshHotSkus() {
+        if (!scheduledSyncEnabled || !hotSkuRefreshEnabled) {
+            return;
+        }
 
-            log.info("Daily price sync completed: {} created, {} updated, {} errors",
-                    totalCreated, totalUpdated, totalErrors);
+        try {
+            hotSkuRefreshService.refresh();
         } catch (Exception e) {
-            log.error("Daily price sync failed: {}", e.getMessage(), e);
+            log.error("Hot SKU refresh failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private boolean isAdaptiveStockMode() {
+        return "adaptive".equalsIgnoreCase(stockMode);
+    }
+
+    private void queue(SyncJobType type) {
+        try {
+            syncScheduler.request(type, true, SyncScheduler.Origin.SCHEDULED).outcome().whenComplete((outcome, error) -> {
+                if (error != null) {
+                    log.error("Scheduled {} sync failed: {}", type, error.getMessage());
+                } else {
+                    log.info("Scheduled {} sync done by {} job {} ({})", type, outcome.job().getType(),
+                            outcome.job().getId(), outcome.job().getStatus());
+                }
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not queue scheduled {} sync: {}", type, e.getMessage());
         }
     }
 
@@ -104,8 +134,11 @@ public class ScheduledSyncService {
         log.info("=== Scheduled Sync Status ===");
         log.info("Enabled: {}", scheduledSyncEnabled);
         log.info("Current time (Bulgaria): {}", now);
-        log.info("Stock sync: Every 3 hours (00:00, 03:00, 06:00, 09:00, 12:00, 15:00, 18:00, 21:00)");
+        log.info("Stock sync: {}", isAdaptiveStockMode()
+                ? "Adaptive, due SKUs every 30 minutes"
+                : "Every 3 hours (00:00, 03:00, 06:00, 09:00, 12:00, 15:00, 18:00, 21:00)");
         log.info("Price sync: Daily at 12:00 AM (midnight) Bulgaria time");
+        log.info("Hot SKU stock refresh: {}", hotSkuRefreshEnabled ? "every few minutes" : "disabled");
         log.info("=============================");
     }
 }
@@ -0,0 +1,44 @@
+package bg.papa.service;
+
+import bg.papa.dto.mistral.MistralSyncRow;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tracks which Mistral products a sweep has already processed, so each one is written once.
+ * UCodes are kept in a bitmap (one bit per code, no boxing); rows without a UCode fall back to a set of codes.
+ */
+final class SeenProducts {
+
+    private final BitSet uCodes = new BitSet();
+    private final Set<String> codesWithoutUCode = new HashSet<>();
+    private int duplicates;
+
+    /**
+     * Marks the row as seen. Returns false (and counts a duplicate) if it was seen before.
+     */
+    boolean add(MistralSyncRow row) {
+        boolean first;
+        if (row.uCode() >= 0) {
+            first = !uCodes.get(row.uCode());
+            uCodes.set(row.uCode());
+        } else {
+            first = codesWithoutUCode.add(row.code());
+        }
+
+        if (!first) {
+            duplicates++;
+        }
+        return first;
+    }
+
+    int size() {
+        return uCodes.cardinality() + codesWithoutUCode.size();
+    }
+
+    int duplicates() {
+        return duplicates;
+    }
+}
@@ -0,0 +1,144 @@
+package bg.papa.service;
+
+import bg.papa.config.MistralConfig;
+import bg.papa.dto.mistral.MistralProductDto;
+import bg.papa.service.MistralSyncService.StockInfo;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Real-time stock answers from Mistral, cached in memory per supplier SKU so shoppers checking the same SKU
+ * within seconds of each other cost one Mistral call.
+ * An answer is served as is until refresh-after; after that it is still served right away, marked stale, while
+ * a background lookup replaces it, until expire-after, when the next check waits for Mistral again. A failed
+ * refresh keeps the old answer until it expires. Syncs evict the answers of SKUs whose stock they write.
+ * Size is bounded, with Caffeine's W-TinyLFU eviction keeping the SKUs checked most often. Concurrent checks
+ * of a SKU that is not cached share one lookup.
+ * A lookup is retried with backoff and given up after stock-check-timeout, which also stops the request in flight.
+ * Hit, miss, load and eviction counts are exported as the cache.* meters tagged cache=stock.
+ */
+@Component
+public class StockCache {
+
+    private static final String CACHE_NAME = "stock";
+
+    private final MistralApiClient mistralApiClient;
+    private final MistralRequestExecutor requestExecutor;
+    private final Duration timeout;
+    private final boolean enabled;
+    private final long refreshAfterNanos;
+    private final Ticker ticker;
+    private final AsyncLoadingCache<String, CachedStock> cache;
+
+    @Autowired
+    public StockCache(MistralConfig mistralConfig, MistralApiClient mistralApiClient,
+                      MistralRequestExecutor requestExecutor, MeterRegistry meterRegistry) {
+        this(mistralConfig, mistralApiClient, requestExecutor, meterRegistry, Ticker.systemTicker());
+    }
+
+    StockCache(MistralConfig mistralConfig, MistralApiClient mistralApiClient,
+               MistralRequestExecutor requestExecutor, MeterRegistry meterRegistry, Ticker ticker) {
+        this.mistralApiClient = mistralApiClient;
+        this.requestExecutor = requestExecutor;
+        this.timeout = mistralConfig.getStockCheckTimeout();
+        this.ticker = ticker;
+
+        MistralConfig.StockCache config = mistralConfig.getStockCache();
+        this.enabled = config.isEnabled();
+        this.refreshAfterNanos = config.getRefreshAfter().toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .refreshAfterWrite(config.getRefreshAfter())
+                .expireAfterWrite(config.getExpireAfter())
+                .ticker(ticker)
+                .recordStats()
+                .buildAsync((sku, executor) -> fetch(sku));
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        Gauge.builder("cache.hit.ratio", cache, stockCache -> stockCache.synchronous().stats().hitRate())
+                .description("Share of stock checks answered from the cache since startup")
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Stock of a SKU, from the cache or from Mistral; a cached answer past refresh-after is marked stale.
+     * Completes exceptionally if Mistral could not answer within the stock check timeout. The future is the
+     * caller's own, so cancelling it does not cancel a lookup other callers share.
+     */
+    public CompletableFuture<StockInfo> get(String supplierSku) {
+        if (!enabled) {
+            return fetch(supplierSku).thenApply(CachedStock::info);
+        }
+        return cache.get(supplierSku).thenApply(this::answer);
+    }
+
+    /**
+     * Cached answer that has not expired, without asking Mistral, marked stale past refresh-after;
+     * null if there is none. For when Mistral is known to be down.
+     */
+    public StockInfo peek(String supplierSku) {
+        // The map view neither loads nor triggers a refresh
+        CompletableFuture<CachedStock> cached = cache.asMap().get(supplierSku);
+        if (cached == null || !cached.isDone() || cached.isCompletedExceptionally()) {
+            return null;
+        }
+        return answer(cached.join());
+    }
+
+    /**
+     * Drops the cached answers of the SKUs, after their stock was written from a newer Mistral answer
+     */
+    public void invalidate(Collection<String> supplierSkus) {
+        cache.synchronous().invalidateAll(supplierSkus);
+    }
+
+    /**
+     * Drops all cached answers, so the next checks go to Mistral
+     */
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private CompletableFuture<CachedStock> fetch(String supplierSku) {
+        // The client request goes through the circuit breaker itself
+        return requestExecutor
+                .submitWithRetry(() -> mistralApiClient.fetchProductByCode(supplierSku), timeout)
+                .thenApply(product -> new CachedStock(toStockInfo(supplierSku, product), ticker.read()));
+    }
+
+    private StockInfo answer(CachedStock cached) {
+        StockInfo info = cached.info();
+        if (ticker.read() - cached.loadedAtNanos() < refreshAfterNanos) {
+            return info;
+        }
+        return new StockInfo(info.supplierSku(), info.quantity(), info.inStock(), info.currentPrice(), true);
+    }
+
+    private StockInfo toStockInfo(String supplierSku, MistralProductDto product) {
+        if (product == null) {
+            return new StockInfo(supplierSku, 0, false, null);
+        }
+        return new StockInfo(
+                supplierSku,
+                product.getQttyAsInteger(),
+                product.getQttyAsInteger() > 0,
+                product.getSalesPriceAsBigDecimal()
+        );
+    }
+
+    /**
+     * A Mistral answer and when it was loaded, on the cache's ticker
+     */
+    private record CachedStock(StockInfo info, long loadedAtNanos) {}
+}
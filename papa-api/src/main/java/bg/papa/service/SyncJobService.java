@@ -0,0 +1,669 @@
+package bg.papa.service;
+
+import bg.papa.dto.response.SyncJobResponse;
+import bg.papa.entity.SyncJob;
+import bg.papa.entity.SyncJobStatus;
+import bg.papa.entity.SyncJobType;
+import bg.papa.repository.SyncJobRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs syncs as persistent jobs.
+ * Sweeps are checkpointed: the cursor is saved after every committed window, so a crashed or failed sync
+ * resumes where it stopped instead of starting over, and windows that failed are retried before the job is done.
+ * Jobs are started by {@link SyncScheduler} and report progress through the job row.
+ * Only one job runs at a time: it holds the cluster-wide sweep lease, so no two instances sweep Mistral at once.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SyncJobService {
+
+    private static final List<SyncJobStatus> UNFINISHED = List.of(SyncJobStatus.RUNNING, SyncJobStatus.INTERRUPTED);
+
+    /**
+     * Cluster-wide lease held by whichever instance is running a sync job
+     */
+    public static final String SWEEP_LEASE = "sync:sweep";
+
+    private final SyncJobRepository syncJobRepository;
+    private final MistralRowSweeper rowSweeper;
+    private final CatalogSizeProbe catalogSizeProbe;
+    private final ObjectMapper objectMapper;
+    private final PlatformTransactionManager transactionManager;
+    private final SyncLeaseService syncLeaseService;
+
+    // Type of the job currently running in this instance, if any
+    private final AtomicReference<SyncJobType> activeType = new AtomicReference<>();
+
+    // Whether work started by runUnderSweepLease holds the sweep lease in this instance
+    private final AtomicBoolean leaseWorkRunning = new AtomicBoolean();
+
+    // Start time and starting row count of each job running in this instance, for throughput and ETA
+    private final Map<UUID, RunClock> runClocks = new ConcurrentHashMap<>();
+
+    // Cluster-wide lease held by each job running in this instance
+    private final Map<UUID, SyncLeaseService.Lease> leases = new ConcurrentHashMap<>();
+
+    // A job is resumable until the next scheduled run of its type would have started it over anyway
+    @Value("${app.sync.scheduled.stock-cron:0 0 */3 * * *}")
+    private String stockCron;
+
+    @Value("${app.sync.scheduled.price-cron:0 0 0 * * *}")
+    private String priceCron;
+
+    @Value("${app.sync.adaptive.interval-ms:1800000}")
+    private long adaptiveIntervalMs;
+
+    @Value("${app.sync.jobs.failed-window-retries:2}")
+    private int failedWindowRetries;
+
+    @Value("${app.sync.jobs.progress-interval-ms:1000}")
+    private long progressIntervalMs;
+
+    @Value("${app.sync.jobs.stream-timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
+    private TransactionTemplate checkpointTransaction;
+    private ScheduledExecutorService progressScheduler;
+
+    @PostConstruct
+    void init() {
+        // Checkpoints commit on their own, even when the sync itself runs inside a longer transaction
+        checkpointTransaction = new TransactionTemplate(transactionManager);
+        checkpointTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        progressScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sync-job-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        progressScheduler.shutdownNow();
+    }
+
+    public Optional<SyncJob> findJob(UUID id) {
+        return syncJobRepository.findById(id);
+    }
+
+    public List<SyncJob> findRecentJobs() {
+        return syncJobRepository.findTop20ByOrderByStartedAtDesc();
+    }
+
+    /**
+     * Sweeps the catalog as a job of the given type, resuming the last unfinished job if it is recent enough.
+     * Each window's handler runs in one transaction under the job's lease (see {@link #writeUnderLease(SyncJob, Supplier)});
+     * the cursor only moves past windows whose handler returned normally.
+     */
+    public <T> SyncJob runSweep(SyncJobType type,
+                                MistralRowSweeper.WindowFetcher<T> fetcher,
+                                MistralRowSweeper.WindowHandler<T> handler) {
+        return runSweep(start(type), fetcher, handler);
+    }
+
+    /**
+     * Sweeps the catalog within an already started job, from its cursor, and finishes the job.
+     * When the catalog size is known the rows are swept in parallel partitions, so the handler must be thread-safe.
+     * Windows may then finish out of order; the cursor only moves past the contiguous run of finished windows.
+     */
+    public <T> SyncJob runSweep(SyncJob job,
+                                MistralRowSweeper.WindowFetcher<T> fetcher,
+                                MistralRowSweeper.WindowHandler<T> handler) {
+        return runSweep(job, fetcher, handler, allWindowsSynced -> {});
+    }
+
+    /**
+     * Same as {@link #runSweep(SyncJob, MistralRowSweeper.WindowFetcher, MistralRowSweeper.WindowHandler)}, calling
+     * the completion once every window was handled or given up on, before the job is finished.
+     * The completion runs outside any transaction and writes through {@link #writeUnderLease(SyncJob, Supplier)}
+     * itself, in as many transactions as it needs. A completion that throws fails the job like a failing sweep would.
+     */
+    public <T> SyncJob runSweep(SyncJob job,
+                                MistralRowSweeper.WindowFetcher<T> fetcher,
+                                MistralRowSweeper.WindowHandler<T> handler,
+                                SweepCompletion completion) {
+        String label = job.getType().name().toLowerCase();
+
+        try {
+            List<FailedWindow> failed = readFailedWindows(job);
+            // Finished windows past the cursor, by first row (value is last row)
+            TreeMap<Integer, Integer> finishedAhead = new TreeMap<>();
+
+            MistralRowSweeper.WindowHandler<T> checkpointingHandler = (fromRow, toRow, rows) -> {
+                checkLease(job);
+                // An empty window past a shrunken catalog end has nothing to write but still moves the cursor
+                if (!rows.isEmpty()) {
+                    writeUnderLease(job, () -> {
+                        handler.handle(fromRow, toRow, rows);
+                        return null;
+                    });
+                }
+                synchronized (job) {
+                    job.setRowsProcessed(job.getRowsProcessed() + rows.size());
+                    advanceCursor(job, finishedAhead, fromRow, toRow);
+                    save(job);
+                }
+            };
+            MistralRowSweeper.WindowFailureListener failureListener = (fromRow, toRow, error) -> {
+                // Throwing here ends the sweep, which the failing handler alone would not
+                checkLease(job);
+                synchronized (job) {
+                    // Failed windows are tracked separately, so the cursor can move past them
+                    failed.add(new FailedWindow(fromRow, toRow));
+                    job.setErrors(job.getErrors() + 1);
+                    job.setLastError(error.getMessage());
+                    writeFailedWindows(job, failed);
+                    advanceCursor(job, finishedAhead, fromRow, toRow);
+                    save(job);
+                }
+            };
+
+            int catalogRows = catalogSizeProbe.getRowCount();
+            MistralRowSweeper.SweepResult result;
+            if (catalogRows > 0) {
+                job.setExpectedRows(catalogRows);
+                result = rowSweeper.sweepPartitioned(label, job.getCursor(), catalogRows, fetcher, checkpointingHandler, failureListener);
+            } else {
+                result = rowSweeper.sweep(label, job.getCursor(), fetcher, checkpointingHandler, failureListener);
+            }
+            if (result.failedWindows().isEmpty()) {
+                catalogSizeProbe.record(result.lastRow());
+            }
+
+            retryFailedWindows(label, job, failed, fetcher, handler);
+
+            checkLease(job);
+            completion.complete(failed.isEmpty());
+
+            finish(job, failed.isEmpty() ? SyncJobStatus.COMPLETED : SyncJobStatus.PARTIAL);
+            log.info("[{}] Job {} finished as {}: {} rows, {} windows still failed",
+                    label, job.getId(), job.getStatus(), job.getRowsProcessed(), failed.size());
+            return job;
+        } catch (RuntimeException e) {
+            fail(job, e);
+            throw e;
+        } finally {
+            release(job);
+        }
+    }
+
+    /**
+     * Runs work that is not a row sweep within an already started job and finishes the job.
+     * The work reports progress through {@link #reportProgress(SyncJob, int, Integer, int)}.
+     */
+    public SyncJob run(SyncJob job, Runnable work) {
+        try {
+            work.run();
+            finish(job, SyncJobStatus.COMPLETED);
+            log.info("Job {} ({}) completed: {} rows, {} errors", job.getId(), job.getType(), job.getRowsProcessed(), job.getErrors());
+            return job;
+        } catch (RuntimeException e) {
+            fail(job, e);
+            throw e;
+        } finally {
+            release(job);
+        }
+    }
+
+    /**
+     * Records progress of a non-sweep job. The job row is written at most once per progress interval.
+     *
+     * @throws IllegalStateException once another instance has taken over the job's lease, to stop the work
+     */
+    public void reportProgress(SyncJob job, int rowsProcessed, Integer expectedRows, int errors) {
+        checkLease(job);
+        job.setRowsProcessed(rowsProcessed);
+        if (expectedRows != null) {
+            job.setExpectedRows(expectedRows);
+        }
+        job.setErrors(errors);
+
+        RunClock clock = runClocks.get(job.getId());
+        long now = System.nanoTime();
+        if (clock == null || now - clock.lastSavedNanos >= TimeUnit.MILLISECONDS.toNanos(progressIntervalMs)) {
+            save(job);
+            if (clock != null) {
+                clock.lastSavedNanos = now;
+            }
+        }
+    }
+
+    /**
+     * Picks up the latest RUNNING or INTERRUPTED job of this type, or starts a new one.
+     * A RUNNING job is only taken over once its owner is gone, i.e. holds no live lease any more;
+     * a job older than the interval between scheduled runs of its type starts over instead of resuming.
+     *
+     * @throws IllegalStateException if a sync job is already running in this or another instance
+     */
+    public synchronized SyncJob start(SyncJobType type) {
+        SyncJobType running = activeType.get();
+        if (running != null || !activeType.compareAndSet(null, type)) {
+            throw new IllegalStateException("A " + running + " sync job is already running");
+        }
+        if (leaseWorkRunning.get()) {
+            activeType.set(null);
+            throw new IllegalStateException("A dry run or hot SKU refresh holds the sync lease");
+        }
+
+        Optional<SyncLeaseService.Lease> lease;
+        try {
+            lease = syncLeaseService.tryAcquire(SWEEP_LEASE);
+        } catch (RuntimeException e) {
+            activeType.set(null);
+            throw e;
+        }
+        if (lease.isEmpty()) {
+            activeType.set(null);
+            throw new IllegalStateException("A sync job is already running on "
+                    + syncLeaseService.findOwner(SWEEP_LEASE).orElse("another instance"));
+        }
+
+        try {
+            SyncJob job = resumeOrCreate(type);
+            runClocks.put(job.getId(), new RunClock(System.nanoTime(), job.getRowsProcessed()));
+            leases.put(job.getId(), lease.get());
+            return job;
+        } catch (RuntimeException e) {
+            lease.get().close();
+            activeType.set(null);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs work that must not overlap a sync job in this or another instance under the sweep lease, such as
+     * the hot SKU refresh or a dry run. A job starting here meanwhile is refused as busy, like one starting
+     * on another instance. Returns empty without running the work while a sync job or other such work
+     * holds the lease.
+     */
+    public <T> Optional<T> runUnderSweepLease(Function<SyncLeaseService.Lease, T> work) {
+        Optional<SyncLeaseService.Lease> lease;
+        synchronized (this) {
+            // A local job holds the lease as ours, so acquiring it again would succeed and closing it would free it
+            if (activeType.get() != null || !leaseWorkRunning.compareAndSet(false, true)) {
+                return Optional.empty();
+            }
+            try {
+                lease = syncLeaseService.tryAcquire(SWEEP_LEASE);
+            } catch (RuntimeException e) {
+                leaseWorkRunning.set(false);
+                throw e;
+            }
+            if (lease.isEmpty()) {
+                leaseWorkRunning.set(false);
+                return Optional.empty();
+            }
+        }
+
+        try (SyncLeaseService.Lease held = lease.get()) {
+            return Optional.ofNullable(work.apply(held));
+        } finally {
+            leaseWorkRunning.set(false);
+        }
+    }
+
+    /**
+     * Latest COMPLETED job of a type covering the given one that started at or after the given time.
+     * A job that started earlier, or resumed one that did, read part of the catalog before that time.
+     */
+    public Optional<SyncJob> findCompletedSince(SyncJobType type, LocalDateTime since) {
+        Optional<SyncJob> latest = Optional.empty();
+        for (SyncJobType candidate : SyncJobType.values()) {
+            if (!candidate.covers(type)) {
+                continue;
+            }
+            Optional<SyncJob> completed = syncJobRepository.findFirstByTypeAndStatusAndStartedAtGreaterThanEqualOrderByFinishedAtDesc(
+                    candidate, SyncJobStatus.COMPLETED, since);
+            if (completed.isPresent() && (latest.isEmpty() || completed.get().getFinishedAt().isAfter(latest.get().getFinishedAt()))) {
+                latest = completed;
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Progress view of a job with throughput and ETA
+     */
+    public SyncJobResponse describe(SyncJob job) {
+        Double rowsPerSecond = null;
+        Long etaSeconds = null;
+
+        RunClock clock = job.getStatus() == SyncJobStatus.RUNNING ? runClocks.get(job.getId()) : null;
+        if (clock != null) {
+            double seconds = (System.nanoTime() - clock.startNanos) / 1e9;
+            int rowsThisRun = job.getRowsProcessed() - clock.rowsAtStart;
+            if (seconds > 0 && rowsThisRun > 0) {
+                rowsPerSecond = rowsThisRun / seconds;
+                if (job.getExpectedRows() != null) {
+                    etaSeconds = Math.round(Math.max(0, job.getExpectedRows() - job.getRowsProcessed()) / rowsPerSecond);
+                }
+            }
+        } else if (job.getFinishedAt() != null) {
+            long millis = Duration.between(job.getStartedAt(), job.getFinishedAt()).toMillis();
+            rowsPerSecond = millis > 0 ? job.getRowsProcessed() * 1000.0 / millis : null;
+        }
+
+        Double percent = null;
+        if (job.getExpectedRows() != null && job.getExpectedRows() > 0) {
+            percent = Math.min(100.0, Math.round(job.getRowsProcessed() * 1000.0 / job.getExpectedRows()) / 10.0);
+        }
+
+        return SyncJobResponse.builder()
+                .id(job.getId())
+                .type(job.getType())
+                .status(job.getStatus())
+                .cursor(job.getCursor())
+                .rowsProcessed(job.getRowsProcessed())
+                .expectedRows(job.getExpectedRows())
+                .percent(percent)
+                .rowsPerSecond(rowsPerSecond != null ? Math.round(rowsPerSecond * 10) / 10.0 : null)
+                .etaSeconds(etaSeconds)
+                .errors(job.getErrors())
+                .failedWindows(readFailedWindows(job).size())
+                .lastError(job.getLastError())
+                .startedAt(job.getStartedAt())
+                .updatedAt(job.getUpdatedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    /**
+     * Server-Sent Events stream of a job's progress, one "progress" event per interval until the job stops running
+     */
+    public SseEmitter streamProgress(UUID id) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        AtomicReference<ScheduledFuture<?>> task = new AtomicReference<>();
+
+        task.set(progressScheduler.scheduleAtFixedRate(() -> {
+            try {
+                Optional<SyncJob> job = syncJobRepository.findById(id);
+                if (job.isEmpty()) {
+                    emitter.completeWithError(new IllegalArgumentException("Sync job not found: " + id));
+                    return;
+                }
+                emitter.send(SseEmitter.event().name("progress").data(describe(job.get())));
+                if (job.get().getStatus() != SyncJobStatus.RUNNING) {
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client went away
+                emitter.completeWithError(e);
+            } catch (RuntimeException e) {
+                log.warn("Error streaming progress of sync job {}: {}", id, e.getMessage());
+                emitter.completeWithError(e);
+            }
+        }, 0, progressIntervalMs, TimeUnit.MILLISECONDS));
+
+        Runnable cancel = () -> {
+            ScheduledFuture<?> future = task.get();
+            if (future != null) {
+                future.cancel(false);
+            }
+        };
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        emitter.onError(error -> cancel.run());
+        return emitter;
+    }
+
+    /**
+     * Windows of the job that are still unsynced
+     */
+    public List<FailedWindow> getFailedWindows(SyncJob job) {
+        return List.copyOf(readFailedWindows(job));
+    }
+
+    private SyncJob resumeOrCreate(SyncJobType type) {
+        Optional<SyncJob> unfinished = syncJobRepository.findFirstByTypeAndStatusInOrderByStartedAtDesc(type, UNFINISHED);
+        if (unfinished.isPresent()) {
+            SyncJob job = unfinished.get();
+            if (job.getStatus() == SyncJobStatus.RUNNING && isOwnerAlive(job)) {
+                throw new IllegalStateException("The " + type + " job " + job.getId() + " is still owned by " + job.getOwner());
+            }
+            if (type.isResumable() && job.getStartedAt().isAfter(LocalDateTime.now().minus(resumeWindow(type)))) {
+                log.info("Resuming {} job {} from row {}", type, job.getId(), job.getCursor());
+                job.setStatus(SyncJobStatus.RUNNING);
+                job.setOwner(syncLeaseService.getInstanceId());
+                return save(job);
+            }
+
+            log.warn("Abandoning unfinished {} job {} started at {}", type, job.getId(), job.getStartedAt());
+            job.setStatus(SyncJobStatus.FAILED);
+            job.setFinishedAt(LocalDateTime.now());
+            save(job);
+        }
+
+        SyncJob job = new SyncJob();
+        job.setType(type);
+        job.setOwner(syncLeaseService.getInstanceId());
+        job.setStartedAt(LocalDateTime.now());
+        syncJobRepository.findFirstByTypeAndStatusOrderByFinishedAtDesc(type, SyncJobStatus.COMPLETED)
+                .ifPresent(previous -> job.setExpectedRows(previous.getRowsProcessed()));
+        return save(job);
+    }
+
+    /**
+     * Whether the instance that owns a RUNNING job may still be running it. Called with the sweep lease held,
+     * so no job runs in this instance and a previous owner's sweep lease has expired or was released.
+     */
+    private boolean isOwnerAlive(SyncJob job) {
+        String owner = job.getOwner();
+        return owner != null && !owner.equals(syncLeaseService.getInstanceId()) && syncLeaseService.isAlive(owner);
+    }
+
+    /**
+     * How long an unfinished job of the type stays resumable: the interval between its scheduled runs
+     */
+    Duration resumeWindow(SyncJobType type) {
+        return switch (type) {
+            case STOCK -> cronInterval(stockCron);
+            case PRICE, PRODUCTS -> cronInterval(priceCron);
+            case ADAPTIVE_STOCK -> Duration.ofMillis(adaptiveIntervalMs);
+            case STOCK_ONLY -> Duration.ZERO;
+        };
+    }
+
+    private static Duration cronInterval(String cron) {
+        CronExpression expression = CronExpression.parse(cron);
+        ZonedDateTime next = expression.next(ZonedDateTime.now(ZoneId.systemDefault()));
+        ZonedDateTime following = next != null ? expression.next(next) : null;
+        return next != null && following != null ? Duration.between(next, following) : Duration.ZERO;
+    }
+
+    private SyncJob save(SyncJob job) {
+        return checkpointTransaction.execute(status -> syncJobRepository.save(job));
+    }
+
+    private void finish(SyncJob job, SyncJobStatus status) {
+        job.setStatus(status);
+        job.setFinishedAt(LocalDateTime.now());
+        save(job);
+    }
+
+    private void fail(SyncJob job, RuntimeException e) {
+        SyncLeaseService.Lease lease = leases.get(job.getId());
+        if (lease != null && lease.isLost()) {
+            // The instance that took over the lease owns the job row now
+            log.error("Job {} ({}) stopped at row {} after losing its lease", job.getId(), job.getType(), job.getCursor());
+            return;
+        }
+        // Sweeps keep their cursor and resume; other jobs start over next time
+        job.setStatus(job.getType().isResumable() ? SyncJobStatus.INTERRUPTED : SyncJobStatus.FAILED);
+        job.setLastError(e.getMessage());
+        if (!job.getType().isResumable()) {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+        save(job);
+        log.error("Job {} ({}) stopped at row {}: {}", job.getId(), job.getType(), job.getCursor(), e.getMessage());
+    }
+
+    private void advanceCursor(SyncJob job, TreeMap<Integer, Integer> finishedAhead, int fromRow, int toRow) {
+        finishedAhead.put(fromRow, toRow);
+        Integer lastRow;
+        while ((lastRow = finishedAhead.remove(job.getCursor())) != null) {
+            job.setCursor(lastRow + 1);
+        }
+    }
+
+    /**
+     * Frees the job's slot and lease. runSweep and run already do this; calling it again is harmless.
+     */
+    public void release(SyncJob job) {
+        RunClock clock = runClocks.remove(job.getId());
+        SyncLeaseService.Lease lease = leases.remove(job.getId());
+        if (lease != null) {
+            lease.close();
+        }
+        if (clock != null) {
+            activeType.compareAndSet(job.getType(), null);
+        }
+    }
+
+    /**
+     * Runs a write of the job in its own transaction that first locks the job's lease, so the write commits
+     * only if this instance still holds the lease, and the lease cannot be taken over until it has committed.
+     *
+     * @throws IllegalStateException if the lease was lost; nothing is written
+     */
+    public <T> T writeUnderLease(SyncJob job, Supplier<T> write) {
+        return writeUnderLease(leases.get(job.getId()), write);
+    }
+
+    /**
+     * Same as {@link #writeUnderLease(SyncJob, Supplier)} for work holding the lease itself, see {@link #runUnderSweepLease}
+     */
+    public <T> T writeUnderLease(SyncLeaseService.Lease lease, Supplier<T> write) {
+        return checkpointTransaction.execute(status -> {
+            if (lease != null) {
+                lease.lockForWrite();
+            }
+            return write.get();
+        });
+    }
+
+    /**
+     * Stops the work before it writes anything more once another instance has taken over the lease.
+     * A cheap check of the flag the heartbeat sets; long-running work calls it between units of work.
+     *
+     * @throws IllegalStateException if the lease was lost
+     */
+    public void checkLease(SyncJob job) {
+        SyncLeaseService.Lease lease = leases.get(job.getId());
+        if (lease != null && lease.isLost()) {
+            throw new IllegalStateException("Sync lease " + lease.getName() + " was taken over by another instance");
+        }
+    }
+
+    private <T> void retryFailedWindows(String label, SyncJob job, List<FailedWindow> failed,
+                                        MistralRowSweeper.WindowFetcher<T> fetcher,
+                                        MistralRowSweeper.WindowHandler<T> handler) {
+        for (int attempt = 1; attempt <= failedWindowRetries && !failed.isEmpty(); attempt++) {
+            log.info("[{}] Retrying {} failed windows (attempt {})", label, failed.size(), attempt);
+
+            Iterator<FailedWindow> iterator = failed.iterator();
+            while (iterator.hasNext()) {
+                FailedWindow window = iterator.next();
+                checkLease(job);
+                try {
+                    List<T> rows = fetcher.fetch(window.fromRow(), window.toRow());
+                    if (!rows.isEmpty()) {
+                        writeUnderLease(job, () -> {
+                            handler.handle(window.fromRow(), window.toRow(), rows);
+                            return null;
+                        });
+                    }
+                    iterator.remove();
+                    job.setRowsProcessed(job.getRowsProcessed() + rows.size());
+                } catch (Exception e) {
+                    log.warn("[{}] Retry of rows {}-{} failed: {}", label, window.fromRow(), window.toRow(), e.getMessage());
+                    job.setLastError(e.getMessage());
+                }
+            }
+
+            writeFailedWindows(job, failed);
+            save(job);
+        }
+    }
+
+    private List<FailedWindow> readFailedWindows(SyncJob job) {
+        if (job.getFailedWindows() == null || job.getFailedWindows().isBlank()) {
+            return new ArrayList<>();
+        }
+        try {
+            return new ArrayList<>(objectMapper.readValue(job.getFailedWindows(), new TypeReference<List<FailedWindow>>() {}));
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring unreadable failed windows of job {}: {}", job.getId(), e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private void writeFailedWindows(SyncJob job, List<FailedWindow> failed) {
+        try {
+            job.setFailedWindows(failed.isEmpty() ? null : objectMapper.writeValueAsString(failed));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize failed windows", e);
+        }
+    }
+
+    /**
+     * Row window that could not be synced, kept on the job for retry
+     */
+    public record FailedWindow(int fromRow, int toRow) {}
+
+    /**
+     * Final step of a sweep; allWindowsSynced is false when failed windows remain after the retries
+     */
+    @FunctionalInterface
+    public interface SweepCompletion {
+        void complete(boolean allWindowsSynced);
+    }
+
+    private static final class RunClock {
+        private final long startNanos;
+        private final int rowsAtStart;
+        private volatile long lastSavedNanos;
+
+        private RunClock(long startNanos, int rowsAtStart) {
+            this.startNanos = startNanos;
+            this.rowsAtStart = rowsAtStart;
+        }
+    }
+}
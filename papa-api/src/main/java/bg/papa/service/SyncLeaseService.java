@@ -0,0 +1,186 @@
+package bg.papa.service;
+
+import bg.papa.entity.SyncLease;
+import bg.papa.repository.SyncLeaseRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Cluster-wide leases on syncs, backed by the sync_leases table.
+ * A lease is held by one instance at a time and kept alive by a heartbeat; if the holder dies its lease
+ * expires after the TTL and the next instance that asks takes it over. If a heartbeat finds the lease
+ * taken over, the lease is marked lost and the sync stops at its next check; writes lock the lease row in their
+ * own transaction ({@link Lease#lockForWrite()}), so none can commit after a takeover.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SyncLeaseService {
+
+    private final SyncLeaseRepository syncLeaseRepository;
+
+    @Value("${app.sync.lease.instance-id:}")
+    private String configuredInstanceId;
+
+    @Value("${app.sync.lease.ttl:60s}")
+    private Duration ttl;
+
+    @Value("${app.sync.lease.heartbeat-interval:20s}")
+    private Duration heartbeatInterval;
+
+    private String instanceId;
+    private ScheduledExecutorService heartbeatScheduler;
+
+    @PostConstruct
+    void init() {
+        // Unique per process even when several replicas share a host name
+        String base = configuredInstanceId == null || configuredInstanceId.isBlank()
+                ? System.getenv().getOrDefault("HOSTNAME", "papa-api")
+                : configuredInstanceId;
+        instanceId = base + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+        heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sync-lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Sync leases held as instance {}", instanceId);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        heartbeatScheduler.shutdownNow();
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    public List<SyncLease> findAll() {
+        return syncLeaseRepository.findAll();
+    }
+
+    /**
+     * Expiry of every lease by name, judged by the database clock
+     */
+    public Map<String, SyncLeaseRepository.LeaseExpiry> findExpiries() {
+        return syncLeaseRepository.findExpiries().stream()
+                .collect(Collectors.toMap(SyncLeaseRepository.LeaseExpiry::getName, expiry -> expiry));
+    }
+
+    /**
+     * Current or last holder of a lease
+     */
+    public Optional<String> findOwner(String name) {
+        return syncLeaseRepository.findById(name).map(SyncLease::getOwner);
+    }
+
+    /**
+     * Whether any instance currently holds the lease, judged by its expiry against the database clock
+     */
+    public boolean isHeld(String name) {
+        return syncLeaseRepository.isLive(name);
+    }
+
+    /**
+     * Whether an instance still holds any unexpired lease, i.e. is alive and keeping up its heartbeats
+     */
+    public boolean isAlive(String owner) {
+        return syncLeaseRepository.countLive(owner) > 0;
+    }
+
+    /**
+     * Takes the lease and starts its heartbeat, or returns empty if another instance holds it
+     */
+    public Optional<Lease> tryAcquire(String name) {
+        if (syncLeaseRepository.tryAcquire(name, instanceId, ttl.toSeconds()) == 0) {
+            return Optional.empty();
+        }
+
+        Lease lease = new Lease(name);
+        long intervalMs = heartbeatInterval.toMillis();
+        lease.heartbeat = heartbeatScheduler.scheduleAtFixedRate(lease::renew, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        log.info("Acquired sync lease {}", name);
+        return Optional.of(lease);
+    }
+
+    /**
+     * A held lease. Close it when the sync is done.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final String name;
+        private volatile ScheduledFuture<?> heartbeat;
+        private volatile boolean lost;
+
+        private Lease(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Set once the lease was found taken over; the sync checks it between units of work and stops
+         */
+        public boolean isLost() {
+            return lost;
+        }
+
+        /**
+         * Confirms within the caller's transaction that the lease is still ours and keeps it from being taken over
+         * until that transaction ends, so nothing the transaction writes can commit after a takeover
+         *
+         * @throws IllegalStateException if the lease was lost
+         */
+        public void lockForWrite() {
+            if (lost || syncLeaseRepository.lockIfHeld(name, instanceId).isEmpty()) {
+                lost = true;
+                throw new IllegalStateException("Sync lease " + name + " is no longer held by this instance");
+            }
+        }
+
+        private void renew() {
+            try {
+                if (syncLeaseRepository.renew(name, instanceId, ttl.toSeconds()) == 0) {
+                    lost = true;
+                    heartbeat.cancel(false);
+                    log.error("Sync lease {} was taken over by {}, stopping the sync",
+                            name, findOwner(name).orElse("another instance"));
+                }
+            } catch (RuntimeException e) {
+                // Keep trying; the lease only lapses after the full TTL
+                log.warn("Could not renew sync lease {}: {}", name, e.getMessage());
+            }
+        }
+
+        @Override
+        public void close() {
+            heartbeat.cancel(false);
+            if (!lost) {
+                try {
+                    syncLeaseRepository.release(name, instanceId);
+                    log.info("Released sync lease {}", name);
+                } catch (RuntimeException e) {
+                    log.warn("Could not release sync lease {}, it will expire: {}", name, e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package bg.papa.service;
+
+import bg.papa.entity.SyncJobStatus;
+import bg.papa.entity.SyncJobType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer timers and counters for the phases of a sync: Mistral HTTP round trip, JSON decode,
+ * DB lookups, DB writes and whole windows. Every meter is tagged with the sync type running on the
+ * current thread ("none" for calls outside a sync job, e.g. cart stock checks), so the Prometheus
+ * export shows where the wall time of each sweep goes. Phase timers are also tagged with the outcome of the work,
+ * recorded whether it succeeded or failed, so slow failures are not hidden from the latencies.
+ * The sync type follows the work onto the sweep fetch workers through {@link #propagate(Callable)}.
+ */
+@Component
+public class SyncMetrics {
+
+    public static final String SUCCESS = "success";
+    public static final String FAILURE = "failure";
+
+    private static final String NO_SYNC = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final ThreadLocal<String> currentSync = new ThreadLocal<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public SyncMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs sync work with its meters tagged by the given sync type
+     */
+    public <T> T withSyncType(SyncJobType type, Supplier<T> work) {
+        String previous = currentSync.get();
+        currentSync.set(type.name());
+        try {
+            return work.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Wraps a task for another thread so its meters carry the sync type of the submitting thread
+     */
+    public <T> Callable<T> propagate(Callable<T> task) {
+        String sync = currentSync.get();
+        return () -> {
+            String previous = currentSync.get();
+            currentSync.set(sync);
+            try {
+                return task.call();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * Same as {@link #propagate(Callable)} for a task without a result
+     */
+    public Runnable propagate(Runnable task) {
+        String sync = currentSync.get();
+        return () -> {
+            String previous = currentSync.get();
+            currentSync.set(sync);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    /**
+     * Times a phase of the current sync; operation names the call, e.g. the Mistral endpoint or the statement
+     */
+    public <T> T time(Phase phase, String operation, Supplier<T> work) {
+        long start = System.nanoTime();
+        String outcome = FAILURE;
+        try {
+            T result = work.get();
+            outcome = SUCCESS;
+            return result;
+        } finally {
+            record(phase, operation, outcome, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Same as {@link #time(Phase, String, Supplier)} for work without a result
+     */
+    public void time(Phase phase, String operation, Runnable work) {
+        long start = System.nanoTime();
+        String outcome = FAILURE;
+        try {
+            work.run();
+            outcome = SUCCESS;
+        } finally {
+            record(phase, operation, outcome, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a phase of the current sync that was timed by the caller; outcome is {@link #SUCCESS},
+     * {@link #FAILURE} or a more specific failure, e.g. the class of an HTTP error
+     */
+    public void record(Phase phase, String operation, String outcome, long nanos) {
+        String sync = sync();
+        timers.computeIfAbsent(phase.name() + '|' + operation + '|' + outcome + '|' + sync, key -> Timer.builder("sync.phase")
+                        .description("Time spent per sync phase")
+                        .tag("phase", phase.tag)
+                        .tag("operation", operation)
+                        .tag("outcome", outcome)
+                        .tag("sync", sync)
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records one sweep window from the start of its fetch to the end of its processing
+     */
+    public void recordWindow(boolean succeeded, long nanos) {
+        String sync = sync();
+        String outcome = succeeded ? SUCCESS : FAILURE;
+        timers.computeIfAbsent("window|" + outcome + '|' + sync, key -> Timer.builder("sync.window")
+                        .description("Total time per sweep window, fetch and processing")
+                        .tag("outcome", outcome)
+                        .tag("sync", sync)
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a whole sync run by type and the status it ended in, the total the phases add up to
+     */
+    public void recordRun(SyncJobType type, SyncJobStatus status, long nanos) {
+        String outcome = status != null ? status.name() : "UNKNOWN";
+        timers.computeIfAbsent("run|" + type + '|' + outcome, key -> Timer.builder("sync.run")
+                        .description("Wall time per sync run")
+                        .tag("sync", type.name())
+                        .tag("status", outcome)
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts rows passing a stage of the current sync, e.g. decoded from Mistral or written to products
+     */
+    public void countRows(String stage, long rows) {
+        if (rows <= 0) {
+            return;
+        }
+        String sync = sync();
+        counters.computeIfAbsent(stage + '|' + sync, key -> Counter.builder("sync.rows")
+                        .description("Rows handled per sync stage")
+                        .tag("stage", stage)
+                        .tag("sync", sync)
+                        .register(meterRegistry))
+                .increment(rows);
+    }
+
+    private String sync() {
+        String sync = currentSync.get();
+        return sync != null ? sync : NO_SYNC;
+    }
+
+    private void restore(String previous) {
+        if (previous != null) {
+            currentSync.set(previous);
+        } else {
+            currentSync.remove();
+        }
+    }
+
+    /**
+     * Sync phase, exported as the phase tag of sync.phase
+     */
+    public enum Phase {
+        HTTP("http"),            // Mistral request until the response headers arrive
+        DECODE("decode"),        // Reading and parsing the response body, without the row consumer
+        DB_LOOKUP("db_lookup"),  // Reads from our database
+        DB_WRITE("db_write");    // Writes to our database
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package bg.papa.service;
+
+import bg.papa.entity.SyncJob;
+import bg.papa.entity.SyncJobType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Single entry point for catalog syncs, scheduled or requested from the admin API.
+ * Requests are queued and run one at a time by a single dispatcher thread, so at most one sweep hits Mistral
+ * per instance (and, through the sweep lease, per cluster). A request is merged into a queued sync that covers it,
+ * e.g. a stock sync into a price sync; a new request that covers queued ones replaces them. A request arriving
+ * while a covering sync runs is queued as a follow-up run, since the running sync may have read its rows already.
+ * A queued request is dropped as satisfied once a covering sync that started after it completes, e.g. on another instance.
+ * Interactive single-SKU calls do not queue here; sweeps yield to them through {@link MistralPriorityGate}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SyncScheduler {
+
+    private final SyncJobService syncJobService;
+    private final MistralSyncService mistralSyncService;
+    private final AdaptiveStockSyncService adaptiveStockSyncService;
+    private final SyncMetrics syncMetrics;
+
+    @Value("${app.sync.scheduler.merge-window:10s}")
+    private Duration mergeWindow;
+
+    @Value("${app.sync.scheduler.busy-retry:30s}")
+    private Duration busyRetry;
+
+    @Value("${app.sync.scheduler.max-wait:6h}")
+    private Duration maxWait;
+
+    // Guarded by this
+    private final LinkedList<SyncRequest> queue = new LinkedList<>();
+    private SyncRequest current;
+
+    private Thread dispatcher;
+    private volatile boolean stopped;
+
+    @PostConstruct
+    void init() {
+        dispatcher = new Thread(this::dispatch, "sync-scheduler");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stopped = true;
+        // Interrupts the running sweep, which is marked INTERRUPTED and resumes on the next run
+        dispatcher.interrupt();
+        synchronized (this) {
+            queue.forEach(request -> request.outcome.completeExceptionally(
+                    new RejectedExecutionException("Sync scheduler shut down")));
+            queue.clear();
+        }
+    }
+
+    /**
+     * Queues a sync, or merges it into a queued sync that covers it. Never merges into the running sync:
+     * that one started before the request, so a follow-up run is queued instead.
+     * bulk only applies to PRODUCTS syncs.
+     *
+     * @throws RejectedExecutionException if the scheduler is shutting down
+     */
+    public synchronized SyncTicket request(SyncJobType type, boolean bulk, Origin origin) {
+        if (stopped) {
+            throw new RejectedExecutionException("Sync scheduler is shut down");
+        }
+
+        for (SyncRequest queued : queue) {
+            if (queued.type.covers(type)) {
+                queued.merged++;
+                log.info("{} {} sync merged into queued {} sync {}", origin, type, queued.type, queued.id);
+                return ticket(queued, type, true);
+            }
+        }
+
+        // The new request takes the place of the first queued request it covers
+        SyncRequest request = new SyncRequest(type, bulk, origin);
+        int position = -1;
+        int index = 0;
+        Iterator<SyncRequest> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            SyncRequest queued = iterator.next();
+            if (type.covers(queued.type)) {
+                iterator.remove();
+                request.absorb(queued);
+                log.info("Queued {} sync {} replaced by {} {} sync", queued.type, queued.id, origin, type);
+                if (position < 0) {
+                    position = index;
+                }
+            } else {
+                index++;
+            }
+        }
+        if (position >= 0) {
+            queue.add(position, request);
+        } else {
+            queue.addLast(request);
+        }
+        log.info("{} {} sync {} queued at position {}", origin, type, request.id, queue.indexOf(request) + 1);
+        notifyAll();
+        return ticket(request, type, false);
+    }
+
+    /**
+     * Running sync (if any) followed by the queued ones, in the order they will run
+     */
+    public synchronized List<QueuedSync> getQueue() {
+        List<QueuedSync> view = new ArrayList<>();
+        if (current != null) {
+            view.add(current.view(stateOf(current)));
+        }
+        queue.forEach(request -> view.add(request.view(QueueState.QUEUED)));
+        return view;
+    }
+
+    /**
+     * Queue entry of a request that has not finished yet, e.g. to poll a request whose job has not started
+     */
+    public synchronized Optional<QueuedSync> findRequest(UUID requestId) {
+        return getQueue().stream()
+                .filter(entry -> entry.requestId().equals(requestId))
+                .findFirst();
+    }
+
+    /**
+     * A request only counts as RUNNING once its job has started; until then it has no job row
+     */
+    private QueueState stateOf(SyncRequest request) {
+        if (request != current) {
+            return QueueState.QUEUED;
+        }
+        return request.job != null ? QueueState.RUNNING : QueueState.WAITING_FOR_LEASE;
+    }
+
+    private void dispatch() {
+        while (!stopped) {
+            SyncRequest request = null;
+            try {
+                synchronized (this) {
+                    while (true) {
+                        if (queue.isEmpty()) {
+                            wait();
+                            continue;
+                        }
+                        // Hold a fresh request briefly, so triggers firing together (e.g. at midnight) can merge
+                        long holdMs = Duration.between(LocalDateTime.now(), queue.peekFirst().requestedAt.plus(mergeWindow)).toMillis();
+                        if (holdMs <= 0) {
+                            break;
+                        }
+                        wait(holdMs);
+                    }
+                    request = queue.pollFirst();
+                    current = request;
+                }
+                runRequest(request);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (request != null) {
+                    request.outcome.completeExceptionally(new RejectedExecutionException("Sync scheduler shut down"));
+                }
+                return;
+            } catch (RuntimeException e) {
+                log.error("Sync scheduler error: {}", e.getMessage(), e);
+            } finally {
+                synchronized (this) {
+                    current = null;
+                }
+            }
+        }
+    }
+
+    private void runRequest(SyncRequest request) throws InterruptedException {
+        SyncJob job = null;
+        while (job == null) {
+            // Another instance may have finished a covering sync while this one waited
+            Optional<SyncJob> done = syncJobService.findCompletedSince(request.type, request.requestedAt);
+            if (done.isPresent()) {
+                log.info("{} sync {} already satisfied by {} job {}", request.type, request.id,
+                        done.get().getType(), done.get().getId());
+                request.outcome.complete(new SyncOutcome(done.get(), null));
+                return;
+            }
+
+            try {
+                job = syncJobService.start(request.type);
+            } catch (IllegalStateException e) {
+                // A sync outside the scheduler, or on another instance, holds the sweep
+                if (request.requestedAt.plus(maxWait).isBefore(LocalDateTime.now())) {
+                    log.warn("Giving up on {} sync {} after waiting {}: {}", request.type, request.id, maxWait, e.getMessage());
+                    request.outcome.completeExceptionally(e);
+                    return;
+                }
+                log.info("{} sync {} waiting: {}", request.type, request.id, e.getMessage());
+                Thread.sleep(busyRetry.toMillis());
+            } catch (RuntimeException e) {
+                request.outcome.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        synchronized (this) {
+            request.job = job;
+        }
+        log.info("Running {} sync {} as job {} ({} merged requests)", request.type, request.id, job.getId(), request.merged);
+        long startNanos = System.nanoTime();
+        try {
+            SyncJob started = job;
+            Object result = syncMetrics.withSyncType(job.getType(), () -> execute(started, request.bulk));
+            request.outcome.complete(new SyncOutcome(job, result));
+        } catch (RuntimeException e) {
+            // Status and error are already recorded on the job
+            request.outcome.completeExceptionally(e);
+        } finally {
+            // In case the work failed before it reached runSweep or run
+            syncJobService.release(job);
+            syncMetrics.recordRun(job.getType(), job.getStatus(), System.nanoTime() - startNanos);
+        }
+    }
+
+    private Object execute(SyncJob job, boolean bulk) {
+        return switch (job.getType()) {
+            case STOCK -> mistralSyncService.syncStockBatch(job);
+            case PRICE -> mistralSyncService.syncPrices(job);
+            case PRODUCTS -> runJob(job, progress -> mistralSyncService.syncAllProducts(bulk, progress));
+            case STOCK_ONLY -> runJob(job, mistralSyncService::syncStockOnly);
+            case ADAPTIVE_STOCK -> adaptiveStockSyncService.syncStockAdaptive(job);
+        };
+    }
+
+    private <R> R runJob(SyncJob job, Function<MistralSyncService.ProgressListener, R> work) {
+        MistralSyncService.ProgressListener progress = (processed, total, errors) ->
+                syncJobService.reportProgress(job, processed, total, errors);
+        AtomicReference<R> result = new AtomicReference<>();
+        syncJobService.run(job, () -> result.set(work.apply(progress)));
+        return result.get();
+    }
+
+    private SyncTicket ticket(SyncRequest request, SyncJobType requestedType, boolean merged) {
+        SyncJob job = request.job;
+        return new SyncTicket(request.id, requestedType, request.type, merged, stateOf(request),
+                job != null ? job.getId() : null, request.outcome);
+    }
+
+    /**
+     * Who asked for a sync
+     */
+    public enum Origin {
+        SCHEDULED,  // Cron trigger
+        ADMIN       // Admin API
+    }
+
+    /**
+     * Where a request is: waiting in the queue, dequeued but waiting for the sweep lease, or running as a job
+     */
+    public enum QueueState {
+        QUEUED,
+        WAITING_FOR_LEASE,
+        RUNNING
+    }
+
+    /**
+     * Handle on a requested sync. type is the sync that will actually run, which differs from
+     * requestedType when the request was merged into a covering sync; jobId is set if it already started.
+     */
+    public record SyncTicket(UUID requestId, SyncJobType requestedType, SyncJobType type, boolean merged,
+                             QueueState state, UUID jobId, CompletableFuture<SyncOutcome> outcome) {}
+
+    /**
+     * Finished sync: the job, and the service result if this instance ran it (null when satisfied by another run)
+     */
+    public record SyncOutcome(SyncJob job, Object result) {}
+
+    /**
+     * Queue entry as shown in the admin API
+     */
+    public record QueuedSync(UUID requestId, SyncJobType type, Origin origin, QueueState state,
+                             int mergedRequests, LocalDateTime requestedAt, UUID jobId) {}
+
+    private static final class SyncRequest {
+        private final UUID id = UUID.randomUUID();
+        private final SyncJobType type;
+        private final boolean bulk;
+        private final Origin origin;
+        private final LocalDateTime requestedAt = LocalDateTime.now();
+        private final CompletableFuture<SyncOutcome> outcome = new CompletableFuture<>();
+        private int merged;
+        private volatile SyncJob job;
+
+        private SyncRequest(SyncJobType type, boolean bulk, Origin origin) {
+            this.type = type;
+            this.bulk = bulk;
+            this.origin = origin;
+        }
+
+        /**
+         * Takes over a queued request this one covers: it completes when this one does
+         */
+        private void absorb(SyncRequest other) {
+            merged += other.merged + 1;
+            outcome.whenComplete((result, error) -> {
+                if (error != null) {
+                    other.outcome.completeExceptionally(error);
+                } else {
+                    other.outcome.complete(result);
+                }
+            });
+        }
+
+        private QueuedSync view(QueueState state) {
+            SyncJob started = job;
+            return new QueuedSync(id, type, origin, state, merged, requestedAt, started != null ? started.getId() : null);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package bg.papa.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * URL handles for products and categories.
+ * Bulgarian Cyrillic is transliterated to Latin, letters are lowercased, runs of whitespace and hyphens
+ * become one hyphen and everything else is dropped, all in one pass over the characters through a lookup
+ * table built once. {@link #slugify(String)} gives the same output as the former transliterate-then-regex chain.
+ * Handles are cut differently from the former code, which cut "slug-code" at {@link #MAX_LENGTH} characters
+ * and did not cut category handles at all: product handles shorten the slug so the code stays whole, and
+ * category handles are transliterated and cut at {@link #MAX_LENGTH} characters.
+ */
+public final class Slugs {
+
+    public static final int MAX_LENGTH = 100;
+
+    // Extra handles tried per lookup round once the wanted handle is taken
+    private static final int SUFFIXES_PER_ROUND = 8;
+    private static final int MAX_ROUNDS = 100;
+
+    // Marks characters that separate words
+    private static final char[] SEPARATOR = new char[0];
+
+    // Output per input character below U+0500 (Latin and Cyrillic); null means dropped
+    private static final char[][] TABLE = new char[0x0500][];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            TABLE[c] = new char[]{c};
+            TABLE[Character.toUpperCase(c)] = TABLE[c];
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            TABLE[c] = new char[]{c};
+        }
+        for (char c : new char[]{' ', '\t', '\n', '\u000B', '\f', '\r', '-'}) {
+            TABLE[c] = SEPARATOR;
+        }
+
+        String[] bulgarian = {
+                "а", "a", "б", "b", "в", "v", "г", "g", "д", "d", "е", "e", "ж", "zh", "з", "z", "и", "i", "й", "y",
+                "к", "k", "л", "l", "м", "m", "н", "n", "о", "o", "п", "p", "р", "r", "с", "s", "т", "t", "у", "u",
+                "ф", "f", "х", "h", "ц", "ts", "ч", "ch", "ш", "sh", "щ", "sht", "ъ", "a", "ь", "y", "ю", "yu", "я", "ya"
+        };
+        for (int i = 0; i < bulgarian.length; i += 2) {
+            char lower = bulgarian[i].charAt(0);
+            TABLE[lower] = bulgarian[i + 1].toCharArray();
+            TABLE[Character.toUpperCase(lower)] = TABLE[lower];
+        }
+
+        // Other capitals that lowercase to a kept character, e.g. the dotted capital I
+        for (char c = 0x80; c < TABLE.length; c++) {
+            if (TABLE[c] == null) {
+                TABLE[c] = lowercased(c);
+            }
+        }
+    }
+
+    private Slugs() {
+    }
+
+    /**
+     * Slug of free text, e.g. "Детска Количка - 3в1" becomes "detska-kolichka-3v1". Empty if nothing is left.
+     */
+    public static String slugify(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+
+        char[] in = text.toCharArray();
+        // The longest transliteration ("щ" to "sht") triples a character
+        char[] out = new char[in.length * 3];
+        int length = 0;
+        boolean hyphenPending = false;
+
+        for (char c : in) {
+            char[] mapped = c < TABLE.length ? TABLE[c] : lowercased(c);
+            if (mapped == null) {
+                continue;
+            }
+            if (mapped == SEPARATOR) {
+                // Written before the next kept character, so hyphens never lead, trail or repeat
+                hyphenPending = length > 0;
+                continue;
+            }
+            if (hyphenPending) {
+                out[length++] = '-';
+                hyphenPending = false;
+            }
+            for (char m : mapped) {
+                out[length++] = m;
+            }
+        }
+
+        return new String(out, 0, length);
+    }
+
+    /**
+     * Handle of a product: the name's slug followed by the supplier code, at most {@link #MAX_LENGTH} characters.
+     * The slug is shortened rather than the code, so the code keeps handles apart.
+     */
+    public static String productHandle(String name, String code) {
+        if (name == null || name.isEmpty()) {
+            return truncate("product-" + code);
+        }
+
+        String slug = slugify(name);
+        if (slug.isEmpty()) {
+            slug = "product";
+        }
+        int room = MAX_LENGTH - 1 - code.length();
+        if (room > 0 && slug.length() > room) {
+            slug = stripTrailingHyphen(slug.substring(0, room));
+        }
+        return truncate(slug + "-" + code);
+    }
+
+    /**
+     * Handle of a category; names with nothing to slug get a time-based handle
+     */
+    public static String categoryHandle(String name) {
+        String slug = truncate(slugify(name));
+        return slug.isEmpty() ? "category-" + System.currentTimeMillis() : slug;
+    }
+
+    /**
+     * Makes wanted handles unique against each other and against the stored ones, appending -2, -3, ...
+     * to a taken handle. Stored handles are looked up in batches: one lookup for all wanted handles, then
+     * one per round of alternatives for those that were taken. A handle stored for the same key counts as free.
+     *
+     * @param wanted handle wanted per key (e.g. per supplier SKU)
+     * @param owners returns the key owning each of the given handles that is already stored (null if it has none)
+     */
+    public static <K> Map<K, String> uniqueHandles(Map<K, String> wanted, Function<Collection<String>, Map<String, K>> owners) {
+        Map<K, String> unique = new LinkedHashMap<>();
+        Set<String> claimed = new HashSet<>();
+        Map<K, String> pending = new LinkedHashMap<>(wanted);
+
+        for (int round = 0; !pending.isEmpty(); round++) {
+            if (round > MAX_ROUNDS) {
+                throw new IllegalStateException("Could not find free handles for " + pending.values());
+            }
+
+            Map<K, List<String>> candidates = new LinkedHashMap<>();
+            Set<String> lookup = new LinkedHashSet<>();
+            for (Map.Entry<K, String> entry : pending.entrySet()) {
+                List<String> options = new ArrayList<>();
+                if (round == 0) {
+                    options.add(entry.getValue());
+                } else {
+                    int firstSuffix = (round - 1) * SUFFIXES_PER_ROUND + 2;
+                    for (int suffix = firstSuffix; suffix < firstSuffix + SUFFIXES_PER_ROUND; suffix++) {
+                        options.add(withSuffix(entry.getValue(), suffix));
+                    }
+                }
+                candidates.put(entry.getKey(), options);
+                lookup.addAll(options);
+            }
+
+            Map<String, K> taken = owners.apply(lookup);
+            candidates.forEach((key, options) -> {
+                for (String option : options) {
+                    boolean free = !taken.containsKey(option) || Objects.equals(taken.get(option), key);
+                    if (free && claimed.add(option)) {
+                        unique.put(key, option);
+                        pending.remove(key);
+                        return;
+                    }
+                }
+            });
+        }
+
+        Map<K, String> ordered = new LinkedHashMap<>();
+        wanted.keySet().forEach(key -> ordered.put(key, unique.get(key)));
+        return ordered;
+    }
+
+    private static String withSuffix(String handle, int suffix) {
+        String tail = "-" + suffix;
+        if (handle.length() + tail.length() > MAX_LENGTH) {
+            handle = stripTrailingHyphen(handle.substring(0, MAX_LENGTH - tail.length()));
+        }
+        return handle + tail;
+    }
+
+    private static char[] lowercased(char c) {
+        char lower = Character.toLowerCase(c);
+        return lower < TABLE.length ? TABLE[lower] : null;
+    }
+
+    private static String truncate(String handle) {
+        return handle.length() > MAX_LENGTH ? handle.substring(0, MAX_LENGTH) : handle;
+    }
+
+    private static String stripTrailingHyphen(String slug) {
+        return slug.endsWith("-") ? slug.substring(0, slug.length() - 1) : slug;
+    }
+}
@@ -0,0 +1,88 @@
+-- Tables of the Mistral sync, as the entities define them. Runs at startup before Hibernate,
+-- which only validates the schema in prod. Every statement is idempotent.
+
+CREATE TABLE IF NOT EXISTS sync_jobs (
+    id uuid PRIMARY KEY,
+    type varchar(255) NOT NULL,
+    status varchar(255) NOT NULL,
+    cursor_row integer NOT NULL,
+    failed_windows text,
+    rows_processed integer NOT NULL,
+    expected_rows integer,
+    errors integer NOT NULL,
+    last_error text,
+    owner varchar(255),
+    started_at timestamp(6) NOT NULL,
+    updated_at timestamp(6),
+    finished_at timestamp(6)
+);
+ALTER TABLE sync_jobs ADD COLUMN IF NOT EXISTS owner varchar(255);
+CREATE INDEX IF NOT EXISTS idx_sync_jobs_type_status ON sync_jobs (type, status);
+
+-- Enum columns are plain strings; a check constraint left by ddl-auto would reject newer values
+ALTER TABLE sync_jobs DROP CONSTRAINT IF EXISTS sync_jobs_type_check;
+ALTER TABLE sync_jobs DROP CONSTRAINT IF EXISTS sync_jobs_status_check;
+
+CREATE TABLE IF NOT EXISTS sync_leases (
+    name varchar(255) PRIMARY KEY,
+    owner varchar(255) NOT NULL,
+    acquired_at timestamp(6) with time zone NOT NULL,
+    heartbeat_at timestamp(6) with time zone NOT NULL,
+    expires_at timestamp(6) with time zone NOT NULL
+);
+
+-- Lease times were local timestamps, which depend on each connection's session time zone
+ALTER TABLE sync_leases
+    ALTER COLUMN acquired_at TYPE timestamp(6) with time zone,
+    ALTER COLUMN heartbeat_at TYPE timestamp(6) with time zone,
+    ALTER COLUMN expires_at TYPE timestamp(6) with time zone;
+
+CREATE TABLE IF NOT EXISTS product_sync_state (
+    supplier_sku varchar(255) PRIMARY KEY,
+    fingerprint bigint NOT NULL,
+    synced_at timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS product_change_history (
+    supplier_sku varchar(255) PRIMARY KEY,
+    row_number integer NOT NULL,
+    first_seen_at timestamp(6) NOT NULL,
+    last_changed_at timestamp(6),
+    changes integer NOT NULL
+);
+-- Checks are recorded per row window now
+ALTER TABLE product_change_history DROP COLUMN IF EXISTS checked_at;
+ALTER TABLE product_change_history DROP COLUMN IF EXISTS checks;
+
+CREATE TABLE IF NOT EXISTS stock_check_windows (
+    from_row integer PRIMARY KEY,
+    to_row integer NOT NULL,
+    checked_at timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS product_price_history (
+    id bigserial PRIMARY KEY,
+    supplier_sku varchar(255) NOT NULL,
+    old_price numeric(10, 2) NOT NULL,
+    new_price numeric(10, 2) NOT NULL,
+    changed_at timestamp(6) NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_product_price_history_sku ON product_price_history (supplier_sku, changed_at);
+
+-- Staged rows can always be fetched again, so they skip the WAL
+CREATE UNLOGGED TABLE IF NOT EXISTS product_staging (
+    id uuid PRIMARY KEY,
+    job_id uuid NOT NULL,
+    row_number integer NOT NULL,
+    supplier_sku text NOT NULL,
+    handle text NOT NULL,
+    title text NOT NULL,
+    price numeric(10, 2),
+    compare_at_price numeric(10, 2),
+    stock integer NOT NULL,
+    fingerprint bigint NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_product_staging_job_sku ON product_staging (job_id, supplier_sku);
+
+-- Products are created by Hibernate on a fresh database, with the column
+ALTER TABLE IF EXISTS products ADD COLUMN IF NOT EXISTS unpublished_by_sync boolean NOT NULL DEFAULT false;
@@ -0,0 +1,60 @@
+package bg.papa;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.List;
+
+/**
+ * Base for tests that run the sync end to end against the Mistral stand-in served by the application under test
+ * (mistral-stub profile, see bg.papa.controller.MistralStubController), over real HTTP.
+ * Uses the same database as {@link PostgresTestSupport}. Syncs commit their own transactions, so every table
+ * is emptied after each test instead of rolled back.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
+@ActiveProfiles("mistral-stub")
+public abstract class MistralStubTestSupport {
+
+    // The Mistral base URL points back at this port, so it has to be known before the context starts
+    private static final int PORT = freePort();
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void requireStubDatabase() {
+        PostgresTestSupport.requireDatabase();
+    }
+
+    @DynamicPropertySource
+    static void stubProperties(DynamicPropertyRegistry registry) {
+        PostgresTestSupport.databaseProperties(registry);
+        registry.add("server.port", () -> PORT);
+    }
+
+    @AfterEach
+    void emptyTables() {
+        List<String> tables = jdbcTemplate.queryForList(
+                "SELECT tablename FROM pg_tables WHERE schemaname = current_schema()", String.class);
+        if (!tables.isEmpty()) {
+            jdbcTemplate.execute("TRUNCATE " + String.join(", ", tables) + " CASCADE");
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package bg.papa;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+/**
+ * Base for repository tests that need PostgreSQL; the sync writes use unnest arrays, ON CONFLICT and COPY.
+ * Runs against TEST_DATABASE_URL (plus TEST_DATABASE_USERNAME and TEST_DATABASE_PASSWORD) when set,
+ * otherwise against a Testcontainers PostgreSQL; with neither available the tests are skipped.
+ * The schema is created from the entities, and every test rolls back.
+ */
+@DataJpaTest(showSql = false, properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public abstract class PostgresTestSupport {
+
+    private static PostgreSQLContainer<?> container;
+
+    @BeforeAll
+    public static void requireDatabase() {
+        Assumptions.assumeTrue(System.getenv("TEST_DATABASE_URL") != null
+                        || DockerClientFactory.instance().isDockerAvailable(),
+                "Neither TEST_DATABASE_URL nor Docker is available");
+    }
+
+    @DynamicPropertySource
+    public static void databaseProperties(DynamicPropertyRegistry registry) {
+        String url = System.getenv("TEST_DATABASE_URL");
+        if (url != null) {
+            registry.add("spring.datasource.url", () -> url);
+            registry.add("spring.datasource.username", () -> env("TEST_DATABASE_USERNAME", "postgres"));
+            registry.add("spring.datasource.password", () -> env("TEST_DATABASE_PASSWORD", ""));
+            return;
+        }
+
+        PostgreSQLContainer<?> postgres = startContainer();
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    private static synchronized PostgreSQLContainer<?> startContainer() {
+        if (container == null) {
+            container = new PostgreSQLContainer<>("postgres:16-alpine");
+            container.start();
+        }
+        return container;
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? value : defaultValue;
+    }
+}
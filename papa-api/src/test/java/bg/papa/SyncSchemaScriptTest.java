@@ -0,0 +1,82 @@
+package bg.papa;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * db/sync-schema.sql must create the sync tables exactly as the entities define them,
+ * or Hibernate's validation fails in prod.
+ */
+class SyncSchemaScriptTest extends PostgresTestSupport {
+
+    private static final List<String> TABLES = List.of("sync_jobs", "sync_leases", "product_sync_state",
+            "product_change_history", "stock_check_windows", "product_price_history", "product_staging");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void scriptCreatesTheTablesTheEntitiesDefine() {
+        Map<String, String> fromEntities = describeTables();
+
+        jdbcTemplate.execute("DROP TABLE " + String.join(", ", TABLES));
+        runScript();
+        runScript();
+
+        assertThat(describeTables()).isEqualTo(fromEntities);
+    }
+
+    @Test
+    void scriptDropsEnumCheckConstraintsThatRejectNewerValues() {
+        jdbcTemplate.execute("ALTER TABLE sync_jobs DROP CONSTRAINT IF EXISTS sync_jobs_type_check");
+        jdbcTemplate.execute("ALTER TABLE sync_jobs ADD CONSTRAINT sync_jobs_type_check CHECK (type IN ('STOCK', 'PRICE'))");
+
+        runScript();
+
+        jdbcTemplate.update("""
+                INSERT INTO sync_jobs (id, type, status, cursor_row, rows_processed, errors, started_at)
+                VALUES (gen_random_uuid(), 'ADAPTIVE_STOCK', 'RUNNING', 1, 0, 0, LOCALTIMESTAMP)
+                """);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM sync_jobs", Integer.class)).isEqualTo(1);
+    }
+
+    private void runScript() {
+        new ResourceDatabasePopulator(new ClassPathResource("db/sync-schema.sql")).execute(dataSource);
+    }
+
+    // Columns with type, nullability and identity, plus index definitions, by table
+    private Map<String, String> describeTables() {
+        Map<String, String> description = new TreeMap<>();
+        jdbcTemplate.query("""
+                SELECT table_name, column_name, data_type, character_maximum_length, numeric_precision,
+                       numeric_scale, is_nullable, is_identity
+                FROM information_schema.columns
+                WHERE table_schema = current_schema() AND table_name = ANY(?)
+                """, resultSet -> {
+            description.put(resultSet.getString(1) + "." + resultSet.getString(2), String.join(" ",
+                    resultSet.getString(3), String.valueOf(resultSet.getObject(4)), String.valueOf(resultSet.getObject(5)),
+                    String.valueOf(resultSet.getObject(6)), resultSet.getString(7), resultSet.getString(8)));
+        }, (Object) TABLES.toArray(String[]::new));
+        jdbcTemplate.query("""
+                SELECT tablename, indexname, indexdef
+                FROM pg_indexes
+                WHERE schemaname = current_schema() AND tablename = ANY(?) AND indexname NOT LIKE '%pkey'
+                """, resultSet -> {
+            description.put(resultSet.getString(1) + " index " + resultSet.getString(2), resultSet.getString(3));
+        }, (Object) TABLES.toArray(String[]::new));
+        return description;
+    }
+}
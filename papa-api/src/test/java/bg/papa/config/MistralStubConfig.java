@@ -0,0 +1,41 @@
+package bg.papa.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.web.SecurityFilterChain;
+
+import java.time.Duration;
+
+/**
+ * Settings of the test Mistral stand-in, active with the mistral-stub profile.
+ * Also opens the stand-in's endpoints, which the sync calls without a user token.
+ */
+@Configuration
+@Profile("mistral-stub")
+@ConfigurationProperties(prefix = "mistral.stub")
+@Data
+public class MistralStubConfig {
+
+    private int catalogSize = 20000;
+    private Duration latency = Duration.ofMillis(50);       // Per request
+    private Duration latencyPerRow = Duration.ZERO;         // Added per returned product
+    private double errorRate = 0.0;                         // Share of API requests answered with 500
+    private Duration tokenExpiry = Duration.ofHours(1);
+    private Duration stockChangeInterval = Duration.ofMinutes(10); // How often stock quantities move
+
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public SecurityFilterChain mistralStubFilterChain(HttpSecurity http) throws Exception {
+        http
+            .securityMatcher("/mistral-stub/**")
+            .csrf(csrf -> csrf.disable())
+            .authorizeHttpRequests(auth -> auth.anyRequest().permitAll());
+        return http.build();
+    }
+}
@@ -0,0 +1,165 @@
+package bg.papa.controller;
+
+import bg.papa.config.MistralStubConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Test stand-in for the Mistral ERP endpoints used by the sync (/token, /api/GetAllData, /api/GetAllDataByPart),
+ * so the sync can be tested and load-tested end to end without touching production.
+ * Products are generated from their row number, so the catalog costs no memory and every run sees the same data;
+ * stock quantities shift every stock-change interval to give the stock sync something to write.
+ * Only mapped with the mistral-stub profile, see {@link bg.papa.MistralStubTestSupport}.
+ */
+@RestController
+@RequestMapping("/mistral-stub")
+@Profile("mistral-stub")
+@RequiredArgsConstructor
+@Slf4j
+public class MistralStubController {
+
+    private static final int FIRST_CODE = 100000;
+
+    private final MistralStubConfig stubConfig;
+
+    // Issued access tokens and when they expire
+    private final Map<String, Instant> tokens = new ConcurrentHashMap<>();
+
+    @PostMapping(value = "/token", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<Map<String, Object>> token(
+            @RequestParam(name = "Username", required = false) String username,
+            @RequestParam(name = "grant_type", required = false) String grantType) {
+        simulateLatency(0);
+
+        if (username == null || username.isBlank() || !"password".equals(grantType)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "invalid_grant"));
+        }
+
+        String token = "stub-" + UUID.randomUUID();
+        tokens.put(token, Instant.now().plus(stubConfig.getTokenExpiry()));
+        tokens.entrySet().removeIf(entry -> entry.getValue().isBefore(Instant.now()));
+
+        return ResponseEntity.ok(Map.of(
+                "access_token", token,
+                "token_type", "bearer",
+                "expires_in", stubConfig.getTokenExpiry().toSeconds()
+        ));
+    }
+
+    @GetMapping("/api/GetAllData")
+    public ResponseEntity<List<Map<String, Object>>> getAllData(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestParam(defaultValue = "") String search) {
+        ResponseEntity<List<Map<String, Object>>> rejected = rejectRequest(authorization);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        List<Map<String, Object>> products = new ArrayList<>();
+        for (int row = 1; row <= stubConfig.getCatalogSize(); row++) {
+            String code = codeOf(row);
+            if (search.isEmpty() || code.contains(search) || nameOf(row).contains(search)) {
+                products.add(product(row));
+            }
+        }
+
+        simulateLatency(products.size());
+        return ResponseEntity.ok(products);
+    }
+
+    @GetMapping("/api/GetAllDataByPart")
+    public ResponseEntity<List<Map<String, Object>>> getAllDataByPart(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestParam int row,
+            @RequestParam int torow) {
+        ResponseEntity<List<Map<String, Object>>> rejected = rejectRequest(authorization);
+        if (rejected != null) {
+            return rejected;
+        }
+
+        int from = Math.max(1, row);
+        int to = Math.min(torow, stubConfig.getCatalogSize());
+        List<Map<String, Object>> products = new ArrayList<>(Math.max(0, to - from + 1));
+        for (int current = from; current <= to; current++) {
+            products.add(product(current));
+        }
+
+        simulateLatency(products.size());
+        return ResponseEntity.ok(products);
+    }
+
+    /**
+     * 401 for a missing or expired token, 500 for a simulated failure, null if the request may proceed
+     */
+    private <T> ResponseEntity<T> rejectRequest(String authorization) {
+        String token = authorization != null && authorization.startsWith("Bearer ") ? authorization.substring(7) : null;
+        Instant expiresAt = token != null ? tokens.get(token) : null;
+        if (expiresAt == null || expiresAt.isBefore(Instant.now())) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (stubConfig.getErrorRate() > 0 && ThreadLocalRandom.current().nextDouble() < stubConfig.getErrorRate()) {
+            return ResponseEntity.internalServerError().build();
+        }
+        return null;
+    }
+
+    private Map<String, Object> product(int row) {
+        long salesCents = 199 + (row * 37L) % 9800;
+        Map<String, Object> product = new LinkedHashMap<>();
+        product.put("UCode", row);
+        product.put("Code", codeOf(row));
+        product.put("Name", nameOf(row));
+        product.put("Mea", "бр.");
+        product.put("SalesPrice", String.format("%d.%02d", salesCents / 100, salesCents % 100));
+        // Every fifth product is discounted
+        product.put("BaseSalePrice", row % 5 == 0 ? (salesCents + 500) / 100.0 : salesCents / 100.0);
+        product.put("Qtty", stockOf(row) + ".000");
+        product.put("Group", "Stub group " + row % 20);
+        product.put("Barcode", String.valueOf(3800000000000L + row));
+        product.put("Active", 1);
+        return product;
+    }
+
+    private String codeOf(int row) {
+        return String.valueOf(FIRST_CODE + row);
+    }
+
+    private String nameOf(int row) {
+        return "Stub product " + row;
+    }
+
+    private int stockOf(int row) {
+        long interval = Math.max(1, stubConfig.getStockChangeInterval().toMillis());
+        long epoch = System.currentTimeMillis() / interval;
+        // Each product moves once every ten intervals, staggered so about a tenth change per interval
+        return (int) ((row * 7L + (epoch + row % 10) / 10) % 40);
+    }
+
+    private void simulateLatency(int rows) {
+        Duration delay = stubConfig.getLatency().plus(stubConfig.getLatencyPerRow().multipliedBy(rows));
+        if (delay.isZero() || delay.isNegative()) {
+            return;
+        }
+        try {
+            Thread.sleep(delay.toMillis(), delay.toNanosPart() % 1_000_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
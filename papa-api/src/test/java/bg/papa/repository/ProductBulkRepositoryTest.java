@@ -0,0 +1,104 @@
+package bg.papa.repository;
+
+import bg.papa.PostgresTestSupport;
+import bg.papa.repository.ProductBulkRepository.ProductUpsertRow;
+import bg.papa.repository.ProductBulkRepository.UpsertCounts;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(ProductBulkRepository.class)
+class ProductBulkRepositoryTest extends PostgresTestSupport {
+
+    @Autowired
+    private ProductBulkRepository productBulkRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void upsertCountsCreatedThenUpdated() {
+        List<ProductUpsertRow> rows = List.of(row("A1", "a-1", 5), row("B1", "b-1", 0));
+
+        UpsertCounts first = productBulkRepository.upsertProducts(rows);
+        UpsertCounts second = productBulkRepository.upsertProducts(List.of(row("A1", "a-1", 7), row("C1", "c-1", 1)));
+
+        assertThat(first.created()).isEqualTo(2);
+        assertThat(first.updated()).isZero();
+        assertThat(first.failed()).isEmpty();
+        assertThat(second.created()).isEqualTo(1);
+        assertThat(second.updated()).isEqualTo(1);
+        assertThat(stockOf("A1")).isEqualTo(7);
+    }
+
+    @Test
+    void rejectedRowFailsAloneAndTheRestOfTheChunkIsWritten() {
+        productBulkRepository.upsertProducts(List.of(row("A1", "taken", 1)));
+
+        // B1 wants a handle A1 already holds, which violates the handle unique constraint
+        UpsertCounts counts = productBulkRepository.upsertProducts(
+                List.of(row("B1", "taken", 2), row("C1", "c-1", 3), row("A1", "taken", 4)));
+
+        assertThat(counts.created()).isEqualTo(1);
+        assertThat(counts.updated()).isEqualTo(1);
+        assertThat(counts.failed()).containsOnlyKeys("B1");
+        assertThat(stockOf("C1")).isEqualTo(3);
+        assertThat(stockOf("A1")).isEqualTo(4);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM products WHERE supplier_sku = 'B1'", Integer.class))
+                .isZero();
+    }
+
+    @Test
+    void updateStockReturnsOnlyChangedSkus() {
+        productBulkRepository.upsertProducts(List.of(row("A1", "a-1", 5), row("B1", "b-1", 0)));
+
+        assertThat(productBulkRepository.updateStockReturningChanged(Map.of("A1", 5, "B1", 2, "Z9", 1)))
+                .containsExactly("B1");
+    }
+
+    @Test
+    void priceChangesAreAppendedToThePriceHistory() {
+        productBulkRepository.upsertProducts(List.of(row("A1", "a-1", 5), row("B1", "b-1", 0)));
+
+        productBulkRepository.upsertProducts(List.of(
+                new ProductUpsertRow("A1", "a-1", "Product A1", new BigDecimal("12.50"), null, 5), row("B1", "b-1", 3)));
+
+        assertThat(jdbcTemplate.queryForList("SELECT supplier_sku, old_price, new_price FROM product_price_history"))
+                .singleElement()
+                .satisfies(change -> {
+                    assertThat(change.get("supplier_sku")).isEqualTo("A1");
+                    assertThat(change.get("old_price")).isEqualTo(new BigDecimal("10.00"));
+                    assertThat(change.get("new_price")).isEqualTo(new BigDecimal("12.50"));
+                });
+    }
+
+    @Test
+    void existingSkusAreFoundAndKeepTheirHandleWhenUpserted() {
+        productBulkRepository.upsertProducts(List.of(row("A1", "a-1", 5), row("B1", "b-1", 0)));
+
+        assertThat(productBulkRepository.findExistingSkus(List.of("A1", "B1", "Z9"))).containsExactlyInAnyOrder("A1", "B1");
+
+        // The handle of an existing SKU is not checked for uniqueness, as the upsert never writes it
+        UpsertCounts counts = productBulkRepository.upsertProducts(List.of(row("A1", "b-1", 7)));
+
+        assertThat(counts.updated()).isEqualTo(1);
+        assertThat(counts.failed()).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("SELECT handle FROM products WHERE supplier_sku = 'A1'", String.class))
+                .isEqualTo("a-1");
+    }
+
+    private Integer stockOf(String sku) {
+        return jdbcTemplate.queryForObject("SELECT stock FROM products WHERE supplier_sku = ?", Integer.class, sku);
+    }
+
+    private static ProductUpsertRow row(String sku, String handle, int stock) {
+        return new ProductUpsertRow(sku, handle, "Product " + sku, new BigDecimal("10.00"), null, stock);
+    }
+}
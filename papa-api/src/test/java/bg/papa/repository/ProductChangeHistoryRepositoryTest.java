@@ -0,0 +1,57 @@
+package bg.papa.repository;
+
+import bg.papa.PostgresTestSupport;
+import bg.papa.repository.ProductChangeHistoryRepository.Observation;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(ProductChangeHistoryRepository.class)
+class ProductChangeHistoryRepositoryTest extends PostgresTestSupport {
+
+    @Autowired
+    private ProductChangeHistoryRepository productChangeHistoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void onlyNewChangedOrMovedSkusAreWritten() {
+        assertThat(productChangeHistoryRepository.recordObservations(List.of(
+                new Observation("A1", 1, false), new Observation("B1", 2, false), new Observation("C1", 3, false))))
+                .isEqualTo(3);
+
+        int written = productChangeHistoryRepository.recordObservations(List.of(
+                new Observation("A1", 1, false), new Observation("B1", 2, true), new Observation("C1", 7, false)));
+
+        assertThat(written).isEqualTo(2);
+        assertThat(changesOf("B1")).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT row_number FROM product_change_history WHERE supplier_sku = 'C1'", Integer.class)).isEqualTo(7);
+    }
+
+    @Test
+    void skuIsDueOnceItsWindowWasLastCheckedLongerAgoThanItsInterval() {
+        productChangeHistoryRepository.recordObservations(List.of(
+                new Observation("A1", 1, false), new Observation("B1", 501, false)));
+        jdbcTemplate.update("UPDATE product_change_history SET first_seen_at = LOCALTIMESTAMP - interval '2 days'");
+
+        productChangeHistoryRepository.recordCheckedWindow(1, 500);
+        productChangeHistoryRepository.recordCheckedWindow(501, 1000);
+        jdbcTemplate.update("UPDATE stock_check_windows SET checked_at = LOCALTIMESTAMP - interval '2 hours' WHERE from_row = 501");
+
+        assertThat(productChangeHistoryRepository.findDueRows(0.01, Duration.ofHours(24),
+                Duration.ofMinutes(30), Duration.ofHours(24))).containsExactly(501);
+    }
+
+    private Integer changesOf(String sku) {
+        return jdbcTemplate.queryForObject(
+                "SELECT changes FROM product_change_history WHERE supplier_sku = ?", Integer.class, sku);
+    }
+}
@@ -0,0 +1,102 @@
+package bg.papa.repository;
+
+import bg.papa.PostgresTestSupport;
+import bg.papa.repository.ProductStagingRepository.MergeCounts;
+import bg.papa.repository.ProductStagingRepository.StagedProduct;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import(ProductStagingRepository.class)
+class ProductStagingRepositoryTest extends PostgresTestSupport {
+
+    @Autowired
+    private ProductStagingRepository productStagingRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void mergeCreatesUpdatesAndLeavesUnchangedRowsAlone() {
+        sweep(staged(1, "A1", "a-1", "10.00", 5), staged(2, "B1", "b-1", "20.00", 1));
+
+        MergeCounts counts = sweep(staged(1, "A1", "a-1", "12.00", 5), staged(2, "B1", "b-1", "20.00", 1),
+                staged(3, "C1", "c-1", "30.00", 0), staged(4, "A1", "a-1", "11.00", 5));
+
+        assertThat(counts.staged()).isEqualTo(3);
+        assertThat(counts.created()).isEqualTo(1);
+        assertThat(counts.updated()).isEqualTo(1);
+        assertThat(counts.unchanged()).isEqualTo(1);
+        // A duplicate SKU keeps its last row
+        assertThat(jdbcTemplate.queryForObject("SELECT price FROM products WHERE supplier_sku = 'A1'", BigDecimal.class))
+                .isEqualByComparingTo("11.00");
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM product_price_history WHERE supplier_sku = 'A1'",
+                Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedRowFailsAloneAndTheRestIsMerged() {
+        sweep(staged(1, "A1", "taken", "10.00", 5));
+
+        // B1 wants a handle A1 already holds, which violates the handle unique constraint
+        MergeCounts counts = sweep(staged(1, "A1", "taken", "10.00", 5), staged(2, "B1", "taken", "20.00", 1),
+                staged(3, "C1", "c-1", "30.00", 0));
+
+        assertThat(counts.failed()).containsOnlyKeys("B1");
+        assertThat(counts.created()).isEqualTo(1);
+        assertThat(counts.unchanged()).isEqualTo(1);
+        assertThat(counts.missing()).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM products WHERE supplier_sku = 'C1'", Integer.class))
+                .isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM product_sync_state WHERE supplier_sku = 'B1'",
+                Integer.class)).isZero();
+    }
+
+    @Test
+    void productsUnpublishedAsMissingAreRepublishedWhenTheyReappear() {
+        sweep(staged(1, "A1", "a-1", "10.00", 5), staged(2, "B1", "b-1", "20.00", 1), staged(3, "C1", "c-1", "30.00", 2));
+        // Unpublished by hand, which the sync must not undo
+        jdbcTemplate.update("UPDATE products SET status = 'DRAFT' WHERE supplier_sku = 'C1'");
+
+        MergeCounts missing = sweep(staged(1, "A1", "a-1", "10.00", 5), staged(3, "C1", "c-1", "30.00", 2));
+        MergeCounts back = sweep(staged(1, "A1", "a-1", "10.00", 5), staged(2, "B1", "b-1", "20.00", 1),
+                staged(3, "C1", "c-1", "30.00", 2));
+
+        assertThat(missing.unpublished()).isEqualTo(1);
+        assertThat(back.republished()).isEqualTo(1);
+        assertThat(back.updated()).isEqualTo(1);
+        assertThat(statusOf("B1")).isEqualTo("PUBLISHED");
+        assertThat(statusOf("C1")).isEqualTo("DRAFT");
+    }
+
+    private MergeCounts sweep(StagedProduct... rows) {
+        UUID jobId = UUID.randomUUID();
+        productStagingRepository.copyRows(jobId, List.of(rows));
+        MergeCounts counts = MergeCounts.NONE;
+        String after = "";
+        List<String> chunk;
+        while (!(chunk = productStagingRepository.findStagedSkus(jobId, after)).isEmpty()) {
+            after = chunk.get(chunk.size() - 1);
+            counts = counts.plus(productStagingRepository.mergeChunk(jobId, chunk));
+        }
+        counts = counts.plus(productStagingRepository.unpublishMissing(jobId, true, 0.5));
+        productStagingRepository.clear(jobId);
+        return counts;
+    }
+
+    private String statusOf(String sku) {
+        return jdbcTemplate.queryForObject("SELECT status FROM products WHERE supplier_sku = ?", String.class, sku);
+    }
+
+    private static StagedProduct staged(int row, String sku, String handle, String price, int stock) {
+        return new StagedProduct(row, sku, handle, "Product " + sku, new BigDecimal(price), null, stock,
+                (sku + price + stock).hashCode());
+    }
+}
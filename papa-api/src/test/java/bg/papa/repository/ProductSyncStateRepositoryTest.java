@@ -0,0 +1,64 @@
+package bg.papa.repository;
+
+import bg.papa.PostgresTestSupport;
+import bg.papa.repository.ProductBulkRepository.ProductUpsertRow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import({ProductSyncStateRepository.class, ProductBulkRepository.class})
+class ProductSyncStateRepositoryTest extends PostgresTestSupport {
+
+    @Autowired
+    private ProductSyncStateRepository productSyncStateRepository;
+
+    @Autowired
+    private ProductBulkRepository productBulkRepository;
+
+    @BeforeEach
+    void setUp() {
+        productBulkRepository.upsertProducts(List.of(row("A1"), row("B1")));
+        productSyncStateRepository.upsertFingerprints(Map.of("A1", 11L, "B1", 22L));
+    }
+
+    @Test
+    void findsStoredFingerprintsOfExistingProductsOnly() {
+        productBulkRepository.upsertProducts(List.of(row("C1")));
+
+        Map<String, Long> fingerprints = productSyncStateRepository.findFingerprints(List.of("A1", "C1", "Z9"));
+
+        assertThat(fingerprints).containsOnlyKeys("A1", "C1")
+                .containsEntry("A1", 11L)
+                .containsEntry("C1", null);
+    }
+
+    @Test
+    void stockWriteDropsFingerprintsOfChangedProductsOnly() {
+        productBulkRepository.updateStock(Map.of("A1", 9, "B1", 5));
+
+        // B1 already had stock 5, so its fingerprint still describes it
+        assertThat(productSyncStateRepository.findFingerprints(List.of("A1", "B1")))
+                .containsEntry("A1", null)
+                .containsEntry("B1", 22L);
+    }
+
+    @Test
+    void invalidateDropsFingerprints() {
+        productSyncStateRepository.invalidate(List.of("B1"));
+
+        assertThat(productSyncStateRepository.findFingerprints(List.of("A1", "B1")))
+                .containsEntry("A1", 11L)
+                .containsEntry("B1", null);
+    }
+
+    private static ProductUpsertRow row(String sku) {
+        return new ProductUpsertRow(sku, sku.toLowerCase(), "Product " + sku, new BigDecimal("10.00"), null, 5);
+    }
+}
@@ -0,0 +1,69 @@
+package bg.papa.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(60);
+
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 20, 3000, 0.5);
+
+    @Test
+    void slowResponsesSentBeforeACutCutTheLimitOnce() throws InterruptedException {
+        acquire(4);
+
+        limit.release(SLOW, true);
+        limit.release(SLOW, true);
+        limit.release(SLOW, false);
+
+        assertThat(limit.getLimit()).isEqualTo(5);
+        assertThat(limit.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void callStartedAfterTheCutCutsAgain() throws InterruptedException {
+        acquire(2);
+        limit.release(SLOW, true);
+
+        // Sent at the reduced limit, so its failure is a new congestion signal
+        limit.release(0, false);
+
+        assertThat(limit.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void limitNeverDropsBelowMinimum() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            acquire(1);
+            limit.release(0, false);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void growsOnlyWhileSaturated() throws InterruptedException {
+        acquire(1);
+        limit.release(0, true);
+        assertThat(limit.getLimit()).isEqualTo(10);
+
+        // Each fast round at the limit adds 1/limit; a dozen rounds add one permit
+        for (int i = 0; i < 12; i++) {
+            acquire(10);
+            for (int j = 0; j < 10; j++) {
+                limit.release(0, true);
+            }
+        }
+        assertThat(limit.getLimit()).isEqualTo(11);
+    }
+
+    private void acquire(int permits) throws InterruptedException {
+        for (int i = 0; i < permits; i++) {
+            limit.acquire();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package bg.papa.service;
+
+import bg.papa.dto.mistral.MistralSyncRow;
+import bg.papa.repository.ProductBulkRepository;
+import bg.papa.repository.ProductBulkRepository.SupplierSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class CatalogDiffServiceTest {
+
+    private final ProductBulkRepository productBulkRepository = mock(ProductBulkRepository.class);
+    private final MistralApiClient mistralApiClient = mock(MistralApiClient.class);
+    private final MistralRowSweeper rowSweeper = mock(MistralRowSweeper.class);
+    private final CatalogSizeProbe catalogSizeProbe = mock(CatalogSizeProbe.class);
+    private final SyncJobService syncJobService = mock(SyncJobService.class);
+
+    private CatalogDiffService catalogDiffService;
+
+    @BeforeEach
+    void setUp() {
+        catalogDiffService = new CatalogDiffService(productBulkRepository, mistralApiClient, rowSweeper,
+                catalogSizeProbe, syncJobService);
+        ReflectionTestUtils.setField(catalogDiffService, "topPriceMoves", 20);
+        ReflectionTestUtils.setField(catalogDiffService, "sampleSize", 50);
+
+        when(productBulkRepository.loadSupplierSnapshots()).thenReturn(Map.of(
+                "A1", new SupplierSnapshot("Stroller", 10000, SupplierSnapshot.NO_PRICE, 5, true),
+                "B1", new SupplierSnapshot("Crib", 20000, SupplierSnapshot.NO_PRICE, 1, true)));
+    }
+
+    @Test
+    void duplicateSkuIsDiffedFromItsLastRowLikeTheSync() {
+        when(syncJobService.runUnderSweepLease(any())).thenAnswer(invocation ->
+                Optional.ofNullable(invocation.<Function<SyncLeaseService.Lease, ?>>getArgument(0).apply(null)));
+        when(catalogSizeProbe.getRowCount()).thenReturn(3);
+        // Windows of a partitioned sweep arrive out of order: the later row of A1 comes first
+        when(rowSweeper.sweepPartitioned(anyString(), anyInt(), anyInt(), any(), any(), any())).thenAnswer(invocation -> {
+            MistralRowSweeper.WindowHandler<MistralSyncRow> handler = invocation.getArgument(4);
+            handler.handle(3, 3, List.of(row("A1", 12000, 5)));
+            handler.handle(1, 2, List.of(row("A1", 10000, 5), row("B1", 20000, 1)));
+            return new MistralRowSweeper.SweepResult(2, 3, 3, List.of(), 0);
+        });
+
+        CatalogDiffService.CatalogDiff diff = catalogDiffService.diffCatalog();
+
+        assertThat(diff.rowsScanned()).isEqualTo(3);
+        assertThat(diff.duplicates()).isEqualTo(1);
+        assertThat(diff.existing()).isEqualTo(2);
+        assertThat(diff.priceIncreased()).isEqualTo(1);
+        assertThat(diff.unchanged()).isEqualTo(1);
+        assertThat(diff.disappeared()).isZero();
+    }
+
+    @Test
+    void dryRunIsRefusedWhileTheSweepLeaseIsHeld() {
+        when(syncJobService.runUnderSweepLease(any())).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> catalogDiffService.diffCatalog()).isInstanceOf(IllegalStateException.class);
+        verifyNoInteractions(rowSweeper, mistralApiClient);
+    }
+
+    private static MistralSyncRow row(String sku, long priceCents, int quantity) {
+        return new MistralSyncRow(1, sku, sku.startsWith("A") ? "Stroller" : "Crib", quantity, priceCents,
+                MistralSyncRow.NO_PRICE);
+    }
+}
@@ -0,0 +1,90 @@
+package bg.papa.service;
+
+import bg.papa.dto.mistral.MistralProductDto;
+import bg.papa.repository.CartRepository;
+import bg.papa.repository.OrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class HotSkuRefreshServiceTest {
+
+    private final CartRepository cartRepository = mock(CartRepository.class);
+    private final MistralApiClient mistralApiClient = mock(MistralApiClient.class);
+    private final MistralRequestExecutor requestExecutor = mock(MistralRequestExecutor.class);
+    private final MistralSyncService mistralSyncService = mock(MistralSyncService.class);
+    private final SyncJobService syncJobService = mock(SyncJobService.class);
+    private final SyncLeaseService.Lease lease = mock(SyncLeaseService.Lease.class);
+
+    private HotSkuRefreshService hotSkuRefreshService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        hotSkuRefreshService = new HotSkuRefreshService(cartRepository, mock(OrderRepository.class),
+                new HotSkuTracker(), mistralApiClient, requestExecutor, mock(MistralCircuitBreaker.class),
+                mistralSyncService, syncJobService);
+        ReflectionTestUtils.setField(hotSkuRefreshService, "budget", 10);
+        ReflectionTestUtils.setField(hotSkuRefreshService, "cartWindow", Duration.ofHours(24));
+        ReflectionTestUtils.setField(hotSkuRefreshService, "orderWindow", Duration.ofHours(48));
+        ReflectionTestUtils.setField(hotSkuRefreshService, "viewWindow", Duration.ofHours(2));
+
+        when(cartRepository.findSupplierSkusInCartsActiveSince(any())).thenReturn(List.of("A1", "B1"));
+        when(requestExecutor.submit(any())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(invocation.<Callable<?>>getArgument(0).call()));
+        when(mistralApiClient.fetchProductByCode("A1")).thenReturn(product("3"));
+        when(mistralApiClient.fetchProductByCode("B1")).thenReturn(product("0"));
+    }
+
+    @Test
+    void refreshWritesThroughTheSweepWritePathUnderTheSweepLease() {
+        when(syncJobService.runUnderSweepLease(any())).thenAnswer(invocation ->
+                Optional.of(invocation.<Function<SyncLeaseService.Lease, ?>>getArgument(0).apply(lease)));
+        when(syncJobService.writeUnderLease(eq(lease), any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(1).get());
+        when(mistralSyncService.writeStock(Map.of("A1", 3, "B1", 0))).thenReturn(Set.of("B1"));
+
+        HotSkuRefreshService.HotRefreshResult result = hotSkuRefreshService.refresh();
+
+        assertThat(result.calls()).isEqualTo(2);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.deferred()).isZero();
+    }
+
+    @Test
+    void refreshIsSkippedWhileTheSweepLeaseIsHeld() {
+        when(syncJobService.runUnderSweepLease(any())).thenReturn(Optional.empty());
+
+        HotSkuRefreshService.HotRefreshResult result = hotSkuRefreshService.refresh();
+
+        assertThat(result.calls()).isZero();
+        assertThat(result.deferred()).isEqualTo(2);
+        verifyNoInteractions(mistralApiClient);
+        verify(mistralSyncService, never()).writeStock(anyMap());
+    }
+
+    private static MistralProductDto product(String quantity) {
+        MistralProductDto product = new MistralProductDto();
+        product.setQtty(quantity);
+        return product;
+    }
+}
@@ -0,0 +1,110 @@
+package bg.papa.service;
+
+import bg.papa.config.MistralConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class MistralApiClientTest {
+
+    private static final String ROWS = """
+            [{"UCode": 1, "Code": "A1", "Name": "First", "Qtty": "3", "SalesPrice": "10.50"},
+             {"UCode": 2, "Code": "B1", "Name": "Second", "Qtty": "0", "SalesPrice": "4.00"}]
+            """;
+
+    private MockRestServiceServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private MistralCircuitBreaker circuitBreaker;
+    private MistralApiClient client;
+
+    @BeforeEach
+    void setUp() {
+        MistralConfig config = new MistralConfig();
+        config.setBaseUrl("http://mistral.test");
+        config.setLocationId("1");
+        config.setPriceId("1");
+
+        RestTemplate restTemplate = new RestTemplate();
+        server = MockRestServiceServer.bindTo(restTemplate).build();
+
+        MistralTokenManager tokenManager = mock(MistralTokenManager.class);
+        when(tokenManager.getToken()).thenReturn("token");
+
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreaker = new MistralCircuitBreaker(config, meterRegistry);
+        client = new MistralApiClient(config, tokenManager, mock(MistralRequestExecutor.class), circuitBreaker,
+                restTemplate, new ObjectMapper(), new SyncMetrics(meterRegistry));
+        client.init();
+    }
+
+    @Test
+    void streamsSyncRows() {
+        server.expect(requestTo(startsWith("http://mistral.test/api/GetAllDataByPart")))
+                .andRespond(withSuccess(ROWS, MediaType.APPLICATION_JSON));
+
+        List<String> codes = new ArrayList<>();
+        int count = client.streamSyncRowsByRowRange(1, 2, row -> codes.add(row.code()));
+
+        assertThat(count).isEqualTo(2);
+        assertThat(codes).containsExactly("A1", "B1");
+    }
+
+    @Test
+    void consumerExceptionReachesCallerUnwrappedAndIsNotAMistralFailure() {
+        server.expect(ExpectedCount.manyTimes(), requestTo(startsWith("http://mistral.test/api/GetAllDataByPart")))
+                .andRespond(withSuccess(ROWS, MediaType.APPLICATION_JSON));
+
+        // More failing calls than the breaker needs to open, were they counted as Mistral failures
+        for (int i = 0; i < 15; i++) {
+            assertThatThrownBy(() -> client.streamSyncRowsByRowRange(1, 2, row -> {
+                throw new IllegalStateException("database unavailable");
+            })).isExactlyInstanceOf(IllegalStateException.class).hasMessage("database unavailable");
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(MistralCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void fetchErrorsAreWrapped() {
+        server.expect(requestTo(startsWith("http://mistral.test/api/GetAllDataByPart")))
+                .andRespond(withServerError());
+
+        assertThatThrownBy(() -> client.fetchSyncRowsByRowRange(1, 2))
+                .hasMessage("Failed to fetch products from Mistral");
+    }
+
+    @Test
+    void httpTimeIsRecordedForFailedRequestsTaggedWithTheOutcome() {
+        server.expect(requestTo(startsWith("http://mistral.test/api/GetAllDataByPart")))
+                .andRespond(withSuccess(ROWS, MediaType.APPLICATION_JSON));
+        server.expect(requestTo(startsWith("http://mistral.test/api/GetAllDataByPart")))
+                .andRespond(withServerError());
+
+        client.fetchSyncRowsByRowRange(1, 2);
+        assertThatThrownBy(() -> client.fetchSyncRowsByRowRange(1, 2));
+
+        assertThat(httpCount("success")).isEqualTo(1);
+        assertThat(httpCount("server_error")).isEqualTo(1);
+    }
+
+    private long httpCount(String outcome) {
+        return meterRegistry.get("sync.phase").tag("phase", "http").tag("outcome", outcome).timer().count();
+    }
+}
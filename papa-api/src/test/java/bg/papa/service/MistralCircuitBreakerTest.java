@@ -0,0 +1,156 @@
+package bg.papa.service;
+
+import bg.papa.config.MistralConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MistralCircuitBreakerTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofMillis(50);
+
+    private MistralCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        MistralConfig config = new MistralConfig();
+        MistralConfig.CircuitBreaker circuitBreaker = config.getCircuitBreaker();
+        circuitBreaker.setSlidingWindowSize(4);
+        circuitBreaker.setMinimumCalls(4);
+        circuitBreaker.setFailureRateThreshold(0.5);
+        circuitBreaker.setSlowCallThreshold(Duration.ofMillis(20));
+        circuitBreaker.setOpenDuration(OPEN_DURATION);
+        circuitBreaker.setHalfOpenCalls(2);
+        breaker = new MistralCircuitBreaker(config, new SimpleMeterRegistry());
+        breaker.registerMetrics();
+    }
+
+    @Test
+    void opensOnceFailureRateIsReachedAndRejectsCalls() {
+        succeed();
+        succeed();
+        fail();
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.CLOSED);
+
+        fail();
+
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.OPEN);
+        assertThat(breaker.isOpen()).isTrue();
+        assertThatThrownBy(this::succeed).isInstanceOf(MistralCircuitBreaker.CircuitOpenException.class);
+    }
+
+    @Test
+    void clientErrorsDoNotCountAsFailures() {
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> breaker.call(() -> {
+                throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+            })).isInstanceOf(HttpClientErrorException.class);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void slowCallsCountAsFailures() {
+        for (int i = 0; i < 4; i++) {
+            breaker.call(() -> {
+                sleep(Duration.ofMillis(30));
+                return null;
+            });
+        }
+
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void timeSpentOutsideMistralIsNotJudgedSlow() {
+        for (int i = 0; i < 4; i++) {
+            long[] ownNanos = new long[1];
+            breaker.call(() -> {
+                long start = System.nanoTime();
+                sleep(Duration.ofMillis(30));
+                ownNanos[0] = System.nanoTime() - start;
+                return null;
+            }, () -> ownNanos[0]);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpenLetsTrialCallsThroughAndClosesAfterThemSucceed() {
+        open();
+        sleep(OPEN_DURATION.plusMillis(10));
+
+        succeed();
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.HALF_OPEN);
+        succeed();
+
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.CLOSED);
+        // Outcomes from before the circuit opened are forgotten
+        fail();
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpenRejectsCallsBeyondTheTrialCalls() {
+        open();
+        sleep(OPEN_DURATION.plusMillis(10));
+
+        // Two trial calls still in flight take both permits
+        breaker.call(() -> {
+            breaker.call(() -> {
+                assertThatThrownBy(this::succeed).isInstanceOf(MistralCircuitBreaker.CircuitOpenException.class);
+                return null;
+            });
+            return null;
+        });
+
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void failedTrialCallOpensAgain() {
+        open();
+        sleep(OPEN_DURATION.plusMillis(10));
+
+        fail();
+
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.OPEN);
+        assertThat(breaker.isOpen()).isTrue();
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        assertThat(breaker.getState()).isEqualTo(MistralCircuitBreaker.State.OPEN);
+    }
+
+    private void succeed() {
+        breaker.call(() -> "ok");
+    }
+
+    private void fail() {
+        assertThatThrownBy(() -> breaker.call(() -> {
+            throw new ResourceAccessException("Mistral timeout");
+        })).isInstanceOf(ResourceAccessException.class);
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
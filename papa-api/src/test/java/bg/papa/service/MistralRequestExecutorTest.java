@@ -0,0 +1,121 @@
+package bg.papa.service;
+
+import bg.papa.config.MistralConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MistralRequestExecutorTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private MistralRequestExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        MistralConfig config = new MistralConfig();
+        config.getRetry().setMaxAttempts(3);
+        config.getRetry().setInitialBackoff(Duration.ofMillis(5));
+        config.getRetry().setMaxBackoff(Duration.ofMillis(10));
+        executor = new MistralRequestExecutor(config, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void retriesFailedRequestsUntilOneSucceeds() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = executor.submitWithRetry(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ResourceAccessException("Mistral timeout");
+            }
+            return "ok";
+        }, TIMEOUT).get(1, TimeUnit.SECONDS);
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void clientErrorsAndOpenCircuitAreNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Object> clientError = executor.submitWithRetry(() -> {
+            attempts.incrementAndGet();
+            throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+        }, TIMEOUT);
+        CompletableFuture<Object> circuitOpen = executor.submitWithRetry(() -> {
+            attempts.incrementAndGet();
+            throw new MistralCircuitBreaker.CircuitOpenException();
+        }, TIMEOUT);
+
+        assertThatThrownBy(() -> clientError.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(HttpClientErrorException.class);
+        assertThatThrownBy(() -> circuitOpen.get(1, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(MistralCircuitBreaker.CircuitOpenException.class);
+        assertThat(attempts).hasValue(2);
+    }
+
+    @Test
+    void permitIsReleasedWhileWaitingToRetry() throws Exception {
+        MistralConfig config = new MistralConfig();
+        config.getRetry().setInitialBackoff(Duration.ofMillis(300));
+        config.getRetry().setMaxBackoff(Duration.ofMillis(300));
+        MistralRequestExecutor slowRetries = new MistralRequestExecutor(config, new SimpleMeterRegistry());
+        try {
+            CountDownLatch failed = new CountDownLatch(1);
+            CompletableFuture<Object> request = slowRetries.submitWithRetry(() -> {
+                failed.countDown();
+                throw new ResourceAccessException("Mistral timeout");
+            }, TIMEOUT);
+
+            failed.await(1, TimeUnit.SECONDS);
+            Thread.sleep(50);
+            assertThat(slowRetries.getInFlight()).isZero();
+            request.cancel(true);
+        } finally {
+            slowRetries.shutdown();
+        }
+    }
+
+    @Test
+    void timeoutInterruptsTheRunningAttempt() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        CompletableFuture<Object> request = executor.submitWithRetry(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(Duration.ofSeconds(10));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return null;
+        }, Duration.ofMillis(100));
+
+        assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThatThrownBy(() -> request.get(1, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+}
@@ -0,0 +1,161 @@
+package bg.papa.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MistralRowSweeperTest {
+
+    private MistralRowSweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        sweeper = new MistralRowSweeper(new MistralPriorityGate(), new SyncMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(sweeper, "windowSize", 10);
+        ReflectionTestUtils.setField(sweeper, "concurrency", 3);
+        ReflectionTestUtils.setField(sweeper, "maxRows", 1000);
+        sweeper.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sweeper.shutdown();
+    }
+
+    @Test
+    void sweepHandlesWindowsInRowOrderUntilEmptyWindow() {
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+
+        MistralRowSweeper.SweepResult result = sweeper.sweep("test", 1, catalog(35),
+                (fromRow, toRow, rows) -> handled.add(fromRow));
+
+        assertThat(handled).containsExactly(1, 11, 21, 31);
+        assertThat(result.windows()).isEqualTo(4);
+        assertThat(result.rows()).isEqualTo(35);
+        assertThat(result.lastRow()).isEqualTo(35);
+        assertThat(result.failedWindows()).isEmpty();
+    }
+
+    @Test
+    void shortWindowMidCatalogDoesNotEndSweep() {
+        // Rows 11-20 come back short, as Mistral does when products are hidden mid-catalog;
+        // with one window in flight nothing past it has been prefetched yet
+        ReflectionTestUtils.setField(sweeper, "concurrency", 1);
+        MistralRowSweeper.WindowFetcher<Integer> fetcher = (fromRow, toRow) -> fromRow == 11
+                ? rows(11, 15)
+                : catalog(40).fetch(fromRow, toRow);
+
+        MistralRowSweeper.SweepResult result = sweeper.sweep("test", 1, fetcher, (fromRow, toRow, rows) -> {});
+
+        assertThat(result.windows()).isEqualTo(4);
+        assertThat(result.rows()).isEqualTo(35);
+        assertThat(result.lastRow()).isEqualTo(40);
+    }
+
+    @Test
+    void failedWindowIsReportedAndSweepContinues() {
+        List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+        MistralRowSweeper.WindowFetcher<Integer> fetcher = (fromRow, toRow) -> {
+            if (fromRow == 11) {
+                throw new IllegalStateException("Mistral timeout");
+            }
+            return catalog(30).fetch(fromRow, toRow);
+        };
+
+        MistralRowSweeper.SweepResult result = sweeper.sweep("test", 1, fetcher, (fromRow, toRow, rows) -> {},
+                (fromRow, toRow, error) -> failed.add(fromRow));
+
+        assertThat(failed).containsExactly(11);
+        assertThat(result.failedWindows()).containsExactly(11);
+        assertThat(result.rows()).isEqualTo(20);
+    }
+
+    @Test
+    void sweepStartsAtGivenCursor() {
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+
+        MistralRowSweeper.SweepResult result = sweeper.sweep("test", 21, catalog(35),
+                (fromRow, toRow, rows) -> handled.add(fromRow));
+
+        assertThat(handled).containsExactly(21, 31);
+        assertThat(result.rows()).isEqualTo(15);
+    }
+
+    @Test
+    void partitionedSweepReportsWindowsPastShrunkenCatalogToHandler() {
+        // Measured at 50 rows, but only 25 are left
+        List<Integer> handled = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> empty = Collections.synchronizedList(new ArrayList<>());
+
+        MistralRowSweeper.SweepResult result = sweeper.sweepPartitioned("test", 1, 50, catalog(25),
+                (fromRow, toRow, rows) -> {
+                    handled.add(fromRow);
+                    if (rows.isEmpty()) {
+                        empty.add(fromRow);
+                    }
+                },
+                (fromRow, toRow, error) -> {});
+
+        assertThat(handled).containsExactlyInAnyOrder(1, 11, 21, 31, 41);
+        assertThat(empty).containsExactlyInAnyOrder(31, 41);
+        assertThat(result.windows()).isEqualTo(3);
+        assertThat(result.rows()).isEqualTo(25);
+        assertThat(result.lastRow()).isEqualTo(25);
+    }
+
+    @Test
+    void partitionedSweepHandlesWindowsOffTheFetchWorkers() {
+        List<String> fetchThreads = Collections.synchronizedList(new ArrayList<>());
+        List<String> handlerThreads = Collections.synchronizedList(new ArrayList<>());
+        MistralRowSweeper.WindowFetcher<Integer> fetcher = (fromRow, toRow) -> {
+            fetchThreads.add(Thread.currentThread().getName());
+            return catalog(30).fetch(fromRow, toRow);
+        };
+
+        sweeper.sweepWindows("test", List.of(1, 11, 21), fetcher,
+                (fromRow, toRow, rows) -> handlerThreads.add(Thread.currentThread().getName()),
+                (fromRow, toRow, error) -> {});
+
+        assertThat(fetchThreads).hasSize(3).allMatch(name -> name.startsWith("mistral-sweep-") && !name.contains("handler"));
+        assertThat(handlerThreads).hasSize(3).allMatch(name -> name.startsWith("mistral-sweep-handler-"));
+    }
+
+    @Test
+    void throwingFailureListenerStopsPartitionedSweep() {
+        // Like a sync that finds its lease taken over: every handler fails and the listener gives up
+        ReflectionTestUtils.setField(sweeper, "concurrency", 1);
+        List<Integer> fetched = Collections.synchronizedList(new ArrayList<>());
+        MistralRowSweeper.WindowFetcher<Integer> fetcher = (fromRow, toRow) -> {
+            fetched.add(fromRow);
+            return catalog(100).fetch(fromRow, toRow);
+        };
+
+        assertThatThrownBy(() -> sweeper.sweepPartitioned("test", 1, 100, fetcher,
+                (fromRow, toRow, rows) -> {
+                    throw new IllegalStateException("write failed");
+                },
+                (fromRow, toRow, error) -> {
+                    throw new IllegalStateException("lease lost");
+                }))
+                .hasRootCauseMessage("lease lost");
+        assertThat(fetched).hasSizeLessThan(10);
+    }
+
+    private static MistralRowSweeper.WindowFetcher<Integer> catalog(int size) {
+        return (fromRow, toRow) -> fromRow > size ? List.of() : rows(fromRow, Math.min(toRow, size));
+    }
+
+    private static List<Integer> rows(int fromRow, int toRow) {
+        return IntStream.rangeClosed(fromRow, toRow).boxed().toList();
+    }
+}
@@ -0,0 +1,51 @@
+package bg.papa.service;
+
+import bg.papa.MistralStubTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The sync paths end to end against a small stand-in catalog: streaming row sync, fingerprint skipping
+ * and the partitioned stock sweep
+ */
+@TestPropertySource(properties = {
+        "mistral.stub.catalog-size=250",
+        "mistral.stub.latency=0ms",
+        "mistral.stub.stock-change-interval=3650d",
+        "app.sync.sweep.window-size=40"
+})
+class MistralStubSyncTest extends MistralStubTestSupport {
+
+    @Autowired
+    private MistralSyncService mistralSyncService;
+
+    @Test
+    void rowSyncCreatesProductsThenSkipsUnchangedOnes() {
+        MistralSyncService.SyncResult first = mistralSyncService.syncProductsByRowRange(1, 250, true);
+        MistralSyncService.SyncResult second = mistralSyncService.syncProductsByRowRange(1, 250, true);
+
+        assertThat(first.created()).isEqualTo(250);
+        assertThat(first.errors()).isZero();
+        assertThat(second.created()).isZero();
+        assertThat(second.updated()).isZero();
+        assertThat(second.unchanged()).isEqualTo(250);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM products", Integer.class)).isEqualTo(250);
+    }
+
+    @Test
+    void stockSweepRestoresStockChangedLocally() {
+        mistralSyncService.syncProductsByRowRange(1, 250, true);
+        jdbcTemplate.update("UPDATE products SET stock = -1 WHERE supplier_sku IN ('100001', '100100', '100250')");
+
+        MistralSyncService.StockSyncResult result = mistralSyncService.syncStockBatch();
+
+        assertThat(result.rowsScanned()).isEqualTo(250);
+        assertThat(result.errors()).isZero();
+        assertThat(result.updated()).isEqualTo(3);
+        assertThat(result.unchanged()).isEqualTo(247);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM products WHERE stock < 0", Integer.class)).isZero();
+    }
+}
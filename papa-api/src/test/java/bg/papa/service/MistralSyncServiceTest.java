@@ -0,0 +1,177 @@
+package bg.papa.service;
+
+import bg.papa.dto.mistral.MistralSyncRow;
+import bg.papa.entity.SyncJob;
+import bg.papa.repository.ProductBulkRepository;
+import bg.papa.repository.ProductBulkRepository.ProductUpsertRow;
+import bg.papa.repository.ProductBulkRepository.UpsertCounts;
+import bg.papa.repository.ProductStagingRepository;
+import bg.papa.repository.ProductStagingRepository.MergeCounts;
+import bg.papa.repository.ProductSyncStateRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MistralSyncServiceTest {
+
+    @Mock
+    private ProductBulkRepository productBulkRepository;
+
+    @Mock
+    private ProductSyncStateRepository productSyncStateRepository;
+
+    @Mock
+    private StockCache stockCache;
+
+    @Mock
+    private ProductStagingRepository productStagingRepository;
+
+    @Mock
+    private SyncJobService syncJobService;
+
+    @Mock
+    private MistralApiClient mistralApiClient;
+
+    @Spy
+    private SyncMetrics syncMetrics = new SyncMetrics(new SimpleMeterRegistry());
+
+    @InjectMocks
+    private MistralSyncService mistralSyncService;
+
+    private final MistralSyncRow unchanged = row("A1", 5);
+    private final MistralSyncRow changed = row("B1", 3);
+    private final MistralSyncRow added = row("C1", 1);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(mistralSyncService, "skipUnchanged", true);
+        lenient().when(productSyncStateRepository.findFingerprints(anyCollection())).thenReturn(Map.of(
+                "A1", ProductFingerprint.of(unchanged),
+                "B1", ProductFingerprint.of(row("B1", 2))
+        ));
+    }
+
+    @Test
+    void rowsMatchingTheirFingerprintAreSkipped() {
+        when(productBulkRepository.upsertProducts(anyList())).thenReturn(new UpsertCounts(1, 1, Map.of()));
+
+        MistralSyncService.SyncResult result = mistralSyncService.syncRows(List.of(unchanged, changed, added), true);
+
+        assertThat(result.unchanged()).isEqualTo(1);
+        assertThat(result.created()).isEqualTo(1);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.total()).isEqualTo(3);
+        assertThat(upsertedSkus()).containsExactly("B1", "C1");
+        assertThat(storedFingerprints()).containsOnlyKeys("B1", "C1")
+                .containsEntry("B1", ProductFingerprint.of(changed));
+    }
+
+    @Test
+    void rejectedRowsCountAsErrorsAndKeepNoFingerprint() {
+        when(productBulkRepository.upsertProducts(anyList()))
+                .thenReturn(new UpsertCounts(0, 1, Map.of("C1", "duplicate key value violates unique constraint")));
+
+        MistralSyncService.SyncResult result = mistralSyncService.syncRows(List.of(unchanged, changed, added), true);
+
+        assertThat(result.errors()).isEqualTo(1);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(storedFingerprints()).containsOnlyKeys("B1");
+    }
+
+    @Test
+    void onlySkusNotStoredYetGetAUniqueHandle() {
+        when(productBulkRepository.findExistingSkus(anyCollection())).thenReturn(Set.of("B1"));
+        when(productBulkRepository.upsertProducts(anyList())).thenReturn(new UpsertCounts(1, 1, Map.of()));
+
+        mistralSyncService.syncRows(List.of(unchanged, changed, added), true);
+
+        verify(productBulkRepository).findHandleOwners(Set.of("product-c1-C1"));
+    }
+
+    @Test
+    void cachedStockOfWrittenSkusIsEvicted() {
+        when(productBulkRepository.upsertProducts(anyList())).thenReturn(new UpsertCounts(1, 1, Map.of()));
+
+        mistralSyncService.syncRows(List.of(unchanged, changed, added), true);
+
+        verify(stockCache).invalidate(List.of("B1", "C1"));
+    }
+
+    @Test
+    void stagedMergeCommitsEachChunkAndTheUnpublishOnTheirOwn() {
+        ReflectionTestUtils.setField(mistralSyncService, "stagingIngest", true);
+        ReflectionTestUtils.setField(mistralSyncService, "unpublishMissing", true);
+        ReflectionTestUtils.setField(mistralSyncService, "maxUnpublishRatio", 0.05);
+        SyncJob job = new SyncJob();
+        job.setId(UUID.randomUUID());
+        job.setCursor(1);
+        job.setRowsProcessed(0);
+
+        when(syncJobService.runSweep(eq(job), any(), any(), any())).thenAnswer(invocation -> {
+            invocation.<SyncJobService.SweepCompletion>getArgument(3).complete(true);
+            return job;
+        });
+        when(syncJobService.writeUnderLease(eq(job), any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(1).get());
+        when(productStagingRepository.findStagedSkus(job.getId(), "")).thenReturn(List.of("A1", "B1"));
+        when(productStagingRepository.findStagedSkus(job.getId(), "B1")).thenReturn(List.of("C1"));
+        when(productStagingRepository.findStagedSkus(job.getId(), "C1")).thenReturn(List.of());
+        when(productStagingRepository.mergeChunk(job.getId(), List.of("A1", "B1")))
+                .thenReturn(new MergeCounts(2, 1, 1, 0, 0, 0, 0, Map.of()));
+        when(productStagingRepository.mergeChunk(job.getId(), List.of("C1")))
+                .thenReturn(new MergeCounts(1, 0, 0, 1, 0, 0, 0, Map.of()));
+        when(productStagingRepository.unpublishMissing(job.getId(), true, 0.05))
+                .thenReturn(new MergeCounts(0, 0, 0, 0, 1, 1, 0, Map.of()));
+
+        MistralSyncService.SyncResult result = mistralSyncService.syncPrices(job);
+
+        // Two chunks and the unpublish, each in a transaction of its own that re-checks the lease
+        verify(syncJobService, times(3)).writeUnderLease(eq(job), any());
+        verify(syncJobService, times(3)).checkLease(job);
+        assertThat(result.created()).isEqualTo(1);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.unchanged()).isEqualTo(1);
+    }
+
+    private List<String> upsertedSkus() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ProductUpsertRow>> captor = ArgumentCaptor.forClass(List.class);
+        verify(productBulkRepository).upsertProducts(captor.capture());
+        return captor.getValue().stream().map(ProductUpsertRow::supplierSku).toList();
+    }
+
+    private Map<String, Long> storedFingerprints() {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Long>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(productSyncStateRepository).upsertFingerprints(captor.capture());
+        return captor.getValue();
+    }
+
+    private static MistralSyncRow row(String code, int quantity) {
+        return new MistralSyncRow(1, code, "Product " + code, quantity, 1000, MistralSyncRow.NO_PRICE);
+    }
+}
@@ -0,0 +1,74 @@
+package bg.papa.service;
+
+import bg.papa.config.MistralConfig;
+import bg.papa.dto.mistral.MistralProductDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StockCacheTest {
+
+    private final MistralApiClient mistralApiClient = mock(MistralApiClient.class);
+    private final MistralRequestExecutor requestExecutor = mock(MistralRequestExecutor.class);
+    private final AtomicLong nanos = new AtomicLong();
+
+    private StockCache stockCache;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MistralConfig config = new MistralConfig();
+        config.getStockCache().setRefreshAfter(Duration.ofSeconds(15));
+        config.getStockCache().setExpireAfter(Duration.ofMinutes(2));
+        stockCache = new StockCache(config, mistralApiClient, requestExecutor, new SimpleMeterRegistry(), nanos::get);
+
+        when(requestExecutor.submitWithRetry(any(), any())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(invocation.<Callable<?>>getArgument(0).call()));
+        when(mistralApiClient.fetchProductByCode("A1")).thenReturn(product("3"));
+    }
+
+    @Test
+    void answerPastRefreshAfterIsMarkedStale() {
+        assertThat(stockCache.get("A1").join().stale()).isFalse();
+
+        nanos.addAndGet(Duration.ofSeconds(16).toNanos());
+        // The background lookup is still in flight while the old answer is served
+        doReturn(new CompletableFuture<>()).when(requestExecutor).submitWithRetry(any(), any());
+
+        assertThat(stockCache.peek("A1").stale()).isTrue();
+        MistralSyncService.StockInfo served = stockCache.get("A1").join();
+        assertThat(served.stale()).isTrue();
+        assertThat(served.quantity()).isEqualTo(3);
+    }
+
+    @Test
+    void evictedAnswerIsLookedUpAgain() {
+        stockCache.get("A1").join();
+
+        stockCache.invalidate(List.of("A1"));
+
+        assertThat(stockCache.peek("A1")).isNull();
+        assertThat(stockCache.get("A1").join().stale()).isFalse();
+        verify(mistralApiClient, times(2)).fetchProductByCode("A1");
+    }
+
+    private static MistralProductDto product(String quantity) {
+        MistralProductDto product = new MistralProductDto();
+        product.setQtty(quantity);
+        product.setSalesPrice("10.00");
+        return product;
+    }
+}
@@ -0,0 +1,147 @@
+package bg.papa.service;
+
+import bg.papa.entity.SyncJob;
+import bg.papa.entity.SyncJobStatus;
+import bg.papa.entity.SyncJobType;
+import bg.papa.repository.SyncJobRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SyncJobServiceTest {
+
+    private final SyncJobRepository syncJobRepository = mock(SyncJobRepository.class);
+    private final SyncLeaseService syncLeaseService = mock(SyncLeaseService.class);
+    private final SyncLeaseService.Lease lease = mock(SyncLeaseService.Lease.class);
+
+    private SyncJobService syncJobService;
+
+    @BeforeEach
+    void setUp() {
+        syncJobService = new SyncJobService(syncJobRepository, mock(MistralRowSweeper.class),
+                mock(CatalogSizeProbe.class), new ObjectMapper(), mock(PlatformTransactionManager.class),
+                syncLeaseService);
+        ReflectionTestUtils.setField(syncJobService, "stockCron", "0 0 */3 * * *");
+        ReflectionTestUtils.setField(syncJobService, "priceCron", "0 0 0 * * *");
+        ReflectionTestUtils.setField(syncJobService, "adaptiveIntervalMs", 1_800_000L);
+        syncJobService.init();
+
+        when(syncLeaseService.getInstanceId()).thenReturn("me");
+        when(syncLeaseService.tryAcquire(SyncJobService.SWEEP_LEASE)).thenReturn(Optional.of(lease));
+        when(syncJobRepository.save(any(SyncJob.class))).thenAnswer(invocation -> {
+            SyncJob job = invocation.getArgument(0);
+            if (job.getId() == null) {
+                job.setId(UUID.randomUUID());
+            }
+            return job;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        syncJobService.shutdown();
+    }
+
+    @Test
+    void runningJobOfALiveInstanceIsNotTakenOver() {
+        unfinished(job(SyncJobStatus.RUNNING, "other", Duration.ofMinutes(30)));
+        when(syncLeaseService.isAlive("other")).thenReturn(true);
+
+        assertThatThrownBy(() -> syncJobService.start(SyncJobType.STOCK))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("still owned by other");
+        verify(lease).close();
+    }
+
+    @Test
+    void runningJobOfAGoneInstanceResumesFromItsCursor() {
+        SyncJob orphan = job(SyncJobStatus.RUNNING, "other", Duration.ofMinutes(30));
+        unfinished(orphan);
+
+        SyncJob started = syncJobService.start(SyncJobType.STOCK);
+
+        assertThat(started.getId()).isEqualTo(orphan.getId());
+        assertThat(started.getCursor()).isEqualTo(4001);
+        assertThat(started.getOwner()).isEqualTo("me");
+    }
+
+    @Test
+    void jobOlderThanTheScheduleIntervalStartsOver() {
+        SyncJob stale = job(SyncJobStatus.INTERRUPTED, "other", Duration.ofHours(4));
+        unfinished(stale);
+
+        SyncJob started = syncJobService.start(SyncJobType.STOCK);
+
+        assertThat(started.getId()).isNotEqualTo(stale.getId());
+        assertThat(started.getCursor()).isEqualTo(1);
+        assertThat(stale.getStatus()).isEqualTo(SyncJobStatus.FAILED);
+    }
+
+    @Test
+    void resumeWindowFollowsTheSchedule() {
+        assertThat(syncJobService.resumeWindow(SyncJobType.STOCK)).isEqualTo(Duration.ofHours(3));
+        assertThat(syncJobService.resumeWindow(SyncJobType.PRICE)).isBetween(Duration.ofHours(23), Duration.ofHours(25));
+        assertThat(syncJobService.resumeWindow(SyncJobType.ADAPTIVE_STOCK)).isEqualTo(Duration.ofMinutes(30));
+    }
+
+    @Test
+    void sweepLeaseWorkDoesNotRunWhileALocalJobHoldsTheLease() {
+        unfinished(job(SyncJobStatus.INTERRUPTED, "other", Duration.ofHours(4)));
+        SyncJob started = syncJobService.start(SyncJobType.STOCK);
+
+        assertThat(syncJobService.runUnderSweepLease(held -> "ran")).isEmpty();
+        verify(lease, never()).close();
+
+        syncJobService.release(started);
+        assertThat(syncJobService.runUnderSweepLease(held -> "ran")).contains("ran");
+        verify(lease, times(2)).close();
+    }
+
+    @Test
+    void jobStartIsRefusedWhileSweepLeaseWorkRuns() {
+        unfinished(job(SyncJobStatus.INTERRUPTED, "other", Duration.ofHours(4)));
+
+        syncJobService.runUnderSweepLease(held -> {
+            assertThatThrownBy(() -> syncJobService.start(SyncJobType.STOCK)).isInstanceOf(IllegalStateException.class);
+            assertThat(syncJobService.runUnderSweepLease(nested -> "ran")).isEmpty();
+            return null;
+        });
+
+        assertThat(syncJobService.start(SyncJobType.STOCK)).isNotNull();
+    }
+
+    private void unfinished(SyncJob job) {
+        when(syncJobRepository.findFirstByTypeAndStatusInOrderByStartedAtDesc(eq(job.getType()), anyCollection()))
+                .thenReturn(Optional.of(job));
+    }
+
+    private static SyncJob job(SyncJobStatus status, String owner, Duration age) {
+        SyncJob job = new SyncJob();
+        job.setId(UUID.randomUUID());
+        job.setType(SyncJobType.STOCK);
+        job.setStatus(status);
+        job.setOwner(owner);
+        job.setCursor(4001);
+        job.setStartedAt(LocalDateTime.now().minus(age));
+        return job;
+    }
+}
@@ -0,0 +1,103 @@
+package bg.papa.service;
+
+import bg.papa.PostgresTestSupport;
+import bg.papa.repository.SyncLeaseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Import(SyncLeaseService.class)
+class SyncLeaseServiceTest extends PostgresTestSupport {
+
+    @Autowired
+    private SyncLeaseService syncLeaseService;
+
+    @Autowired
+    private SyncLeaseRepository syncLeaseRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void leaseHeldByAnotherInstanceCannotBeTaken() {
+        syncLeaseRepository.tryAcquire("sync:test", "other", 60);
+
+        assertThat(syncLeaseService.tryAcquire("sync:test")).isEmpty();
+        assertThat(syncLeaseService.findOwner("sync:test")).contains("other");
+        assertThat(syncLeaseService.isAlive("other")).isTrue();
+        assertThat(syncLeaseService.isHeld("sync:test")).isTrue();
+    }
+
+    @Test
+    void instancesInDifferentTimeZonesAgreeOnExpiry() {
+        jdbcTemplate.execute("SET LOCAL TIME ZONE 'Etc/GMT+12'");
+        syncLeaseRepository.tryAcquire("sync:test", "other", 60);
+
+        jdbcTemplate.execute("SET LOCAL TIME ZONE 'Etc/GMT-14'");
+
+        assertThat(syncLeaseService.isHeld("sync:test")).isTrue();
+        assertThat(syncLeaseService.tryAcquire("sync:test")).isEmpty();
+    }
+
+    @Test
+    void expiredLeaseIsTakenOver() {
+        syncLeaseRepository.tryAcquire("sync:test", "other", 0);
+        assertThat(syncLeaseService.isHeld("sync:test")).isFalse();
+
+        Optional<SyncLeaseService.Lease> lease = syncLeaseService.tryAcquire("sync:test");
+
+        assertThat(lease).isPresent();
+        assertThat(syncLeaseService.findOwner("sync:test")).contains(syncLeaseService.getInstanceId());
+        assertThat(syncLeaseService.isAlive("other")).isFalse();
+        lease.get().close();
+    }
+
+    @Test
+    void writeLocksALeaseStillHeld() {
+        SyncLeaseService.Lease lease = syncLeaseService.tryAcquire("sync:test").orElseThrow();
+
+        lease.lockForWrite();
+
+        assertThat(lease.isLost()).isFalse();
+        lease.close();
+    }
+
+    @Test
+    void writeUnderALeaseTakenOverFailsAndMarksItLost() {
+        SyncLeaseService.Lease lease = syncLeaseService.tryAcquire("sync:test").orElseThrow();
+        syncLeaseRepository.release("sync:test", syncLeaseService.getInstanceId());
+        syncLeaseRepository.tryAcquire("sync:test", "other", 60);
+
+        assertThatThrownBy(lease::lockForWrite).isInstanceOf(IllegalStateException.class);
+        assertThat(lease.isLost()).isTrue();
+        lease.close();
+        assertThat(syncLeaseService.findOwner("sync:test")).contains("other");
+    }
+
+    @Test
+    void expiriesAreJudgedByTheDatabaseClock() {
+        syncLeaseRepository.tryAcquire("sync:held", "other", 60);
+        syncLeaseRepository.tryAcquire("sync:expired", "other", 0);
+
+        var expiries = syncLeaseService.findExpiries();
+
+        assertThat(expiries.get("sync:held").getHeld()).isTrue();
+        assertThat(expiries.get("sync:held").getRemainingMs()).isBetween(59_000L, 60_000L);
+        assertThat(expiries.get("sync:expired").getHeld()).isFalse();
+        assertThat(expiries.get("sync:expired").getRemainingMs()).isZero();
+    }
+
+    @Test
+    void releasedLeaseIsFreeAgain() {
+        syncLeaseService.tryAcquire("sync:test").orElseThrow().close();
+
+        assertThat(syncLeaseRepository.tryAcquire("sync:test", "other", 60)).isEqualTo(1);
+        assertThat(syncLeaseService.isAlive(syncLeaseService.getInstanceId())).isFalse();
+    }
+}
@@ -0,0 +1,103 @@
+package bg.papa.service;
+
+import bg.papa.entity.SyncJob;
+import bg.papa.entity.SyncJobType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SyncSchedulerTest {
+
+    private final SyncJobService syncJobService = mock(SyncJobService.class);
+    private final MistralSyncService mistralSyncService = mock(MistralSyncService.class);
+    private final CountDownLatch priceSyncRelease = new CountDownLatch(1);
+
+    private SyncScheduler scheduler;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        scheduler = new SyncScheduler(syncJobService, mistralSyncService, mock(AdaptiveStockSyncService.class),
+                new SyncMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(scheduler, "mergeWindow", Duration.ZERO);
+        ReflectionTestUtils.setField(scheduler, "busyRetry", Duration.ofMillis(10));
+        ReflectionTestUtils.setField(scheduler, "maxWait", Duration.ofMinutes(1));
+
+        when(syncJobService.findCompletedSince(any(), any())).thenReturn(Optional.empty());
+        when(syncJobService.start(any())).thenAnswer(invocation -> job(invocation.getArgument(0)));
+        when(mistralSyncService.syncPrices(any())).thenAnswer(invocation -> {
+            priceSyncRelease.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+        scheduler.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        priceSyncRelease.countDown();
+        scheduler.shutdown();
+    }
+
+    @Test
+    void requestCoveredByTheRunningSyncQueuesAFollowUpRun() throws Exception {
+        SyncScheduler.SyncTicket price = scheduler.request(SyncJobType.PRICE, false, SyncScheduler.Origin.SCHEDULED);
+        awaitState(price.requestId(), SyncScheduler.QueueState.RUNNING);
+
+        SyncScheduler.SyncTicket stock = scheduler.request(SyncJobType.STOCK, false, SyncScheduler.Origin.ADMIN);
+
+        assertThat(stock.merged()).isFalse();
+        assertThat(stock.state()).isEqualTo(SyncScheduler.QueueState.QUEUED);
+        assertThat(stock.jobId()).isNull();
+        assertThat(scheduler.getQueue()).extracting(SyncScheduler.QueuedSync::state)
+                .containsExactly(SyncScheduler.QueueState.RUNNING, SyncScheduler.QueueState.QUEUED);
+
+        priceSyncRelease.countDown();
+        stock.outcome().get(5, TimeUnit.SECONDS);
+        verify(mistralSyncService, timeout(5000)).syncStockBatch(any(SyncJob.class));
+    }
+
+    @Test
+    void requestsMergeIntoAQueuedSyncThatCoversThem() throws Exception {
+        SyncScheduler.SyncTicket running = scheduler.request(SyncJobType.PRICE, false, SyncScheduler.Origin.SCHEDULED);
+        awaitState(running.requestId(), SyncScheduler.QueueState.RUNNING);
+
+        SyncScheduler.SyncTicket followUp = scheduler.request(SyncJobType.PRICE, false, SyncScheduler.Origin.ADMIN);
+        SyncScheduler.SyncTicket stock = scheduler.request(SyncJobType.STOCK, false, SyncScheduler.Origin.ADMIN);
+
+        assertThat(stock.merged()).isTrue();
+        assertThat(stock.requestId()).isEqualTo(followUp.requestId());
+        assertThat(scheduler.getQueue()).hasSize(2);
+    }
+
+    private void awaitState(UUID requestId, SyncScheduler.QueueState state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (scheduler.findRequest(requestId).map(SyncScheduler.QueuedSync::state).orElse(null) == state) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Request " + requestId + " never reached " + state);
+    }
+
+    private static SyncJob job(SyncJobType type) {
+        SyncJob job = new SyncJob();
+        job.setId(UUID.randomUUID());
+        job.setType(type);
+        return job;
+    }
+}
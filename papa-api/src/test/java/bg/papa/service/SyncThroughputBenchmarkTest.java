@@ -0,0 +1,90 @@
+package bg.papa.service;
+
+import bg.papa.MistralStubTestSupport;
+import bg.papa.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * End-to-end throughput benchmark of the sync paths against the Mistral stand-in, on the test database.
+ * Only runs when asked for: mvn test -Dtest=SyncThroughputBenchmarkTest -Dbenchmark=true
+ * (optionally -Dbenchmark.rows, -Dbenchmark.stock-checks, -Dbenchmark.iterations).
+ * The row-range sync runs first so the stock paths have products to update; its first iteration writes
+ * every product, later ones measure the unchanged-fingerprint path. Stock checks are measured with the
+ * stock cache emptied before each run, then served from it.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@TestPropertySource(properties = {
+        "mistral.stub.catalog-size=20000",
+        "mistral.stub.latency=50ms"
+})
+@Slf4j
+class SyncThroughputBenchmarkTest extends MistralStubTestSupport {
+
+    @Autowired
+    private MistralSyncService mistralSyncService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockCache stockCache;
+
+    @Test
+    void syncThroughput() {
+        int rows = Integer.getInteger("benchmark.rows", 5000);
+        int stockChecks = Integer.getInteger("benchmark.stock-checks", 50);
+        int iterations = Integer.getInteger("benchmark.iterations", 3);
+        log.info("Starting sync benchmark: {} rows, {} stock checks, {} iterations", rows, stockChecks, iterations);
+
+        List<Measurement> measurements = new ArrayList<>();
+        measurements.add(measure("syncProductsByRowRange", iterations,
+                () -> mistralSyncService.syncProductsByRowRange(1, rows, true).total()));
+        measurements.add(measure("syncStockBatch", iterations,
+                () -> mistralSyncService.syncStockBatch().rowsScanned()));
+
+        List<String> skus = productRepository.findAllSupplierSkus().stream().limit(stockChecks).toList();
+        measurements.add(measure("checkStockRealTime (uncached)", iterations, () -> {
+            stockCache.invalidateAll();
+            return mistralSyncService.checkStockRealTime(skus).size();
+        }));
+        measurements.add(measure("checkStockRealTime (cached)", iterations,
+                () -> mistralSyncService.checkStockRealTime(skus).size()));
+
+        measurements.forEach(measurement -> log.info("Benchmark {}: {} items, min {}ms, median {}ms, max {}ms ({} items/s)",
+                measurement.name(), measurement.items(), measurement.minMs(), measurement.medianMs(),
+                measurement.maxMs(), Math.round(measurement.itemsPerSecond())));
+        assertThat(measurements).allMatch(measurement -> measurement.items() > 0);
+    }
+
+    private Measurement measure(String name, int iterations, IntSupplier work) {
+        long[] durations = new long[Math.max(1, iterations)];
+        int items = 0;
+        for (int i = 0; i < durations.length; i++) {
+            long start = System.nanoTime();
+            items = work.getAsInt();
+            durations[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+
+        long[] sorted = durations.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        double itemsPerSecond = median > 0 ? items * 1000.0 / median : 0;
+        return new Measurement(name, items, sorted[0], median, sorted[sorted.length - 1], itemsPerSecond);
+    }
+
+    /**
+     * Timings of one sync path; items is what one run processed (rows, products or SKUs)
+     */
+    private record Measurement(String name, int items, long minMs, long medianMs, long maxMs, double itemsPerSecond) {}
+}
@@ -0,0 +1,137 @@
+package bg.papa.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Microbenchmark of {@link Slugs#slugify(String)} against the transliterate-then-regex chain it replaced,
+ * over generated product names. Only runs when asked for: mvn test -Dtest=SlugsBenchmarkTest -Dbenchmark=true
+ * (optionally -Dbenchmark.names, -Dbenchmark.iterations, -Dbenchmark.warmup-iterations).
+ * Both run warm-up rounds first so the JIT has compiled them, every output feeds a checksum so no work is
+ * optimized away, and the outputs must match name by name.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@Slf4j
+class SlugsBenchmarkTest {
+
+    private static final String[] WORDS = {
+            "Детска", "количка", "ЛЕГЛО", "Кошара", "бебешко", "одеяло", "Столче", "за", "хранене", "шише",
+            "Щипка", "Чаша", "с", "дръжки", "Жираф", "играчка", "Юрган", "Ябълка", "Хавлия", "Цветна",
+            "Baby", "Stroller", "3в1", "XL", "0-6м", "Set", "Pro", "2024", "N°5", "Comfort+"
+    };
+
+    private static final String[] SEPARATORS = {" ", " ", " ", " - ", ", ", " / ", "  ", " (", ") ", " & "};
+
+    private static final String[][] LEGACY_REPLACEMENTS = {
+            {"а", "a"}, {"б", "b"}, {"в", "v"}, {"г", "g"}, {"д", "d"},
+            {"е", "e"}, {"ж", "zh"}, {"з", "z"}, {"и", "i"}, {"й", "y"},
+            {"к", "k"}, {"л", "l"}, {"м", "m"}, {"н", "n"}, {"о", "o"},
+            {"п", "p"}, {"р", "r"}, {"с", "s"}, {"т", "t"}, {"у", "u"},
+            {"ф", "f"}, {"х", "h"}, {"ц", "ts"}, {"ч", "ch"}, {"ш", "sh"},
+            {"щ", "sht"}, {"ъ", "a"}, {"ь", "y"}, {"ю", "yu"}, {"я", "ya"},
+            {"А", "A"}, {"Б", "B"}, {"В", "V"}, {"Г", "G"}, {"Д", "D"},
+            {"Е", "E"}, {"Ж", "Zh"}, {"З", "Z"}, {"И", "I"}, {"Й", "Y"},
+            {"К", "K"}, {"Л", "L"}, {"М", "M"}, {"Н", "N"}, {"О", "O"},
+            {"П", "P"}, {"Р", "R"}, {"С", "S"}, {"Т", "T"}, {"У", "U"},
+            {"Ф", "F"}, {"Х", "H"}, {"Ц", "Ts"}, {"Ч", "Ch"}, {"Ш", "Sh"},
+            {"Щ", "Sht"}, {"Ъ", "A"}, {"Ь", "Y"}, {"Ю", "Yu"}, {"Я", "Ya"}
+    };
+
+    @Test
+    void slugThroughput() {
+        int names = Integer.getInteger("benchmark.names", 10000);
+        int iterations = Integer.getInteger("benchmark.iterations", 5);
+        int warmupIterations = Integer.getInteger("benchmark.warmup-iterations", 5);
+        List<String> sample = generateNames(names);
+        log.info("Starting slug benchmark: {} names, {} warm-up and {} measured iterations",
+                sample.size(), warmupIterations, iterations);
+
+        Measurement legacy = measure("legacy (66 replace + 4 regex)", sample, warmupIterations, iterations,
+                SlugsBenchmarkTest::legacySlugify);
+        Measurement singlePass = measure("Slugs.slugify (single pass)", sample, warmupIterations, iterations,
+                Slugs::slugify);
+
+        List.of(legacy, singlePass).forEach(measurement -> log.info("Slug benchmark {}: median {}ms, {} ns/name",
+                measurement.name(), measurement.medianMs(), Math.round(measurement.nanosPerName())));
+        log.info("Slug benchmark: {}x faster", Math.round(legacy.nanosPerName() / singlePass.nanosPerName() * 10) / 10.0);
+
+        assertThat(sample).allSatisfy(name -> assertThat(Slugs.slugify(name)).isEqualTo(legacySlugify(name)));
+    }
+
+    private Measurement measure(String name, List<String> sample, int warmupIterations, int iterations,
+                                UnaryOperator<String> slugify) {
+        long checksum = 0;
+        for (int i = 0; i < warmupIterations; i++) {
+            checksum += slugifyAll(sample, slugify);
+        }
+
+        long[] durations = new long[Math.max(1, iterations)];
+        for (int i = 0; i < durations.length; i++) {
+            long start = System.nanoTime();
+            checksum += slugifyAll(sample, slugify);
+            durations[i] = System.nanoTime() - start;
+        }
+
+        long[] sorted = durations.clone();
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        return new Measurement(name, median / 1_000_000.0, (double) median / sample.size(), checksum);
+    }
+
+    private long slugifyAll(List<String> sample, UnaryOperator<String> slugify) {
+        long checksum = 0;
+        for (String name : sample) {
+            checksum += slugify.apply(name).hashCode();
+        }
+        return checksum;
+    }
+
+    /**
+     * Deterministic mix of Cyrillic and Latin words, sizes, punctuation and case, like supplier product names
+     */
+    private static List<String> generateNames(int count) {
+        Random random = new Random(42);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int words = 2 + random.nextInt(7);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    name.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+                }
+                name.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            names.add(name.toString());
+        }
+        return names;
+    }
+
+    /**
+     * The slug part of the handle generation that Slugs replaced, kept as the benchmark baseline
+     */
+    private static String legacySlugify(String name) {
+        String text = name.toLowerCase();
+        for (String[] replacement : LEGACY_REPLACEMENTS) {
+            text = text.replace(replacement[0], replacement[1]);
+        }
+        return text
+                .replaceAll("[^a-z0-9\\s-]", "")
+                .replaceAll("\\s+", "-")
+                .replaceAll("-+", "-")
+                .replaceAll("^-|-$", "");
+    }
+
+    /**
+     * Median timing of one implementation over the whole sample; checksum only keeps the work from being optimized away
+     */
+    private record Measurement(String name, double medianMs, double nanosPerName, long checksum) {}
+}
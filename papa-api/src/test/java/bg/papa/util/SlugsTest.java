@@ -0,0 +1,63 @@
+package bg.papa.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class SlugsTest {
+
+    @Test
+    void slugifyTransliteratesAndJoinsWordsWithSingleHyphens() {
+        assertThat(Slugs.slugify("Детска Количка - 3в1")).isEqualTo("detska-kolichka-3v1");
+        assertThat(Slugs.slugify("  ЩИПКА,  Юрган (XL) & Жираф  ")).isEqualTo("shtipka-yurgan-xl-zhiraf");
+        assertThat(Slugs.slugify("N°5 Comfort+ 0-6м")).isEqualTo("n5-comfort-0-6m");
+        assertThat(Slugs.slugify("--- ---")).isEmpty();
+        assertThat(Slugs.slugify(null)).isEmpty();
+    }
+
+    @Test
+    void productHandleShortensTheSlugAndKeepsTheCode() {
+        assertThat(Slugs.productHandle("Бебешко одеяло", "MC-1001")).isEqualTo("bebeshko-odeyalo-MC-1001");
+        assertThat(Slugs.productHandle("", "MC-1001")).isEqualTo("product-MC-1001");
+        assertThat(Slugs.productHandle("№ ★", "MC-1001")).isEqualTo("product-MC-1001");
+
+        String handle = Slugs.productHandle("Количка ".repeat(20), "MC-1001");
+        assertThat(handle).hasSizeLessThanOrEqualTo(Slugs.MAX_LENGTH)
+                .endsWith("-MC-1001")
+                .doesNotContain("--");
+    }
+
+    @Test
+    void categoryHandleIsCutAtTheMaximumLength() {
+        assertThat(Slugs.categoryHandle("Детски Колички")).isEqualTo("detski-kolichki");
+        assertThat(Slugs.categoryHandle("a".repeat(150))).hasSize(Slugs.MAX_LENGTH);
+        assertThat(Slugs.categoryHandle("★")).startsWith("category-");
+    }
+
+    @Test
+    void uniqueHandlesAppendSuffixesToTakenHandles() {
+        Map<String, String> stored = Map.of("stroller", "OTHER", "stroller-2", "OTHER", "crib", "B1");
+        Function<Collection<String>, Map<String, String>> owners = handles -> handles.stream()
+                .filter(stored::containsKey)
+                .collect(Collectors.toMap(handle -> handle, stored::get));
+
+        Map<String, String> wanted = new LinkedHashMap<>();
+        wanted.put("A1", "stroller");
+        wanted.put("B1", "crib");
+        wanted.put("C1", "stroller");
+
+        Map<String, String> unique = Slugs.uniqueHandles(wanted, owners);
+
+        assertThat(unique).containsExactly(
+                entry("A1", "stroller-3"),
+                entry("B1", "crib"),
+                entry("C1", "stroller-4"));
+    }
+}